@@ -1,5 +1,8 @@
 package com.ecfront.dew.common;
 
+import com.ecfront.dew.common.http.HttpClientProfile;
+import com.ecfront.dew.common.http.RetryPolicy;
+
 /**
  * DEW Common 操作入口.
  *
@@ -70,7 +73,7 @@ public final class $ {
     /**
      * Json与Java对象互转.
      * <p>
-     * 使用自定义实例ID（用于支持不同Json配置）
+     * 使用自定义实例ID（用于支持不同Json配置），可并发调用，同一实例ID只会创建一个实例，实例的生命周期见 {@link JsonHelper}
      *
      * @param instanceId 实例Id
      * @return 对应实例的Json操作 json helper
@@ -110,6 +113,43 @@ public final class $ {
         return new HttpHelper(timeoutMS, autoRedirect);
     }
 
+    /**
+     * Http操作.
+     *
+     * @param timeoutMS    默认超时时间
+     * @param autoRedirect 302状态下是否自动跳转
+     * @param retryPolicy  重试策略
+     * @return HTTP操作实例 http helper
+     */
+    public static HttpHelper http(int timeoutMS, boolean autoRedirect, RetryPolicy retryPolicy) {
+        return new HttpHelper(timeoutMS, autoRedirect, retryPolicy);
+    }
+
+    /**
+     * Http操作.
+     * <p>
+     * 按配置名称缓存实例，同名的配置只在首次调用时创建HttpClient
+     *
+     * @param profile HttpClient配置
+     * @return HTTP操作实例 http helper
+     */
+    public static HttpHelper http(HttpClientProfile profile) {
+        return HttpHelper.pick(profile);
+    }
+
+    /**
+     * Http操作.
+     * <p>
+     * 获取 {@link #http(HttpClientProfile)} 创建的实例，不存在时使用默认配置创建
+     *
+     * @param profileName 配置名称
+     * @return HTTP操作实例 http helper
+     */
+    public static HttpHelper http(String profileName) {
+        assert profileName != null && !profileName.trim().equals("");
+        return HttpHelper.pick(profileName);
+    }
+
     /**
      * 脚本处理.
      * <p>
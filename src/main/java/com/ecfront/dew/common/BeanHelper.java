@@ -20,16 +20,12 @@ public class BeanHelper {
 
     private static final Map<String, Map<String, Field>> FIELDS = new WeakHashMap<>();
     private static final Map<String, List<Method>> METHODS = new WeakHashMap<>();
-    private NullAwareBeanUtilsBean copyPropertiesAdapter;
     private boolean useCache = true;
 
     /**
      * Instantiates a new Bean helper.
      */
     BeanHelper() {
-        if (DependencyHelper.hasDependency("org.apache.commons.beanutils.BeanUtilsBean")) {
-            copyPropertiesAdapter = new NullAwareBeanUtilsBean();
-        }
     }
 
     /**
@@ -49,7 +45,7 @@ public class BeanHelper {
      */
     public void copyProperties(Object dest, Object ori) throws RTReflectiveOperationException {
         try {
-            copyPropertiesAdapter.copyProperties(dest, ori);
+            CopyPropertiesHolder.ADAPTER.copyProperties(dest, ori);
         } catch (IllegalAccessException | InvocationTargetException e) {
             throw new RTReflectiveOperationException(e);
         }
@@ -454,6 +450,15 @@ public class BeanHelper {
         }
     }
 
+    /**
+     * 复制属性的适配器，首次复制属性时才加载commons-beanutils.
+     */
+    private static final class CopyPropertiesHolder {
+
+        private static final NullAwareBeanUtilsBean ADAPTER =
+                DependencyHelper.hasDependency("org.apache.commons.beanutils.BeanUtilsBean") ? new NullAwareBeanUtilsBean() : null;
+    }
+
     /**
      * The type Null aware bean utils bean.
      */
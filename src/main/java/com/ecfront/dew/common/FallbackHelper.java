@@ -87,28 +87,48 @@ public class FallbackHelper {
         return execute(groupName, normalProcessor, errorProcessor, fallbackStrategy, Arrays.asList(excludeFallbackErrors));
     }
 
+    /**
+     * 降级检查，用于异步等无法使用 {@code execute} 包装的处理.
+     * <p>
+     * 记录一次请求并按降级策略判断是否执行，不执行时抛出 {@link FallbackException}，
+     * 执行时由调用方在处理完成后调用 {@link FallbackInfo#success()} 或 {@link FallbackInfo#error()} 记录结果，
+     * 未实际执行时调用 {@link FallbackInfo#cancel()} 撤销本次请求
+     *
+     * @param groupName        组名，全局唯一
+     * @param fallbackStrategy 降级策略
+     * @return 降级信息 fallback info
+     * @throws FallbackException 降级策略判定不执行
+     */
+    public FallbackInfo check(String groupName, FallbackStrategy fallbackStrategy) throws FallbackException {
+        FallbackInfo fallbackInfo = CONTAINER.computeIfAbsent(groupName, k -> new FallbackInfo());
+        fallbackInfo.request();
+        if (!fallbackStrategy.check(fallbackInfo)) {
+            throw new FallbackException(String.format("%s has %s errors , last success is %s", groupName,
+                    fallbackInfo.getErrorTimes(), fallbackInfo.getLastGreenTime().format(DATE_TIME_FORMATTER)));
+        }
+        return fallbackInfo;
+    }
+
     private <E> E execute(String groupName, NormalProcessor<E> normalProcessor, ErrorProcessor<E> errorProcessor,
                           FallbackStrategy fallbackStrategy, List<Class<? extends Throwable>> excludeFallbackErrors) {
-        CONTAINER.putIfAbsent(groupName, new FallbackInfo());
-        FallbackInfo fallbackInfo = CONTAINER.get(groupName);
-        fallbackInfo.request();
-        if (fallbackStrategy.check(fallbackInfo)) {
-            try {
-                E result = normalProcessor.execute();
+        FallbackInfo fallbackInfo;
+        try {
+            fallbackInfo = check(groupName, fallbackStrategy);
+        } catch (FallbackException e) {
+            return errorProcessor.execute(e, CONTAINER.get(groupName));
+        }
+        try {
+            E result = normalProcessor.execute();
+            fallbackInfo.success();
+            return result;
+        } catch (Throwable e) {
+            if (!excludeFallbackErrors.contains(e.getClass())) {
+                fallbackInfo.error();
+                return errorProcessor.execute(e, fallbackInfo);
+            } else {
                 fallbackInfo.success();
-                return result;
-            } catch (Throwable e) {
-                if (!excludeFallbackErrors.contains(e.getClass())) {
-                    fallbackInfo.error();
-                    return errorProcessor.execute(e, fallbackInfo);
-                } else {
-                    fallbackInfo.success();
-                    throw new RTException(e);
-                }
+                throw new RTException(e);
             }
-        } else {
-            return errorProcessor.execute(new FallbackException(String.format("%s has %s errors , last success is %s", groupName,
-                    fallbackInfo.getErrorTimes(), fallbackInfo.getLastGreenTime().format(DATE_TIME_FORMATTER))), fallbackInfo);
         }
     }
 
@@ -206,19 +226,26 @@ public class FallbackHelper {
         }
 
         /**
-         * Success.
+         * 记录一次成功.
          */
-        void success() {
+        public void success() {
             successTimes.incrementAndGet();
         }
 
         /**
-         * Error.
+         * 记录一次失败.
          */
-        void error() {
+        public void error() {
             errorTimes.incrementAndGet();
         }
 
+        /**
+         * 撤销一次请求的记录，用于未实际发起（如发起前即失败）或被取消的请求.
+         */
+        public void cancel() {
+            requestTimes.updateAndGet(times -> times > 0 ? times - 1 : 0);
+        }
+
         /**
          * Init request times.
          */
@@ -0,0 +1,79 @@
+package com.ecfront.dew.common;
+
+import com.ecfront.dew.common.exception.RTGeneralSecurityException;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.HashSet;
+import java.util.Properties;
+
+/**
+ * HttpClient的JVM级别初始化，在首次创建HttpClient时执行且只执行一次.
+ *
+ * @author gudaoxuri
+ */
+final class HttpClientSupport {
+
+    /**
+     * 信任所有证书的SSLContext.
+     */
+    static final SSLContext SSL_CONTEXT = init();
+
+    private static SSLContext init() {
+        final Properties props = System.getProperties();
+        props.setProperty("jdk.internal.httpclient.disableHostnameVerification", Boolean.TRUE.toString());
+        var allowAllHeaders = ManagementFactory.getRuntimeMXBean().getInputArguments().stream().anyMatch(arg ->
+                arg.contains("--add-opens=java.net.http/jdk.internal.net.http.common"));
+        if (allowAllHeaders) {
+            try {
+                // 解决JDK11对请求头限制的Bug.
+                // 如果请求头有包含 "connection", "content-length", "date", "expect", "from", "host", "upgrade", "via", "warning" 字段，
+                // 则需要调用此方法解除限制。
+                // NOTE: 需要在运行参数中添加 --add-opens java.net.http/jdk.internal.net.http.common=ALL-UNNAMED
+                // @see <a href="https://bugs.openjdk.java.net/browse/JDK-8213696">JDK-8213696</a>
+                var jdkUtilsClazz = Class.forName("jdk.internal.net.http.common.Utils");
+                var disallowedHeads = jdkUtilsClazz.getDeclaredField("DISALLOWED_HEADERS_SET");
+                var modifiersField = Field.class.getDeclaredField("modifiers");
+                modifiersField.setAccessible(true);
+                modifiersField.setInt(disallowedHeads, disallowedHeads.getModifiers() & ~Modifier.FINAL);
+                $.bean.setValue(null, disallowedHeads, new HashSet<String>());
+            } catch (ClassNotFoundException | NoSuchFieldException | IllegalAccessException ignore) {
+            }
+        }
+        try {
+            SSLContext ctx = SSLContext.getInstance("TLS");
+            ctx.init(new KeyManager[0], new TrustManager[]{new DefaultTrustManager()}, new SecureRandom());
+            return ctx;
+        } catch (NoSuchAlgorithmException | KeyManagementException e) {
+            throw new RTGeneralSecurityException(e);
+        }
+    }
+
+    private HttpClientSupport() {
+    }
+
+    private static class DefaultTrustManager implements X509TrustManager {
+        @Override
+        public void checkClientTrusted(X509Certificate[] arg0, String arg1) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] arg0, String arg1) {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return null;
+        }
+    }
+
+}
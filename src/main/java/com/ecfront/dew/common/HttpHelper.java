@@ -1,36 +1,46 @@
 package com.ecfront.dew.common;
 
-import com.ecfront.dew.common.exception.RTException;
-import com.ecfront.dew.common.exception.RTGeneralSecurityException;
 import com.ecfront.dew.common.exception.RTIOException;
+import com.ecfront.dew.common.http.RangeDownloader;
+import com.ecfront.dew.common.http.RequestBatch;
+import com.ecfront.dew.common.http.RequestSpec;
+import com.ecfront.dew.common.http.CircuitBreaker;
+import com.ecfront.dew.common.http.ChunkedUploader;
+import com.ecfront.dew.common.http.Compression;
+import com.ecfront.dew.common.http.EventStream;
+import com.ecfront.dew.common.http.HedgePolicy;
+import com.ecfront.dew.common.http.HttpClientProfile;
+import com.ecfront.dew.common.http.HttpMetrics;
+import com.ecfront.dew.common.http.HttpMetricsListener;
+import com.ecfront.dew.common.http.JsonBodyHandler;
+import com.ecfront.dew.common.http.MetricsObserver;
+import com.ecfront.dew.common.http.MultiPartBodyPublisher;
+import com.ecfront.dew.common.http.RateLimiter;
+import com.ecfront.dew.common.http.RequestCoalescer;
+import com.ecfront.dew.common.http.ResponseCache;
+import com.ecfront.dew.common.http.RetryPolicy;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.*;
 import java.io.*;
-import java.lang.management.ManagementFactory;
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
-import java.math.BigDecimal;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
-import java.security.cert.X509Certificate;
-import java.time.Duration;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
 import java.util.function.Function;
-import java.util.function.Supplier;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * HTTP操作.
@@ -41,8 +51,20 @@ public class HttpHelper {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(HttpHelper.class);
 
-    private final HttpClient httpClient;
+    private static final Map<String, HttpHelper> PROFILES = new ConcurrentHashMap<>();
+
+    private final HttpClientProfile profile;
+    private final int requestTimeoutMS;
+    private volatile HttpClient httpClient;
     private Function<PreRequestContext, PreRequestContext> preRequestFun;
+    private ResponseCache responseCache;
+    private RequestCoalescer requestCoalescer;
+    private RetryPolicy retryPolicy;
+    private HedgePolicy hedgePolicy;
+    private RateLimiter rateLimiter;
+    private CircuitBreaker circuitBreaker;
+    private Compression compression;
+    private final List<HttpMetricsListener> metricsListeners = new CopyOnWriteArrayList<>();
 
     /**
      * 初始化.
@@ -51,41 +73,68 @@ public class HttpHelper {
      * @param autoRedirect     302状态下是否自动跳转
      */
     HttpHelper(int defaultTimeoutMS, boolean autoRedirect) {
-        final Properties props = System.getProperties();
-        props.setProperty("jdk.internal.httpclient.disableHostnameVerification", Boolean.TRUE.toString());
-        var allowAllHeaders = ManagementFactory.getRuntimeMXBean().getInputArguments().stream().anyMatch(arg ->
-                arg.contains("--add-opens=java.net.http/jdk.internal.net.http.common"));
-        if (allowAllHeaders) {
-            try {
-                // 解决JDK11对请求头限制的Bug.
-                // 如果请求头有包含 "connection", "content-length", "date", "expect", "from", "host", "upgrade", "via", "warning" 字段，
-                // 则需要调用此方法解除限制。
-                // NOTE: 需要在运行参数中添加 --add-opens java.net.http/jdk.internal.net.http.common=ALL-UNNAMED
-                // @see <a href="https://bugs.openjdk.java.net/browse/JDK-8213696">JDK-8213696</a>
-                var jdkUtilsClazz = Class.forName("jdk.internal.net.http.common.Utils");
-                var disallowedHeads = jdkUtilsClazz.getDeclaredField("DISALLOWED_HEADERS_SET");
-                var modifiersField = Field.class.getDeclaredField("modifiers");
-                modifiersField.setAccessible(true);
-                modifiersField.setInt(disallowedHeads, disallowedHeads.getModifiers() & ~Modifier.FINAL);
-                $.bean.setValue(null, disallowedHeads, new HashSet<String>());
-            } catch (ClassNotFoundException | NoSuchFieldException | IllegalAccessException ignore) {
-            }
-        }
-        try {
-            SSLContext ctx = SSLContext.getInstance("TLS");
-            ctx.init(new KeyManager[0], new TrustManager[]{new DefaultTrustManager()}, new SecureRandom());
-            var httpClientBuild =
-                    HttpClient.newBuilder()
-                            .followRedirects(autoRedirect ? HttpClient.Redirect.ALWAYS : HttpClient.Redirect.NEVER)
-                            .sslContext(ctx)
-                            .sslParameters(new SSLParameters());
-            if (defaultTimeoutMS != -1 && defaultTimeoutMS != 0) {
-                httpClientBuild.connectTimeout(Duration.ofMillis(defaultTimeoutMS));
+        this(defaultTimeoutMS, autoRedirect, null);
+    }
+
+    /**
+     * 初始化.
+     *
+     * @param defaultTimeoutMS 默认超时时间
+     * @param autoRedirect     302状态下是否自动跳转
+     * @param retryPolicy      重试策略，为null时不重试
+     */
+    HttpHelper(int defaultTimeoutMS, boolean autoRedirect, RetryPolicy retryPolicy) {
+        this(new HttpClientProfile("default").connectTimeoutMS(defaultTimeoutMS).autoRedirect(autoRedirect), retryPolicy);
+    }
+
+    /**
+     * 初始化.
+     *
+     * @param profile     HttpClient配置
+     * @param retryPolicy 重试策略，为null时不重试
+     */
+    HttpHelper(HttpClientProfile profile, RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        this.profile = profile;
+        this.requestTimeoutMS = profile.getRequestTimeoutMS();
+    }
+
+    // 首次请求时才创建HttpClient，只加载 $ 而不发送请求的应用无需承担SSL等初始化开销
+    private HttpClient client() {
+        HttpClient client = httpClient;
+        if (client == null) {
+            synchronized (this) {
+                client = httpClient;
+                if (client == null) {
+                    client = profile.configure(HttpClient.newBuilder())
+                            .sslContext(HttpClientSupport.SSL_CONTEXT)
+                            .sslParameters(new SSLParameters())
+                            .build();
+                    httpClient = client;
+                }
             }
-            httpClient = httpClientBuild.build();
-        } catch (NoSuchAlgorithmException | KeyManagementException e) {
-            throw new RTGeneralSecurityException(e);
         }
+        return client;
+    }
+
+    /**
+     * 获取指定配置的实例，同名的配置只在首次调用时创建实例.
+     *
+     * @param profile HttpClient配置
+     * @return the http helper
+     */
+    static HttpHelper pick(HttpClientProfile profile) {
+        return PROFILES.computeIfAbsent(profile.getName(), name -> new HttpHelper(profile, null));
+    }
+
+    /**
+     * 获取指定配置名称的实例，不存在时使用默认配置创建.
+     *
+     * @param profileName 配置名称
+     * @return the http helper
+     */
+    static HttpHelper pick(String profileName) {
+        return PROFILES.computeIfAbsent(profileName, name -> new HttpHelper(new HttpClientProfile(name), null));
     }
 
     /**
@@ -97,6 +146,159 @@ public class HttpHelper {
         this.preRequestFun = preRequestFun;
     }
 
+    /**
+     * 设置压缩.
+     * <p>
+     * 设置后请求时发送 {@code Accept-Encoding} 并自动解压响应体，可选地压缩超过阈值的请求体，设置为null时关闭压缩
+     *
+     * @param compression 压缩
+     */
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * 添加请求监听器，如 {@link HttpMetrics} .
+     *
+     * @param listener 请求监听器
+     */
+    public void addMetricsListener(HttpMetricsListener listener) {
+        metricsListeners.add(listener);
+    }
+
+    /**
+     * 删除请求监听器.
+     *
+     * @param listener 请求监听器
+     */
+    public void removeMetricsListener(HttpMetricsListener listener) {
+        metricsListeners.remove(listener);
+    }
+
+    /**
+     * 设置客户端限流.
+     * <p>
+     * 设置后所有实际发出的请求（包含重试及对冲请求）都需在限制内执行，设置为null时关闭限流。
+     * 对于流式响应，并发许可在收到响应头时即释放
+     *
+     * @param rateLimiter 客户端限流
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * 获取客户端限流.
+     *
+     * @return 客户端限流，未设置时为null
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * 设置按host的熔断.
+     * <p>
+     * 设置后实际发出的请求（包含重试及对冲请求）按host计入 {@link FallbackHelper} 的降级组，熔断时请求不会建立连接，
+     * 直接以 {@link FallbackHelper.FallbackException} 结束或返回降级响应，设置为null时关闭熔断
+     *
+     * @param circuitBreaker 熔断
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * 获取按host的熔断.
+     *
+     * @return 熔断，未设置时为null
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * 设置重试策略.
+     * <p>
+     * 设置后所有请求（包含流式及分段下载请求）出现可重试的异常或状态码时按策略重试，设置为null时关闭重试
+     *
+     * @param retryPolicy 重试策略
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * 获取重试策略.
+     *
+     * @return 重试策略，未设置时为null
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * 设置对冲请求策略.
+     * <p>
+     * 设置后返回字符串结果的幂等请求在对冲延迟内未完成时会再发起一个相同的请求，返回先成功的结果，设置为null时关闭对冲
+     *
+     * @param hedgePolicy 对冲请求策略
+     */
+    public void setHedgePolicy(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+    }
+
+    /**
+     * 获取对冲请求策略.
+     *
+     * @return 对冲请求策略，未设置时为null
+     */
+    public HedgePolicy getHedgePolicy() {
+        return hedgePolicy;
+    }
+
+    /**
+     * 设置响应缓存.
+     * <p>
+     * 设置后返回字符串结果的Get请求会按 {@code Cache-Control} 缓存，过期后使用 {@code If-None-Match} / {@code If-Modified-Since} 重新验证，
+     * 设置为null时关闭缓存
+     *
+     * @param responseCache 响应缓存
+     */
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * 获取响应缓存.
+     *
+     * @return 响应缓存，未设置时为null
+     */
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * 设置请求合并.
+     * <p>
+     * 设置后同时发起的相同的幂等请求（方法、url及请求头都相同）只实际执行一次，各调用方共享同一个结果，
+     * 设置为null时关闭合并
+     *
+     * @param requestCoalescer 请求合并
+     */
+    public void setRequestCoalescer(RequestCoalescer requestCoalescer) {
+        this.requestCoalescer = requestCoalescer;
+    }
+
+    /**
+     * 获取请求合并.
+     *
+     * @return 请求合并，未设置时为null
+     */
+    public RequestCoalescer getRequestCoalescer() {
+        return requestCoalescer;
+    }
+
     /**
      * Get请求.
      *
@@ -147,6 +349,95 @@ public class HttpHelper {
         return request("GET", url, null, header, contentType, charset, timeoutMS).result;
     }
 
+    /**
+     * 返回Json对象的Get请求.
+     * <p>
+     * 响应体直接流式解析为目标对象，不生成中间字符串，见 {@link JsonBodyHandler}
+     *
+     * @param <T>   目标类型
+     * @param url   请求url
+     * @param clazz 目标类型
+     * @return 目标对象 ，响应体为空时返回null
+     * @throws RTIOException the rtio exception
+     */
+    public <T> T get(String url, Class<T> clazz) throws RTIOException {
+        return get(url, null, $.json.mapper().constructType(clazz), -1);
+    }
+
+    /**
+     * 返回Json对象的Get请求.
+     *
+     * @param <T>           目标类型
+     * @param url           请求url
+     * @param typeReference 目标类型，如 {@code new TypeReference<List<User>>() {}}
+     * @return 目标对象 ，响应体为空时返回null
+     * @throws RTIOException the rtio exception
+     */
+    public <T> T get(String url, TypeReference<T> typeReference) throws RTIOException {
+        return get(url, null, $.json.mapper().constructType(typeReference), -1);
+    }
+
+    /**
+     * 返回Json对象的Get请求.
+     *
+     * @param <T>       目标类型
+     * @param url       请求url
+     * @param header    请求头
+     * @param type      目标类型
+     * @param timeoutMS 超时时间
+     * @return 目标对象 ，响应体为空时返回null
+     * @throws RTIOException the rtio exception
+     */
+    public <T> T get(String url, Map<String, String> header, JavaType type, int timeoutMS) throws RTIOException {
+        return await(getAsync(url, header, type, timeoutMS));
+    }
+
+    /**
+     * 返回Json对象的异步Get请求.
+     *
+     * @param <T>       目标类型
+     * @param url       请求url
+     * @param header    请求头
+     * @param type      目标类型
+     * @param timeoutMS 超时时间
+     * @return 目标对象 ，响应体为空时返回null
+     */
+    public <T> CompletableFuture<T> getAsync(String url, Map<String, String> header, JavaType type, int timeoutMS) {
+        CompletableFuture<StreamResponseWrap<T>> responseFuture =
+                requestAsync("GET", url, null, header, null, null, timeoutMS, JsonBodyHandler.<T>of($.json.mapper(), type));
+        return propagateCancel(responseFuture, responseFuture.thenApply(response -> response.body));
+    }
+
+    /**
+     * 返回 {@link Resp} 的Get请求.
+     * <p>
+     * 一次解析即完成body的类型绑定，结果同 {@link Resp#generic(String, Class)}
+     *
+     * @param <E>       body类型
+     * @param url       请求url
+     * @param bodyClazz body类型
+     * @return 响应 ，响应体为空时返回null
+     * @throws RTIOException the rtio exception
+     */
+    public <E> Resp<E> getResp(String url, Class<E> bodyClazz) throws RTIOException {
+        return getResp(url, null, bodyClazz, -1);
+    }
+
+    /**
+     * 返回 {@link Resp} 的Get请求.
+     *
+     * @param <E>       body类型
+     * @param url       请求url
+     * @param header    请求头
+     * @param bodyClazz body类型
+     * @param timeoutMS 超时时间
+     * @return 响应 ，响应体为空时返回null
+     * @throws RTIOException the rtio exception
+     */
+    public <E> Resp<E> getResp(String url, Map<String, String> header, Class<E> bodyClazz, int timeoutMS) throws RTIOException {
+        return request("GET", url, null, header, null, null, timeoutMS, JsonBodyHandler.ofResp($.json.mapper(), bodyClazz)).body;
+    }
+
     /**
      * 包含返回扩展信息的Get请求.
      *
@@ -203,7 +494,7 @@ public class HttpHelper {
      * @param url  请求url
      * @param body 请求体
      *             如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *             如果content-type是multipart/form-data时，body只能是File格式
+     *             如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *             其它情况下，body可以是任意格式
      * @return 请求结果 string
      * @throws RTIOException the rtio exception
@@ -218,7 +509,7 @@ public class HttpHelper {
      * @param url    请求url
      * @param body   请求体
      *               如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *               如果content-type是multipart/form-data时，body只能是File格式
+     *               如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *               其它情况下，body可以是任意格式
      * @param header 请求头
      * @return 请求结果 string
@@ -234,7 +525,7 @@ public class HttpHelper {
      * @param url         请求url
      * @param body        请求体
      *                    如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *                    如果content-type是multipart/form-data时，body只能是File格式
+     *                    如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *                    其它情况下，body可以是任意格式
      * @param contentType content-type
      * @return 请求结果 string
@@ -250,7 +541,7 @@ public class HttpHelper {
      * @param url         请求url
      * @param body        请求体
      *                    如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *                    如果content-type是multipart/form-data时，body只能是File格式
+     *                    如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *                    其它情况下，body可以是任意格式
      * @param header      请求头
      * @param contentType content-type
@@ -269,7 +560,7 @@ public class HttpHelper {
      * @param url  请求url
      * @param body 请求体
      *             如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *             如果content-type是multipart/form-data时，body只能是File格式
+     *             如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *             其它情况下，body可以是任意格式
      * @return 请求结果 ，包含扩展信息
      * @throws RTIOException the rtio exception
@@ -284,7 +575,7 @@ public class HttpHelper {
      * @param url    请求url
      * @param body   请求体
      *               如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *               如果content-type是multipart/form-data时，body只能是File格式
+     *               如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *               其它情况下，body可以是任意格式
      * @param header 请求Header
      * @return 请求结果 ，包含扩展信息
@@ -300,7 +591,7 @@ public class HttpHelper {
      * @param url         请求url
      * @param body        请求体
      *                    如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *                    如果content-type是multipart/form-data时，body只能是File格式
+     *                    如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *                    其它情况下，body可以是任意格式
      * @param contentType content-type
      * @return 请求结果 ，包含扩展信息
@@ -316,7 +607,7 @@ public class HttpHelper {
      * @param url         请求url
      * @param body        请求体
      *                    如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *                    如果content-type是multipart/form-data时，body只能是File格式
+     *                    如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *                    其它情况下，body可以是任意格式
      * @param header      请求头
      * @param contentType content-type
@@ -330,13 +621,39 @@ public class HttpHelper {
         return request("POST", url, body, header, contentType, charset, timeoutMS);
     }
 
+    /**
+     * 上传多个文件及表单字段的Post请求.
+     *
+     * @param url   请求url
+     * @param parts 表单字段及文件，见 {@link MultiPartBodyPublisher}
+     * @return 请求结果 ，包含扩展信息
+     * @throws RTIOException the rtio exception
+     */
+    public ResponseWrap postMultipart(String url, MultiPartBodyPublisher parts) throws RTIOException {
+        return postMultipart(url, parts, null, -1);
+    }
+
+    /**
+     * 上传多个文件及表单字段的Post请求.
+     *
+     * @param url       请求url
+     * @param parts     表单字段及文件，见 {@link MultiPartBodyPublisher}
+     * @param header    请求头
+     * @param timeoutMS 超时时间
+     * @return 请求结果 ，包含扩展信息
+     * @throws RTIOException the rtio exception
+     */
+    public ResponseWrap postMultipart(String url, MultiPartBodyPublisher parts, Map<String, String> header, int timeoutMS) throws RTIOException {
+        return request("POST", url, parts, header, null, null, timeoutMS);
+    }
+
     /**
      * Put请求.
      *
      * @param url  请求url
      * @param body 请求体
      *             如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *             如果content-type是multipart/form-data时，body只能是File格式
+     *             如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *             其它情况下，body可以是任意格式
      * @return 请求结果 string
      * @throws RTIOException the rtio exception
@@ -351,7 +668,7 @@ public class HttpHelper {
      * @param url    请求url
      * @param body   请求体
      *               如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *               如果content-type是multipart/form-data时，body只能是File格式
+     *               如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *               其它情况下，body可以是任意格式
      * @param header 请求头
      * @return 请求结果 string
@@ -367,7 +684,7 @@ public class HttpHelper {
      * @param url         请求url
      * @param body        请求体
      *                    如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *                    如果content-type是multipart/form-data时，body只能是File格式
+     *                    如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *                    其它情况下，body可以是任意格式
      * @param contentType content-type
      * @return 请求结果 string
@@ -383,7 +700,7 @@ public class HttpHelper {
      * @param url         请求url
      * @param body        请求体
      *                    如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *                    如果content-type是multipart/form-data时，body只能是File格式
+     *                    如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *                    其它情况下，body可以是任意格式
      * @param header      请求头
      * @param contentType content-type
@@ -402,7 +719,7 @@ public class HttpHelper {
      * @param url  请求url
      * @param body 请求体
      *             如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *             如果content-type是multipart/form-data时，body只能是File格式
+     *             如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *             其它情况下，body可以是任意格式
      * @return 请求结果 ，包含扩展信息
      * @throws RTIOException the rtio exception
@@ -417,7 +734,7 @@ public class HttpHelper {
      * @param url    请求url
      * @param body   请求体
      *               如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *               如果content-type是multipart/form-data时，body只能是File格式
+     *               如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *               其它情况下，body可以是任意格式
      * @param header 请求头
      * @return 请求结果 ，包含扩展信息
@@ -433,7 +750,7 @@ public class HttpHelper {
      * @param url         请求url
      * @param body        请求体
      *                    如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *                    如果content-type是multipart/form-data时，body只能是File格式
+     *                    如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *                    其它情况下，body可以是任意格式
      * @param contentType content-type
      * @return 请求结果 ，包含扩展信息
@@ -449,7 +766,7 @@ public class HttpHelper {
      * @param url         请求url
      * @param body        请求体
      *                    如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *                    如果content-type是multipart/form-data时，body只能是File格式
+     *                    如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *                    其它情况下，body可以是任意格式
      * @param header      请求头
      * @param contentType content-type
@@ -469,7 +786,7 @@ public class HttpHelper {
      * @param url  请求url
      * @param body 请求体
      *             如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *             如果content-type是multipart/form-data时，body只能是File格式
+     *             如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *             其它情况下，body可以是任意格式
      * @return 请求结果 string
      * @throws RTIOException the rtio exception
@@ -484,7 +801,7 @@ public class HttpHelper {
      * @param url    请求url
      * @param body   请求体
      *               如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *               如果content-type是multipart/form-data时，body只能是File格式
+     *               如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *               其它情况下，body可以是任意格式
      * @param header 请求头
      * @return 请求结果 string
@@ -500,7 +817,7 @@ public class HttpHelper {
      * @param url         请求url
      * @param body        请求体
      *                    如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *                    如果content-type是multipart/form-data时，body只能是File格式
+     *                    如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *                    其它情况下，body可以是任意格式
      * @param contentType content-type
      * @return 请求结果 string
@@ -516,7 +833,7 @@ public class HttpHelper {
      * @param url         请求url
      * @param body        请求体
      *                    如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *                    如果content-type是multipart/form-data时，body只能是File格式
+     *                    如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *                    其它情况下，body可以是任意格式
      * @param header      请求头
      * @param contentType content-type
@@ -536,7 +853,7 @@ public class HttpHelper {
      * @param url  请求url
      * @param body 请求体
      *             如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *             如果content-type是multipart/form-data时，body只能是File格式
+     *             如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *             其它情况下，body可以是任意格式
      * @return 请求结果 ，包含扩展信息
      * @throws RTIOException the rtio exception
@@ -551,7 +868,7 @@ public class HttpHelper {
      * @param url    请求url
      * @param body   请求体
      *               如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *               如果content-type是multipart/form-data时，body只能是File格式
+     *               如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *               其它情况下，body可以是任意格式
      * @param header 请求头
      * @return 请求结果 ，包含扩展信息
@@ -567,7 +884,7 @@ public class HttpHelper {
      * @param url         请求url
      * @param body        请求体
      *                    如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *                    如果content-type是multipart/form-data时，body只能是File格式
+     *                    如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *                    其它情况下，body可以是任意格式
      * @param contentType content-type
      * @return 请求结果 ，包含扩展信息
@@ -583,7 +900,7 @@ public class HttpHelper {
      * @param url         请求url
      * @param body        请求体
      *                    如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *                    如果content-type是multipart/form-data时，body只能是File格式
+     *                    如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
      *                    其它情况下，body可以是任意格式
      * @param header      请求头
      * @param contentType content-type
@@ -799,6 +1116,353 @@ public class HttpHelper {
         return request("OPTIONS", url, null, header, contentType, charset, timeoutMS).head;
     }
 
+    /**
+     * 异步Get请求.
+     *
+     * @param url 请求url
+     * @return 请求结果 ，包含扩展信息
+     */
+    public CompletableFuture<ResponseWrap> getAsync(String url) {
+        return getAsync(url, null, null, null, -1);
+    }
+
+    /**
+     * 异步Get请求.
+     *
+     * @param url    请求url
+     * @param header 请求头
+     * @return 请求结果 ，包含扩展信息
+     */
+    public CompletableFuture<ResponseWrap> getAsync(String url, Map<String, String> header) {
+        return getAsync(url, header, null, null, -1);
+    }
+
+    /**
+     * 异步Get请求.
+     *
+     * @param url         请求url
+     * @param header      请求头
+     * @param contentType content-type
+     * @param charset     请求与返回内容编码
+     * @param timeoutMS   超时时间
+     * @return 请求结果 ，包含扩展信息
+     */
+    public CompletableFuture<ResponseWrap> getAsync(String url, Map<String, String> header, String contentType, String charset, int timeoutMS) {
+        return requestAsync("GET", url, null, header, contentType, charset, timeoutMS);
+    }
+
+    /**
+     * 异步Post请求.
+     *
+     * @param url  请求url
+     * @param body 请求体，规则同 {@link #post(String, Object)}
+     * @return 请求结果 ，包含扩展信息
+     */
+    public CompletableFuture<ResponseWrap> postAsync(String url, Object body) {
+        return postAsync(url, body, null, null, null, -1);
+    }
+
+    /**
+     * 异步Post请求.
+     *
+     * @param url    请求url
+     * @param body   请求体，规则同 {@link #post(String, Object)}
+     * @param header 请求头
+     * @return 请求结果 ，包含扩展信息
+     */
+    public CompletableFuture<ResponseWrap> postAsync(String url, Object body, Map<String, String> header) {
+        return postAsync(url, body, header, null, null, -1);
+    }
+
+    /**
+     * 异步Post请求.
+     *
+     * @param url         请求url
+     * @param body        请求体，规则同 {@link #post(String, Object)}
+     * @param header      请求头
+     * @param contentType content-type
+     * @param charset     请求与返回内容编码
+     * @param timeoutMS   超时时间
+     * @return 请求结果 ，包含扩展信息
+     */
+    public CompletableFuture<ResponseWrap> postAsync(String url, Object body, Map<String, String> header, String contentType, String charset,
+                                                     int timeoutMS) {
+        return requestAsync("POST", url, body, header, contentType, charset, timeoutMS);
+    }
+
+    /**
+     * 异步Put请求.
+     *
+     * @param url  请求url
+     * @param body 请求体，规则同 {@link #put(String, Object)}
+     * @return 请求结果 ，包含扩展信息
+     */
+    public CompletableFuture<ResponseWrap> putAsync(String url, Object body) {
+        return putAsync(url, body, null, null, null, -1);
+    }
+
+    /**
+     * 异步Put请求.
+     *
+     * @param url         请求url
+     * @param body        请求体，规则同 {@link #put(String, Object)}
+     * @param header      请求头
+     * @param contentType content-type
+     * @param charset     请求与返回内容编码
+     * @param timeoutMS   超时时间
+     * @return 请求结果 ，包含扩展信息
+     */
+    public CompletableFuture<ResponseWrap> putAsync(String url, Object body, Map<String, String> header, String contentType, String charset,
+                                                    int timeoutMS) {
+        return requestAsync("PUT", url, body, header, contentType, charset, timeoutMS);
+    }
+
+    /**
+     * 异步Delete请求.
+     *
+     * @param url 请求url
+     * @return 请求结果 ，包含扩展信息
+     */
+    public CompletableFuture<ResponseWrap> deleteAsync(String url) {
+        return deleteAsync(url, null, null, null, -1);
+    }
+
+    /**
+     * 异步Delete请求.
+     *
+     * @param url         请求url
+     * @param header      请求头
+     * @param contentType content-type
+     * @param charset     请求与返回内容编码
+     * @param timeoutMS   超时时间
+     * @return 请求结果 ，包含扩展信息
+     */
+    public CompletableFuture<ResponseWrap> deleteAsync(String url, Map<String, String> header, String contentType, String charset, int timeoutMS) {
+        return requestAsync("DELETE", url, null, header, contentType, charset, timeoutMS);
+    }
+
+    /**
+     * 下载文件.
+     * <p>
+     * 响应体直接写入文件，不在内存中缓存
+     *
+     * @param url  请求url
+     * @param file 目标文件
+     * @return 请求结果 ，响应体为目标文件
+     * @throws RTIOException the rtio exception
+     */
+    public StreamResponseWrap<Path> download(String url, Path file) throws RTIOException {
+        return download(url, null, file, -1);
+    }
+
+    /**
+     * 下载文件.
+     * <p>
+     * 响应体直接写入文件，不在内存中缓存
+     *
+     * @param url       请求url
+     * @param header    请求头
+     * @param file      目标文件
+     * @param timeoutMS 超时时间
+     * @return 请求结果 ，响应体为目标文件
+     * @throws RTIOException the rtio exception
+     */
+    public StreamResponseWrap<Path> download(String url, Map<String, String> header, Path file, int timeoutMS) throws RTIOException {
+        return request("GET", url, null, header, null, null, timeoutMS,
+                HttpResponse.BodyHandlers.ofFile(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    /**
+     * 多连接分段下载文件.
+     * <p>
+     * 服务端支持 {@code Accept-Ranges: bytes} 时将文件切分成多个分段并发下载，失败的分段会重试，
+     * 中断后再次下载同一文件时会从未完成的分段继续，更多配置见 {@link RangeDownloader}
+     *
+     * @param url         请求url
+     * @param file        目标文件
+     * @param connections 并发连接数
+     * @return 目标文件 path
+     * @throws RTIOException the rtio exception
+     */
+    public Path downloadRanged(String url, Path file, int connections) throws RTIOException {
+        return downloadRanged(url, null, file, connections, -1);
+    }
+
+    /**
+     * 多连接分段下载文件.
+     * <p>
+     * 服务端支持 {@code Accept-Ranges: bytes} 时将文件切分成多个分段并发下载，失败的分段会重试，
+     * 中断后再次下载同一文件时会从未完成的分段继续，更多配置见 {@link RangeDownloader}
+     *
+     * @param url         请求url
+     * @param header      请求头
+     * @param file        目标文件
+     * @param connections 并发连接数
+     * @param timeoutMS   每个请求的超时时间
+     * @return 目标文件 path
+     * @throws RTIOException the rtio exception
+     */
+    public Path downloadRanged(String url, Map<String, String> header, Path file, int connections, int timeoutMS) throws RTIOException {
+        return new RangeDownloader(this).connections(connections).timeoutMS(timeoutMS).download(url, header, file);
+    }
+
+    /**
+     * 分段断点续传上传文件.
+     * <p>
+     * 将文件切分成多个分段并发上传（默认以 {@code Content-Range} 描述分段），失败的分段会重试，
+     * 中断后再次上传同一文件时会从未完成的分段继续，更多配置见 {@link ChunkedUploader}
+     *
+     * @param url         请求url
+     * @param file        源文件
+     * @param connections 并发连接数
+     * @return 请求结果
+     * @throws RTIOException the rtio exception
+     */
+    public ResponseWrap uploadChunked(String url, Path file, int connections) throws RTIOException {
+        return uploadChunked(url, null, file, connections, -1);
+    }
+
+    /**
+     * 分段断点续传上传文件.
+     * <p>
+     * 将文件切分成多个分段并发上传（默认以 {@code Content-Range} 描述分段），失败的分段会重试，
+     * 中断后再次上传同一文件时会从未完成的分段继续，更多配置见 {@link ChunkedUploader}
+     *
+     * @param url         请求url
+     * @param header      请求头
+     * @param file        源文件
+     * @param connections 并发连接数
+     * @param timeoutMS   每个请求的超时时间
+     * @return 请求结果
+     * @throws RTIOException the rtio exception
+     */
+    public ResponseWrap uploadChunked(String url, Map<String, String> header, Path file, int connections, int timeoutMS) throws RTIOException {
+        return new ChunkedUploader(this).connections(connections).timeoutMS(timeoutMS).upload(url, header, file);
+    }
+
+    /**
+     * 以输入流形式获取响应体的Get请求.
+     * <p>
+     * 调用方需要在读取完成后关闭输入流
+     *
+     * @param url 请求url
+     * @return 请求结果 ，响应体为输入流
+     * @throws RTIOException the rtio exception
+     */
+    public StreamResponseWrap<InputStream> getStream(String url) throws RTIOException {
+        return getStream(url, null, -1);
+    }
+
+    /**
+     * 以输入流形式获取响应体的Get请求.
+     * <p>
+     * 调用方需要在读取完成后关闭输入流
+     *
+     * @param url       请求url
+     * @param header    请求头
+     * @param timeoutMS 超时时间
+     * @return 请求结果 ，响应体为输入流
+     * @throws RTIOException the rtio exception
+     */
+    public StreamResponseWrap<InputStream> getStream(String url, Map<String, String> header, int timeoutMS) throws RTIOException {
+        return request("GET", url, null, header, null, null, timeoutMS, HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    /**
+     * 按行获取响应体的Get请求.
+     * <p>
+     * 调用方需要在读取完成后关闭行流
+     *
+     * @param url 请求url
+     * @return 请求结果 ，响应体为行流
+     * @throws RTIOException the rtio exception
+     */
+    public StreamResponseWrap<Stream<String>> getLines(String url) throws RTIOException {
+        return getLines(url, null, -1);
+    }
+
+    /**
+     * 按行获取响应体的Get请求.
+     * <p>
+     * 调用方需要在读取完成后关闭行流
+     *
+     * @param url       请求url
+     * @param header    请求头
+     * @param timeoutMS 超时时间
+     * @return 请求结果 ，响应体为行流
+     * @throws RTIOException the rtio exception
+     */
+    public StreamResponseWrap<Stream<String>> getLines(String url, Map<String, String> header, int timeoutMS) throws RTIOException {
+        return request("GET", url, null, header, null, null, timeoutMS, HttpResponse.BodyHandlers.ofLines());
+    }
+
+    /**
+     * 按数据块消费响应体的Get请求.
+     * <p>
+     * 数据块交由订阅者处理，订阅者通过 {@link Flow.Subscription#request(long)} 控制读取速度（背压），
+     * 订阅者完成（onComplete/onError）后返回
+     *
+     * @param url        请求url
+     * @param header     请求头
+     * @param timeoutMS  超时时间
+     * @param subscriber 数据块订阅者
+     * @return 请求结果 ，不包含响应体
+     * @throws RTIOException the rtio exception
+     */
+    public StreamResponseWrap<Void> getChunks(String url, Map<String, String> header, int timeoutMS,
+                                              Flow.Subscriber<? super List<ByteBuffer>> subscriber) throws RTIOException {
+        return request("GET", url, null, header, null, null, timeoutMS, HttpResponse.BodyHandlers.fromSubscriber(subscriber));
+    }
+
+    /**
+     * 订阅SSE或NDJSON事件流.
+     * <p>
+     * 调用返回的 {@link EventStream} 的subscribe方法时才发起请求，每次订阅都是独立的连接
+     *
+     * @param <T>       事件数据类型
+     * @param url       请求url
+     * @param header    请求头
+     * @param format    事件格式
+     * @param dataClazz 事件数据类型，为String时不做反序列化
+     * @return 事件流
+     */
+    public <T> EventStream<T> eventStream(String url, Map<String, String> header, EventStream.Format format, Class<T> dataClazz) {
+        return new EventStream<>(format, $.json.mapper(), $.json.mapper().constructType(dataClazz), (streamHeader, bodyHandler) -> {
+            if (header != null) {
+                streamHeader.putAll(header);
+            }
+            return requestAsync("GET", url, null, streamHeader, null, null, -1, bodyHandler);
+        });
+    }
+
+    /**
+     * 批量并发请求.
+     * <p>
+     * 所有请求共用当前的HttpClient并发执行，同时执行的请求数不超过concurrencyLimit
+     *
+     * @param specs            请求列表
+     * @param concurrencyLimit 最大并发数
+     * @return 批量请求结果，可按请求顺序或完成顺序获取
+     */
+    public RequestBatch requestAll(List<RequestSpec> specs, int concurrencyLimit) {
+        return requestAll(specs, concurrencyLimit, -1);
+    }
+
+    /**
+     * 批量并发请求.
+     * <p>
+     * 所有请求共用当前的HttpClient并发执行，同时执行的请求数不超过concurrencyLimit，
+     * 超过整体截止时间后未开始的请求不再执行，未完成的请求被取消并以 {@link RTIOException} 结束
+     *
+     * @param specs            请求列表
+     * @param concurrencyLimit 最大并发数
+     * @param deadlineMS       整体截止时间，-1表示不限制
+     * @return 批量请求结果，可按请求顺序或完成顺序获取
+     */
+    public RequestBatch requestAll(List<RequestSpec> specs, int concurrencyLimit, int deadlineMS) {
+        return RequestBatch.start(this, specs, concurrencyLimit, deadlineMS);
+    }
+
     /**
      * 发起请求.
      *
@@ -806,7 +1470,8 @@ public class HttpHelper {
      * @param url            请求url
      * @param body           请求体
      *                       如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
-     *                       如果content-type是multipart/form-data时，body只能是File格式
+     *                       如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
+     *                       如果body是 {@link MultiPartBodyPublisher} 时，以multipart/form-data形式提交，忽略content-type
      *                       其它情况下，body可以是任意格式
      * @param header         请求Header
      * @param contentType    content-type
@@ -817,156 +1482,186 @@ public class HttpHelper {
      */
     public ResponseWrap request(String method, String url, Object body, Map<String, String> header, String contentType, String requestCharset,
                                 int timeoutMS) throws RTIOException {
-        if (header == null) {
-            header = new HashMap<>();
-        }
-        if (body instanceof File && (contentType == null || contentType.isEmpty())) {
-            contentType = $.mime.getContentType((File) body);
-        } else if (contentType == null) {
-            contentType = "application/json; charset=utf-8";
-        }
-        if (requestCharset == null) {
-            requestCharset = "UTF-8";
-        }
-        HttpRequest.BodyPublisher entity = null;
-        if (body != null) {
-            try {
-                switch (contentType.toLowerCase()) {
-                    case "application/x-www-form-urlencoded":
-                        if (body instanceof Map<?, ?>) {
-                            String finalRequestCharset = requestCharset;
-                            var strBody = ((Map<String, String>) body).entrySet().stream().map(entry -> {
-                                var key = URLEncoder.encode(entry.getKey(), Charset.forName(finalRequestCharset));
-                                var value = URLEncoder.encode(entry.getValue(), Charset.forName(finalRequestCharset));
-                                return key + "=" + value;
-                            }).collect(Collectors.joining("&"));
-                            entity = HttpRequest.BodyPublishers.ofString(strBody, Charset.forName(requestCharset));
-
-                        } else if (body instanceof String) {
-                            entity = HttpRequest.BodyPublishers.ofString((String) body, Charset.forName(requestCharset));
-                        } else {
-                            throw new IllegalArgumentException("The body only support Map OR String types" + " when content type is "
-                                    + "application/x-www-form-urlencoded");
-                        }
-                        break;
-                    case "multipart/form-data":
-                        header.put("Content-Transfer-Encoding", "binary");
-                        var fileBody = (File) body;
-                        MultiPartBodyPublisher publisher = new MultiPartBodyPublisher().addPart(fileBody.getName(), () -> {
-                            try {
-                                return new FileInputStream(fileBody);
-                            } catch (FileNotFoundException e) {
-                                throw new RTIOException(e);
-                            }
-                        }, fileBody.getName(), $.mime.getContentType(fileBody));
-                        header.put("Content-Type", "multipart/form-data; boundary=" + publisher.getBoundary());
-                        entity = publisher.build();
-                        break;
-                    default:
-                        if (body instanceof String) {
-                            entity = HttpRequest.BodyPublishers.ofString((String) body, Charset.forName(requestCharset));
-                        } else if (body instanceof Integer || body instanceof Long || body instanceof Float || body instanceof Double
-                                || body instanceof BigDecimal || body instanceof Boolean) {
-                            entity = HttpRequest.BodyPublishers.ofString(body.toString(), Charset.forName(requestCharset));
-                        } else if (body instanceof Date) {
-                            entity = HttpRequest.BodyPublishers.ofString(((Date) body).getTime() + "", Charset.forName(requestCharset));
-                        } else if (body instanceof File) {
-                            entity = HttpRequest.BodyPublishers.ofFile(((File) body).toPath());
-                        } else if (body instanceof InputStream) {
-                            entity = HttpRequest.BodyPublishers.fromPublisher(
-                                    HttpRequest.BodyPublishers.ofInputStream(() -> (InputStream) body),
-                                    ((InputStream) body).available());
-                        } else {
-                            entity = HttpRequest.BodyPublishers.ofString($.json.toJsonString(body), Charset.forName(requestCharset));
-                        }
-                }
-            } catch (IOException e) {
-                throw new RTIOException(e);
-            }
-        }
-        if (!header.containsKey("Content-Type")) {
-            header.put("Content-Type", contentType);
-        }
-        if (preRequestFun != null) {
-            var preRequestContext =
-                    preRequestFun.apply(new PreRequestContext(method.toUpperCase(), url, entity, header, timeoutMS));
-            method = preRequestContext.getMethod();
-            url = preRequestContext.getUrl();
-            entity = preRequestContext.getEntity();
-            header = preRequestContext.getHeader();
-            timeoutMS = preRequestContext.getTimeoutMS();
-        }
-        var builder = HttpRequest.newBuilder();
-        switch (method.toUpperCase()) {
-            case "GET":
-                builder.GET();
-                break;
-            case "POST":
-                builder.POST(entity);
-                break;
-            case "PUT":
-                builder.PUT(entity);
-                break;
-            case "DELETE":
-                builder.DELETE();
-                break;
-            case "HEAD":
-                builder.method("HEAD", HttpRequest.BodyPublishers.noBody());
-                break;
-            case "OPTIONS":
-                builder.method("OPTIONS", HttpRequest.BodyPublishers.noBody());
-                break;
-            case "TRACE":
-                builder.method("TRACE", HttpRequest.BodyPublishers.noBody());
-                break;
-            case "PATCH":
-                builder.method("PATCH", entity);
-                break;
-            default:
-                throw new RTException("The method [" + method + "] is NOT exist.");
-        }
-        if (timeoutMS != -1 && timeoutMS != 0) {
-            builder.timeout(Duration.ofMillis(timeoutMS));
-        }
-        for (Map.Entry<String, String> entry : header.entrySet()) {
-            builder.setHeader(entry.getKey(), entry.getValue());
-        }
+        return await(requestAsync(method, url, body, header, contentType, requestCharset, timeoutMS));
+    }
+
+    /**
+     * 发起异步请求.
+     * <p>
+     * 请求体的编码规则、前置拦截器及超时处理与 {@link #request(String, String, Object, Map, String, String, int)} 一致，
+     * 请求失败时返回的Future以 {@link RTIOException} 结束
+     *
+     * @param method         http方法
+     * @param url            请求url
+     * @param body           请求体
+     *                       如果content-type是application/x-www-form-urlencoded 且 body是map时，会以form形式提交，即视为表单内容
+     *                       如果content-type是multipart/form-data时，body可以是File或 {@link MultiPartBodyPublisher} 格式
+     *                       如果body是 {@link MultiPartBodyPublisher} 时，以multipart/form-data形式提交，忽略content-type
+     *                       其它情况下，body可以是任意格式
+     * @param header         请求Header
+     * @param contentType    content-type
+     * @param requestCharset 请求内容编码
+     * @param timeoutMS      超时时间
+     * @return 请求结果 ，包含扩展信息
+     */
+    public CompletableFuture<ResponseWrap> requestAsync(String method, String url, Object body, Map<String, String> header, String contentType,
+                                                        String requestCharset, int timeoutMS) {
+        HttpRequest httpRequest;
         try {
-            builder.uri(new URI(url));
-        } catch (URISyntaxException e) {
-            throw new RTException("The URL [" + url + "] is NOT valid.");
+            httpRequest = buildRequest(method, url, body, header, contentType, requestCharset, timeoutMS);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
         }
-        LOGGER.trace("HTTP [" + method + "]" + url);
-        var httpRequest = builder.build();
+        CompletableFuture<ResponseWrap> responseFuture = requestCoalescer != null
+                ? requestCoalescer.execute(httpRequest, this::cachedExchange) : cachedExchange(httpRequest);
+        CircuitBreaker currentCircuitBreaker = circuitBreaker;
+        return currentCircuitBreaker == null ? responseFuture
+                : propagateCancel(responseFuture, currentCircuitBreaker.fallback(httpRequest, responseFuture));
+    }
+
+    /**
+     * 使用自定义响应体处理器发起请求.
+     * <p>
+     * 响应体不会缓存为字符串，可使用 {@link HttpResponse.BodyHandlers} 将其写入文件、转成输入流、按行读取或按块消费
+     *
+     * @param <T>            响应体类型
+     * @param method         http方法
+     * @param url            请求url
+     * @param body           请求体，规则同 {@link #request(String, String, Object, Map, String, String, int)}
+     * @param header         请求Header
+     * @param contentType    content-type
+     * @param requestCharset 请求内容编码
+     * @param timeoutMS      超时时间
+     * @param bodyHandler    响应体处理器
+     * @return 请求结果 ，包含扩展信息
+     * @throws RTIOException the rtio exception
+     */
+    public <T> StreamResponseWrap<T> request(String method, String url, Object body, Map<String, String> header, String contentType,
+                                             String requestCharset, int timeoutMS, HttpResponse.BodyHandler<T> bodyHandler) throws RTIOException {
+        return await(requestAsync(method, url, body, header, contentType, requestCharset, timeoutMS, bodyHandler));
+    }
+
+    /**
+     * 使用自定义响应体处理器发起异步请求.
+     *
+     * @param <T>            响应体类型
+     * @param method         http方法
+     * @param url            请求url
+     * @param body           请求体，规则同 {@link #request(String, String, Object, Map, String, String, int)}
+     * @param header         请求Header
+     * @param contentType    content-type
+     * @param requestCharset 请求内容编码
+     * @param timeoutMS      超时时间
+     * @param bodyHandler    响应体处理器
+     * @return 请求结果 ，包含扩展信息
+     */
+    public <T> CompletableFuture<StreamResponseWrap<T>> requestAsync(String method, String url, Object body, Map<String, String> header,
+                                                                     String contentType, String requestCharset, int timeoutMS,
+                                                                     HttpResponse.BodyHandler<T> bodyHandler) {
+        HttpRequest httpRequest;
         try {
-            var httpResponse = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
-            ResponseWrap responseWrap = new ResponseWrap();
-            if (httpResponse.body() != null) {
-                responseWrap.result = httpResponse.body();
-            } else {
-                responseWrap.result = "";
-            }
-            responseWrap.statusCode = httpResponse.statusCode();
-            responseWrap.head = httpResponse.headers().map();
-            return responseWrap;
-        } catch (IOException | InterruptedException e) {
-            LOGGER.warn("HTTP [" + httpRequest.method() + "] " + url + " ERROR.");
-            throw new RTIOException(e);
+            httpRequest = buildRequest(method, url, body, header, contentType, requestCharset, timeoutMS);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
         }
+        return exchange(httpRequest, bodyHandler);
     }
 
-    private static class DefaultTrustManager implements X509TrustManager {
-        @Override
-        public void checkClientTrusted(X509Certificate[] arg0, String arg1) {
+    private CompletableFuture<ResponseWrap> cachedExchange(HttpRequest httpRequest) {
+        if (responseCache != null && "GET".equals(httpRequest.method())) {
+            return responseCache.execute(httpRequest, this::hedgedExchange);
         }
+        return hedgedExchange(httpRequest);
+    }
 
-        @Override
-        public void checkServerTrusted(X509Certificate[] arg0, String arg1) {
+    private CompletableFuture<ResponseWrap> hedgedExchange(HttpRequest httpRequest) {
+        if (hedgePolicy != null) {
+            return hedgePolicy.execute(httpRequest, this::exchange);
         }
+        return exchange(httpRequest);
+    }
+
+    private CompletableFuture<ResponseWrap> exchange(HttpRequest httpRequest) {
+        CompletableFuture<StreamResponseWrap<String>> responseFuture = exchange(httpRequest, HttpResponse.BodyHandlers.ofString());
+        return propagateCancel(responseFuture, responseFuture
+                .thenApply(streamResponseWrap -> {
+                    ResponseWrap responseWrap = new ResponseWrap();
+                    if (streamResponseWrap.body != null) {
+                        responseWrap.result = streamResponseWrap.body;
+                    } else {
+                        responseWrap.result = "";
+                    }
+                    responseWrap.statusCode = streamResponseWrap.statusCode;
+                    responseWrap.head = streamResponseWrap.head;
+                    return responseWrap;
+                }));
+    }
+
+    private <T> CompletableFuture<StreamResponseWrap<T>> exchange(HttpRequest httpRequest, HttpResponse.BodyHandler<T> bodyHandler) {
+        Compression currentCompression = compression;
+        HttpResponse.BodyHandler<T> actualBodyHandler = currentCompression == null ? bodyHandler : currentCompression.decoding(bodyHandler);
+        CompletableFuture<HttpResponse<T>> responseFuture = retryPolicy == null
+                ? send(httpRequest, actualBodyHandler)
+                : retryPolicy.execute(httpRequest, actualBodyHandler, this::send);
+        return propagateCancel(responseFuture, responseFuture
+                .handle((httpResponse, e) -> {
+                    if (e != null) {
+                        LOGGER.warn("HTTP [" + httpRequest.method() + "] " + httpRequest.uri() + " ERROR.");
+                        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                        throw cause instanceof FallbackHelper.FallbackException ? (FallbackHelper.FallbackException) cause : new RTIOException(cause);
+                    }
+                    StreamResponseWrap<T> streamResponseWrap = new StreamResponseWrap<>();
+                    streamResponseWrap.statusCode = httpResponse.statusCode();
+                    streamResponseWrap.body = httpResponse.body();
+                    // HEAD请求没有可解压的响应体，保留原始的响应头
+                    streamResponseWrap.head = currentCompression == null || "HEAD".equals(httpRequest.method())
+                            ? httpResponse.headers().map() : currentCompression.decodedHead(httpResponse.headers().map());
+                    return streamResponseWrap;
+                }));
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> send(HttpRequest httpRequest, HttpResponse.BodyHandler<T> bodyHandler) {
+        CircuitBreaker currentCircuitBreaker = circuitBreaker;
+        return currentCircuitBreaker == null ? limitedSend(httpRequest, bodyHandler)
+                : currentCircuitBreaker.execute(httpRequest, bodyHandler, this::limitedSend);
+    }
 
-        @Override
-        public X509Certificate[] getAcceptedIssuers() {
-            return null;
+    private <T> CompletableFuture<HttpResponse<T>> limitedSend(HttpRequest httpRequest, HttpResponse.BodyHandler<T> bodyHandler) {
+        if (rateLimiter != null) {
+            return rateLimiter.execute(httpRequest,
+                    () -> MetricsObserver.observe(metricsListeners, httpRequest, bodyHandler, client()::sendAsync));
+        }
+        return MetricsObserver.observe(metricsListeners, httpRequest, bodyHandler, client()::sendAsync);
+    }
+
+    private HttpRequest buildRequest(String method, String url, Object body, Map<String, String> header, String contentType,
+                                     String requestCharset, int timeoutMS) {
+        return HttpRequestFactory.build(method, url, body, header, contentType, requestCharset,
+                timeoutMS == -1 || timeoutMS == 0 ? requestTimeoutMS : timeoutMS, compression, preRequestFun);
+    }
+
+    // 取消返回的Future时同时取消原始请求，以便及时释放连接
+    private static <S, R> CompletableFuture<R> propagateCancel(CompletableFuture<S> source, CompletableFuture<R> dependent) {
+        dependent.whenComplete((r, e) -> {
+            if (dependent.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+        return dependent;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RTIOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RTIOException(e.getCause());
         }
     }
 
@@ -983,7 +1678,7 @@ public class HttpHelper {
         private Map<String, String> header;
         private int timeoutMS;
 
-        private PreRequestContext(String method, String url, HttpRequest.BodyPublisher entity, Map<String, String> header, int timeoutMS) {
+        PreRequestContext(String method, String url, HttpRequest.BodyPublisher entity, Map<String, String> header, int timeoutMS) {
             this.method = method;
             this.url = url;
             this.entity = entity;
@@ -1103,228 +1798,25 @@ public class HttpHelper {
     }
 
     /**
-     * From https://stackoverflow.com/questions/46392160/java-9-httpclient-send-a-multipart-form-data-request .
+     * 流式返回结果封装.
+     * <p>
+     * 与 {@link ResponseWrap} 不同，响应体为对应处理器的结果（文件、输入流、行流等），而非完整的字符串
+     *
+     * @param <T> 响应体类型
+     * @author gudaoxuri
      */
-    static class MultiPartBodyPublisher {
-        private final List<PartsSpecification> partsSpecificationList = new ArrayList<>();
-        private final String boundary = UUID.randomUUID().toString();
-
+    public static class StreamResponseWrap<T> {
         /**
-         * Build http request . body publisher.
-         *
-         * @return the http request . body publisher
-         */
-        public HttpRequest.BodyPublisher build() {
-            if (partsSpecificationList.size() == 0) {
-                throw new IllegalStateException("Must have at least one part to build multipart message.");
-            }
-            addFinalBoundaryPart();
-            return HttpRequest.BodyPublishers.ofByteArrays(PartsIterator::new);
-        }
-
-        /**
-         * Gets boundary.
-         *
-         * @return the boundary
-         */
-        public String getBoundary() {
-            return boundary;
-        }
-
-        /**
-         * Add part multi part body publisher.
-         *
-         * @param name  the name
-         * @param value the value
-         * @return the multi part body publisher
-         */
-        public MultiPartBodyPublisher addPart(String name, String value) {
-            PartsSpecification newPart = new PartsSpecification();
-            newPart.type = PartsSpecification.TYPE.STRING;
-            newPart.name = name;
-            newPart.value = value;
-            partsSpecificationList.add(newPart);
-            return this;
-        }
-
-        /**
-         * Add part multi part body publisher.
-         *
-         * @param name  the name
-         * @param value the value
-         * @return the multi part body publisher
-         */
-        public MultiPartBodyPublisher addPart(String name, Path value) {
-            PartsSpecification newPart = new PartsSpecification();
-            newPart.type = PartsSpecification.TYPE.FILE;
-            newPart.name = name;
-            newPart.path = value;
-            partsSpecificationList.add(newPart);
-            return this;
-        }
-
-        /**
-         * Add part multi part body publisher.
-         *
-         * @param name        the name
-         * @param value       the value
-         * @param filename    the filename
-         * @param contentType the content type
-         * @return the multi part body publisher
+         * The Status code.
          */
-        public MultiPartBodyPublisher addPart(String name, Supplier<InputStream> value, String filename, String contentType) {
-            PartsSpecification newPart = new PartsSpecification();
-            newPart.type = PartsSpecification.TYPE.STREAM;
-            newPart.name = name;
-            newPart.stream = value;
-            newPart.filename = filename;
-            newPart.contentType = contentType;
-            partsSpecificationList.add(newPart);
-            return this;
-        }
-
-        private void addFinalBoundaryPart() {
-            PartsSpecification newPart = new PartsSpecification();
-            newPart.type = PartsSpecification.TYPE.FINAL_BOUNDARY;
-            newPart.value = "--" + boundary + "--";
-            partsSpecificationList.add(newPart);
-        }
-
+        public int statusCode;
         /**
-         * The type Parts specification.
+         * The Body.
          */
-        static class PartsSpecification {
-
-            private PartsSpecification.TYPE type;
-            private String name;
-            private String value;
-            private Path path;
-            private Supplier<InputStream> stream;
-            private String filename;
-            private String contentType;
-
-            /**
-             * The enum Type.
-             */
-            public enum TYPE {
-                /**
-                 * String type.
-                 */
-                STRING,
-                /**
-                 * File type.
-                 */
-                FILE,
-                /**
-                 * Stream type.
-                 */
-                STREAM,
-                /**
-                 * Final boundary type.
-                 */
-                FINAL_BOUNDARY
-            }
-
-        }
-
+        public T body;
         /**
-         * The type Parts iterator.
+         * The Head.
          */
-        class PartsIterator implements Iterator<byte[]> {
-
-            private final Iterator<PartsSpecification> iter;
-            private InputStream currentFileInput;
-
-            private boolean done;
-            private byte[] next;
-
-            /**
-             * Instantiates a new Parts iterator.
-             */
-            PartsIterator() {
-                iter = partsSpecificationList.iterator();
-            }
-
-            @Override
-            public boolean hasNext() {
-                if (done) {
-                    return false;
-                }
-                if (next != null) {
-                    return true;
-                }
-                try {
-                    next = computeNext();
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
-                }
-                if (next == null) {
-                    done = true;
-                    return false;
-                }
-                return true;
-            }
-
-            @Override
-            public byte[] next() {
-                if (!hasNext()) {
-                    throw new NoSuchElementException();
-                }
-                byte[] res = next;
-                next = null;
-                return res;
-            }
-
-            private byte[] computeNext() throws IOException {
-                if (currentFileInput == null) {
-                    if (!iter.hasNext()) {
-                        return null;
-                    }
-                    PartsSpecification nextPart = iter.next();
-                    if (PartsSpecification.TYPE.STRING.equals(nextPart.type)) {
-                        String part = "--" + boundary + "\r\n" + "Content-Disposition: form-data; name=" + nextPart.name + "\r\n" + "Content-Type: " +
-                                "text/plain; charset=UTF-8\r\n\r\n" + nextPart.value + "\r\n";
-                        return part.getBytes(StandardCharsets.UTF_8);
-                    }
-                    if (PartsSpecification.TYPE.FINAL_BOUNDARY.equals(nextPart.type)) {
-                        return nextPart.value.getBytes(StandardCharsets.UTF_8);
-                    }
-                    String filename;
-                    String contentType;
-                    if (PartsSpecification.TYPE.FILE.equals(nextPart.type)) {
-                        Path path = nextPart.path;
-                        filename = path.getFileName().toString();
-                        contentType = Files.probeContentType(path);
-                        if (contentType == null) {
-                            contentType = "application/octet-stream";
-                        }
-                        currentFileInput = Files.newInputStream(path);
-                    } else {
-                        filename = nextPart.filename;
-                        contentType = nextPart.contentType;
-                        if (contentType == null) {
-                            contentType = "application/octet-stream";
-                        }
-                        currentFileInput = nextPart.stream.get();
-                    }
-                    String partHeader =
-                            "--" + boundary + "\r\n" + "Content-Disposition: form-data; name="
-                                    + nextPart.name + "; filename=" + filename + "\r\n" + "Content-Type: " + contentType + "\r\n\r\n";
-                    return partHeader.getBytes(StandardCharsets.UTF_8);
-                } else {
-                    byte[] buf = new byte[8192];
-                    int r = currentFileInput.read(buf);
-                    if (r > 0) {
-                        byte[] actualBytes = new byte[r];
-                        System.arraycopy(buf, 0, actualBytes, 0, r);
-                        return actualBytes;
-                    } else {
-                        currentFileInput.close();
-                        currentFileInput = null;
-                        return "\r\n".getBytes(StandardCharsets.UTF_8);
-                    }
-                }
-            }
-        }
+        public Map<String, List<String>> head;
     }
 }
@@ -0,0 +1,216 @@
+package com.ecfront.dew.common;
+
+import com.ecfront.dew.common.exception.RTException;
+import com.ecfront.dew.common.exception.RTIOException;
+import com.ecfront.dew.common.http.Compression;
+import com.ecfront.dew.common.http.MultiPartBodyPublisher;
+import com.ecfront.dew.common.http.RetryPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 请求构建，按content-type编码请求体、补充请求头并执行前置处理.
+ *
+ * @author gudaoxuri
+ */
+final class HttpRequestFactory {
+
+    // 沿用HttpHelper的日志名称，不影响已有的日志配置
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpHelper.class);
+
+    private HttpRequestFactory() {
+    }
+
+    /**
+     * 构建请求.
+     *
+     * @param method         http方法
+     * @param url            请求url
+     * @param body           请求体，规则同 {@link HttpHelper#request(String, String, Object, Map, String, String, int)}
+     * @param header         请求Header
+     * @param contentType    content-type
+     * @param requestCharset 请求内容编码
+     * @param timeoutMS      超时时间，-1或0表示不限制
+     * @param compression    压缩配置，为null时不压缩
+     * @param preRequestFun  前置处理，为null时不处理
+     * @return 请求
+     */
+    static HttpRequest build(String method, String url, Object body, Map<String, String> header, String contentType, String requestCharset,
+                             int timeoutMS, Compression compression,
+                             Function<HttpHelper.PreRequestContext, HttpHelper.PreRequestContext> preRequestFun) {
+        if (header == null) {
+            header = new HashMap<>();
+        }
+        if (body instanceof MultiPartBodyPublisher) {
+            contentType = "multipart/form-data";
+        } else if (body instanceof File && (contentType == null || contentType.isEmpty())) {
+            contentType = $.mime.getContentType((File) body);
+        } else if (contentType == null) {
+            contentType = "application/json; charset=utf-8";
+        }
+        if (requestCharset == null) {
+            requestCharset = "UTF-8";
+        }
+        HttpRequest.BodyPublisher entity = body == null ? null : encodeBody(body, header, contentType, requestCharset, compression);
+        if (!header.containsKey("Content-Type")) {
+            header.put("Content-Type", contentType);
+        }
+        // HEAD请求没有响应体，协商压缩后服务端可能不返回原始的Content-Length（如分段下载的探测请求）
+        if (compression != null && !header.containsKey("Accept-Encoding") && !header.containsKey("Range") && !"HEAD".equalsIgnoreCase(method)) {
+            header.put("Accept-Encoding", compression.acceptEncoding());
+        }
+        if (preRequestFun != null) {
+            var preRequestContext =
+                    preRequestFun.apply(new HttpHelper.PreRequestContext(method.toUpperCase(), url, entity, header, timeoutMS));
+            method = preRequestContext.getMethod();
+            url = preRequestContext.getUrl();
+            entity = preRequestContext.getEntity();
+            header = preRequestContext.getHeader();
+            timeoutMS = preRequestContext.getTimeoutMS();
+        }
+        var builder = newBuilder(method, entity);
+        if (timeoutMS != -1 && timeoutMS != 0) {
+            builder.timeout(Duration.ofMillis(timeoutMS));
+        }
+        for (Map.Entry<String, String> entry : header.entrySet()) {
+            builder.setHeader(entry.getKey(), entry.getValue());
+        }
+        try {
+            builder.uri(new URI(url));
+        } catch (URISyntaxException e) {
+            throw new RTException("The URL [" + url + "] is NOT valid.");
+        }
+        LOGGER.trace("HTTP [" + method + "]" + url);
+        return builder.build();
+    }
+
+    // 按content-type编码请求体，multipart时补充对应的请求头
+    private static HttpRequest.BodyPublisher encodeBody(Object body, Map<String, String> header, String contentType, String requestCharset,
+                                                        Compression compression) {
+        HttpRequest.BodyPublisher entity = null;
+        try {
+            switch (contentType.toLowerCase()) {
+                case "application/x-www-form-urlencoded":
+                    if (body instanceof Map<?, ?>) {
+                        String finalRequestCharset = requestCharset;
+                        var strBody = ((Map<?, ?>) body).entrySet().stream().map(entry -> {
+                            var key = URLEncoder.encode(String.valueOf(entry.getKey()), Charset.forName(finalRequestCharset));
+                            var value = URLEncoder.encode(String.valueOf(entry.getValue()), Charset.forName(finalRequestCharset));
+                            return key + "=" + value;
+                        }).collect(Collectors.joining("&"));
+                        entity = HttpRequest.BodyPublishers.ofString(strBody, Charset.forName(requestCharset));
+
+                    } else if (body instanceof String) {
+                        entity = HttpRequest.BodyPublishers.ofString((String) body, Charset.forName(requestCharset));
+                    } else {
+                        throw new IllegalArgumentException("The body only support Map OR String types" + " when content type is "
+                                + "application/x-www-form-urlencoded");
+                    }
+                    break;
+                case "multipart/form-data":
+                    header.put("Content-Transfer-Encoding", "binary");
+                    MultiPartBodyPublisher publisher;
+                    if (body instanceof MultiPartBodyPublisher) {
+                        publisher = (MultiPartBodyPublisher) body;
+                    } else {
+                        var fileBody = (File) body;
+                        publisher = new MultiPartBodyPublisher().addPart(fileBody.getName(), () -> {
+                            try {
+                                return new FileInputStream(fileBody);
+                            } catch (FileNotFoundException e) {
+                                throw new RTIOException(e);
+                            }
+                        }, fileBody.getName(), $.mime.getContentType(fileBody), fileBody.length());
+                    }
+                    header.put("Content-Type", publisher.getContentType());
+                    entity = publisher.build();
+                    break;
+                default:
+                    String strBody;
+                    if (body instanceof String) {
+                        strBody = (String) body;
+                    } else if (body instanceof Integer || body instanceof Long || body instanceof Float || body instanceof Double
+                            || body instanceof BigDecimal || body instanceof Boolean) {
+                        strBody = body.toString();
+                    } else if (body instanceof Date) {
+                        strBody = ((Date) body).getTime() + "";
+                    } else if (body instanceof File) {
+                        entity = HttpRequest.BodyPublishers.ofFile(((File) body).toPath());
+                        break;
+                    } else if (body instanceof HttpRequest.BodyPublisher) {
+                        entity = (HttpRequest.BodyPublisher) body;
+                        break;
+                    } else if (body instanceof InputStream) {
+                        // 输入流只能读取一次，请求不可重试
+                        entity = RetryPolicy.nonReplayable(HttpRequest.BodyPublishers.fromPublisher(
+                                HttpRequest.BodyPublishers.ofInputStream(() -> (InputStream) body),
+                                ((InputStream) body).available()));
+                        break;
+                    } else {
+                        strBody = $.json.toJsonString(body);
+                    }
+                    byte[] bytesBody = strBody.getBytes(Charset.forName(requestCharset));
+                    if (compression != null) {
+                        bytesBody = compression.encodeRequest(bytesBody, header);
+                    }
+                    entity = HttpRequest.BodyPublishers.ofByteArray(bytesBody);
+            }
+        } catch (IOException e) {
+            throw new RTIOException(e);
+        }
+        return entity;
+    }
+
+    // 按http方法创建构建器，只有POST、PUT、PATCH携带请求体
+    private static HttpRequest.Builder newBuilder(String method, HttpRequest.BodyPublisher entity) {
+        var builder = HttpRequest.newBuilder();
+        switch (method.toUpperCase()) {
+            case "GET":
+                builder.GET();
+                break;
+            case "POST":
+                builder.POST(entity);
+                break;
+            case "PUT":
+                builder.PUT(entity);
+                break;
+            case "DELETE":
+                builder.DELETE();
+                break;
+            case "HEAD":
+                builder.method("HEAD", HttpRequest.BodyPublishers.noBody());
+                break;
+            case "OPTIONS":
+                builder.method("OPTIONS", HttpRequest.BodyPublishers.noBody());
+                break;
+            case "TRACE":
+                builder.method("TRACE", HttpRequest.BodyPublishers.noBody());
+                break;
+            case "PATCH":
+                builder.method("PATCH", entity);
+                break;
+            default:
+                throw new RTException("The method [" + method + "] is NOT exist.");
+        }
+        return builder;
+    }
+
+}
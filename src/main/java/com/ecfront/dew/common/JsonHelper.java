@@ -2,7 +2,12 @@ package com.ecfront.dew.common;
 
 import com.ecfront.dew.common.exception.RTException;
 import com.ecfront.dew.common.exception.RTIOException;
+import com.ecfront.dew.common.json.JsonArrayReader;
+import com.ecfront.dew.common.json.JsonCodec;
+import com.ecfront.dew.common.json.JsonLinesReader;
+import com.ecfront.dew.common.json.JsonLinesWriter;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.*;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.MissingNode;
@@ -12,56 +17,220 @@ import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateTimeDeserializer;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * Json与Java对象互转.
  * <p>
  * 为方便在Java8 Stream中使用，操作返回的异常都是运行时异常
+ * <p>
+ * 每个实例ID对应一个实例，实例的生命周期：首次通过 {@link $#json(String)} 获取时创建，
+ * 之后可通过 {@link #configure(Consumer)} 修改配置，{@link #freeze()} 后配置不可再修改，
+ * {@link #close()} 后实例不可再使用，再次以同一实例ID获取时会创建新的实例
  *
  * @author gudaoxuri
  */
 public final class JsonHelper {
 
-    private static final Map<String, JsonHelper> INSTANCES = new HashMap<>();
-
-    private ObjectMapper mapper;
-
-    private JsonHelper() {
-        if (DependencyHelper.hasDependency("com.fasterxml.jackson.core.JsonProcessingException")) {
-            mapper = new ObjectMapper();
-            mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-            mapper.configure(JsonParser.Feature.ALLOW_COMMENTS, true);
-            mapper.configure(JsonParser.Feature.ALLOW_UNQUOTED_FIELD_NAMES, true);
-            mapper.configure(JsonParser.Feature.ALLOW_SINGLE_QUOTES, true);
-            JavaTimeModule javaTimeModule = new JavaTimeModule();
-            javaTimeModule.addDeserializer(LocalDateTime.class, new LocalDateTimeDeserializer(DateTimeFormatter.ISO_DATE_TIME));
-            mapper.registerModule(javaTimeModule);
-            mapper.registerModule(new Jdk8Module());
-            mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
-            setTimeZone(Calendar.getInstance().getTimeZone());
+    private static final Map<String, JsonHelper> INSTANCES = new ConcurrentHashMap<>();
+
+    private final String instanceId;
+    // 修改配置时整体替换，修改期间在原映射中创建的编解码器随原映射丢弃
+    private volatile Map<Object, JsonCodec<?>> codecs = new ConcurrentHashMap<>();
+    private volatile ObjectMapper mapper;
+    private volatile State state = State.ACTIVE;
+
+    private JsonHelper(String instanceId) {
+        this.instanceId = instanceId;
+    }
+
+    /**
+     * 获取Mapper，首次使用时才创建，Jackson及其模块的加载开销较大.
+     * <p>
+     * 供内部只读使用，不会清空已缓存的编解码器
+     *
+     * @return Jackson ObjectMapper
+     */
+    ObjectMapper mapper() {
+        if (state == State.CLOSED) {
+            throw new IllegalStateException("Json instance [" + instanceId + "] is closed");
+        }
+        ObjectMapper result = mapper;
+        if (result == null) {
+            synchronized (this) {
+                result = mapper;
+                if (result == null && DependencyHelper.hasDependency("com.fasterxml.jackson.core.JsonProcessingException")) {
+                    result = new ObjectMapper();
+                    result.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+                    result.configure(JsonParser.Feature.ALLOW_COMMENTS, true);
+                    result.configure(JsonParser.Feature.ALLOW_UNQUOTED_FIELD_NAMES, true);
+                    result.configure(JsonParser.Feature.ALLOW_SINGLE_QUOTES, true);
+                    JavaTimeModule javaTimeModule = new JavaTimeModule();
+                    javaTimeModule.addDeserializer(LocalDateTime.class, new LocalDateTimeDeserializer(DateTimeFormatter.ISO_DATE_TIME));
+                    result.registerModule(javaTimeModule);
+                    result.registerModule(new Jdk8Module());
+                    result.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+                    result.setTimeZone(Calendar.getInstance().getTimeZone());
+                    mapper = result;
+                }
+            }
         }
+        return result;
     }
 
     /**
-     * Pick json helper.
+     * 获取指定实例ID的实例，不存在时创建.
+     * <p>
+     * 已存在的实例直接返回，不加锁，并发获取同一实例ID时只会创建一个实例
      *
      * @param instanceId the instance id
      * @return the json helper
      */
     static JsonHelper pick(String instanceId) {
-        return INSTANCES.computeIfAbsent(instanceId, k -> new JsonHelper());
+        JsonHelper instance = INSTANCES.get(instanceId);
+        if (instance != null) {
+            return instance;
+        }
+        return INSTANCES.computeIfAbsent(instanceId, JsonHelper::new);
+    }
+
+    /**
+     * 获取实例ID.
+     *
+     * @return 实例ID，默认实例为空字符串
+     */
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    /**
+     * 获取实例状态.
+     *
+     * @return 实例状态
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * 修改Mapper配置.
+     * <p>
+     * 配置修改与其它配置修改、冻结及关闭互斥，修改完成后替换已缓存的编解码器，之后获取的编解码器使用新配置
+     *
+     * @param configurer 配置方法
+     * @return the json helper
+     * @throws IllegalStateException 实例已冻结或已关闭
+     */
+    public synchronized JsonHelper configure(Consumer<ObjectMapper> configurer) throws IllegalStateException {
+        if (state != State.ACTIVE) {
+            throw new IllegalStateException("Json instance [" + instanceId + "] is " + state.name().toLowerCase() + ", can't be configured");
+        }
+        configurer.accept(mapper());
+        codecs = new ConcurrentHashMap<>();
+        return this;
+    }
+
+    /**
+     * 冻结实例.
+     * <p>
+     * 冻结后不能再修改配置，调用方不应再修改 {@link #getMapper()} 返回的Mapper
+     *
+     * @return the json helper
+     * @throws IllegalStateException 实例已关闭
+     */
+    public synchronized JsonHelper freeze() throws IllegalStateException {
+        if (state == State.CLOSED) {
+            throw new IllegalStateException("Json instance [" + instanceId + "] is closed");
+        }
+        state = State.FROZEN;
+        return this;
+    }
+
+    /**
+     * 关闭实例.
+     * <p>
+     * 从实例注册表中移除并释放Mapper及编解码器，之后调用本实例的操作会抛出 {@link IllegalStateException}，
+     * 再次以同一实例ID获取时会创建新的实例，默认实例不能关闭
+     *
+     * @throws IllegalStateException 关闭默认实例
+     */
+    public synchronized void close() throws IllegalStateException {
+        if (instanceId.isEmpty()) {
+            throw new IllegalStateException("The default json instance can't be closed");
+        }
+        if (state == State.CLOSED) {
+            return;
+        }
+        state = State.CLOSED;
+        INSTANCES.remove(instanceId, this);
+        codecs = new ConcurrentHashMap<>();
+        mapper = null;
     }
 
     /**
      * 设置时区.
      *
      * @param tz 时区
+     * @throws IllegalStateException 实例已冻结或已关闭
      */
-    public void setTimeZone(TimeZone tz) {
-        mapper.setTimeZone(tz);
+    public void setTimeZone(TimeZone tz) throws IllegalStateException {
+        configure(currentMapper -> currentMapper.setTimeZone(tz));
+    }
+
+    /**
+     * 获取指定类型的编解码器.
+     * <p>
+     * 同一类型的编解码器只创建一次，持有编解码器可以省去每次调用时的类型解析及序列化器查找
+     *
+     * @param <T>   the type parameter
+     * @param clazz 目标类型
+     * @return 编解码器
+     */
+    public <T> JsonCodec<T> codec(Class<T> clazz) {
+        return cachedCodec(clazz, () -> mapper().constructType(clazz));
+    }
+
+    /**
+     * 获取指定泛型类型的编解码器.
+     *
+     * @param <T>           the type parameter
+     * @param typeReference 目标类型，如 {@code new TypeReference<List<Foo>>() {}}
+     * @return 编解码器
+     */
+    public <T> JsonCodec<T> codec(TypeReference<T> typeReference) {
+        return cachedCodec(typeReference.getType(), () -> mapper().constructType(typeReference));
+    }
+
+    /**
+     * 获取指定泛型类型的编解码器.
+     *
+     * @param parametrized     目标对象类型
+     * @param parameterClasses 目标对象泛型类型
+     * @return 编解码器
+     */
+    public JsonCodec<?> codec(Class<?> parametrized, Class<?>... parameterClasses) {
+        List<Class<?>> key = new ArrayList<>(parameterClasses.length + 1);
+        key.add(parametrized);
+        key.addAll(Arrays.asList(parameterClasses));
+        return codecs.computeIfAbsent(key,
+                k -> new JsonCodec<>(mapper(), mapper().getTypeFactory().constructParametricType(parametrized, parameterClasses)));
+    }
+
+    // 键（Class或泛型的Type）唯一确定了编解码器的目标类型，按调用方声明的类型返回是安全的
+    @SuppressWarnings("unchecked")
+    private <T> JsonCodec<T> cachedCodec(Object key, Supplier<JavaType> type) {
+        return (JsonCodec<T>) codecs.computeIfAbsent(key, k -> new JsonCodec<>(mapper(), type.get()));
     }
 
     /**
@@ -75,7 +244,7 @@ public final class JsonHelper {
             return (String) obj;
         } else {
             try {
-                return mapper.writeValueAsString(obj);
+                return mapper().writeValueAsString(obj);
             } catch (Exception e) {
                 throw new RTException(e);
             }
@@ -91,12 +260,12 @@ public final class JsonHelper {
     public JsonNode toJson(Object obj) {
         if (obj instanceof String) {
             try {
-                return mapper.readTree((String) obj);
+                return mapper().readTree((String) obj);
             } catch (IOException e) {
                 throw new RTIOException(e);
             }
         } else {
-            return mapper.valueToTree(obj);
+            return mapper().valueToTree(obj);
         }
     }
 
@@ -147,50 +316,127 @@ public final class JsonHelper {
      * @return 目标对象 object
      */
     public Object toGeneric(Object obj, Class<?> parametrized, Class... parameterClasses) {
-        JavaType type = mapper.getTypeFactory().constructParametricType(parametrized, parameterClasses);
-        return toGeneric(obj, type);
+        return codec(parametrized, parameterClasses).convert(obj);
     }
 
-    private Object toGeneric(Object obj, JavaType type) {
+    /**
+     * 转成目标对象.
+     *
+     * @param <E>   the type parameter
+     * @param obj   源数据，可以是Json字符串、JsonNode或其它Java对象
+     * @param clazz 目标对象类型
+     * @return 目标对象 e
+     */
+    public <E> E toObject(Object obj, Class<E> clazz) {
+        if (obj instanceof String && clazz == String.class) {
+            return clazz.cast(obj);
+        }
+        return codec(clazz).convert(obj);
+    }
+
+    /**
+     * 流式读取Json数组.
+     * <p>
+     * 逐个解析数组中的元素，内存占用与数组大小无关，读取完成或关闭时关闭输入流，如：
+     * {@code try (Stream<Foo> items = $.json.readArray(is, "data.items", Foo.class).stream()) { ... }}
+     *
+     * @param <E>   the type parameter
+     * @param is    Json输入流
+     * @param path  数组的路径，如 {@code data.items} ，为null或空时数组为根节点，路径不存在时视为空数组
+     * @param clazz 元素类型
+     * @return 数组读取器 ，同时是元素的Iterator
+     * @throws RTIOException 读取失败或路径对应的值不是数组
+     */
+    public <E> JsonArrayReader<E> readArray(InputStream is, String path, Class<E> clazz) throws RTIOException {
+        ObjectReader reader = codec(clazz).getReader();
         try {
-            if (obj instanceof String) {
-                return mapper.readValue((String) obj, type);
-            } else if (obj instanceof JsonNode) {
-                return mapper.readValue(obj.toString(), type);
-            } else {
-                return mapper.readValue(mapper.writeValueAsString(obj), type);
-            }
+            return new JsonArrayReader<>(reader, reader.createParser(is), path);
         } catch (IOException e) {
             throw new RTIOException(e);
         }
     }
 
     /**
-     * 转成目标对象.
+     * 流式读取Json数组.
+     *
+     * @param <E>    the type parameter
+     * @param reader Json字符输入流
+     * @param path   数组的路径，如 {@code data.items} ，为null或空时数组为根节点，路径不存在时视为空数组
+     * @param clazz  元素类型
+     * @return 数组读取器 ，同时是元素的Iterator
+     * @throws RTIOException 读取失败或路径对应的值不是数组
+     */
+    public <E> JsonArrayReader<E> readArray(Reader reader, String path, Class<E> clazz) throws RTIOException {
+        ObjectReader objectReader = codec(clazz).getReader();
+        try {
+            return new JsonArrayReader<>(objectReader, objectReader.createParser(reader), path);
+        } catch (IOException e) {
+            throw new RTIOException(e);
+        }
+    }
+
+    /**
+     * 流式读取Json文件中的数组.
      *
      * @param <E>   the type parameter
-     * @param obj   源数据，可以是Json字符串、JsonNode或其它Java对象
-     * @param clazz 目标对象类型
-     * @return 目标对象 e
+     * @param file  Json文件
+     * @param path  数组的路径，如 {@code data.items} ，为null或空时数组为根节点，路径不存在时视为空数组
+     * @param clazz 元素类型
+     * @return 数组读取器 ，同时是元素的Iterator
+     * @throws RTIOException 读取失败或路径对应的值不是数组
      */
-    public <E> E toObject(Object obj, Class<E> clazz) {
+    public <E> JsonArrayReader<E> readArray(Path file, String path, Class<E> clazz) throws RTIOException {
         try {
-            if (obj instanceof String) {
-                if (clazz == String.class) {
-                    return (E) obj;
-                } else {
-                    return mapper.readValue((String) obj, clazz);
-                }
-            } else if (obj instanceof JsonNode) {
-                return mapper.readValue(obj.toString(), clazz);
-            } else {
-                return mapper.readValue(mapper.writeValueAsString(obj), clazz);
-            }
+            return readArray(Files.newInputStream(file), path, clazz);
         } catch (IOException e) {
             throw new RTIOException(e);
         }
     }
 
+    /**
+     * 并行读取NDJSON（JSON Lines）文件.
+     * <p>
+     * 文件被切分成以行边界对齐的分段在ForkJoinPool中并行解析，更多说明见 {@link JsonLinesReader}
+     *
+     * @param <E>     the type parameter
+     * @param file    NDJSON文件
+     * @param clazz   元素类型
+     * @param ordered 是否保持行顺序
+     * @return 元素的并行Stream
+     * @throws RTIOException the rtio exception
+     */
+    public <E> Stream<E> readJsonLines(Path file, Class<E> clazz, boolean ordered) throws RTIOException {
+        return new JsonLinesReader<E>(codec(clazz).getReader()).read(file, ordered);
+    }
+
+    /**
+     * 按行顺序读取NDJSON（JSON Lines）输入流.
+     *
+     * @param <E>   the type parameter
+     * @param is    NDJSON输入流，读取完成或关闭返回的Stream时关闭
+     * @param clazz 元素类型
+     * @return 元素的Stream
+     * @throws RTIOException the rtio exception
+     */
+    public <E> Stream<E> readJsonLines(InputStream is, Class<E> clazz) throws RTIOException {
+        return new JsonLinesReader<E>(codec(clazz).getReader()).read(is);
+    }
+
+    /**
+     * 创建NDJSON（JSON Lines）写入器.
+     * <p>
+     * 所有对象复用同一个JsonGenerator写入，更多说明见 {@link JsonLinesWriter}
+     *
+     * @param <E>   the type parameter
+     * @param os    输出流，关闭写入器时关闭
+     * @param clazz 元素类型
+     * @return 写入器
+     * @throws RTIOException the rtio exception
+     */
+    public <E> JsonLinesWriter<E> writeJsonLines(OutputStream os, Class<E> clazz) throws RTIOException {
+        return new JsonLinesWriter<>(codec(clazz).getWriter(), os);
+    }
+
     /**
      * 获取对应路径下的Json.
      *
@@ -216,7 +462,7 @@ public final class JsonHelper {
      * @return objectNode object node
      */
     public ObjectNode createObjectNode() {
-        return mapper.createObjectNode();
+        return mapper().createObjectNode();
     }
 
     /**
@@ -225,16 +471,37 @@ public final class JsonHelper {
      * @return arrayNode array node
      */
     public ArrayNode createArrayNode() {
-        return mapper.createArrayNode();
+        return mapper().createArrayNode();
     }
 
     /**
      * 获取Jackson底层操作.
+     * <p>
+     * 直接修改返回的Mapper不会使已缓存的编解码器失效，已缓存的编解码器仍使用原配置，
+     * 修改配置需通过 {@link #configure(Consumer)}
      *
      * @return Jackson ObjectMapper
      */
     public ObjectMapper getMapper() {
-        return mapper;
+        return mapper();
+    }
+
+    /**
+     * 实例状态.
+     */
+    public enum State {
+        /**
+         * 可使用，可修改配置.
+         */
+        ACTIVE,
+        /**
+         * 可使用，不可修改配置.
+         */
+        FROZEN,
+        /**
+         * 已关闭，不可使用.
+         */
+        CLOSED
     }
 
 }
@@ -0,0 +1,453 @@
+package com.ecfront.dew.common.http;
+
+import com.ecfront.dew.common.$;
+import com.ecfront.dew.common.HttpHelper;
+import com.ecfront.dew.common.exception.RTIOException;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * 分段断点续传上传.
+ * <p>
+ * 将文件切分成固定大小的分段，按 {@link Protocol} 描述的协议并发上传，每个分段独立重试，
+ * 分段请求体直接按位置读取文件，不会将整个文件读入内存。
+ * <p>
+ * 上传进度记录在状态文件（默认为源文件同目录的 {@code .uploading} 文件）中，中断后再次上传同一文件时只上传未完成的分段，
+ * 文件的大小、修改时间、url或分段大小变化时重新上传，上传完成后删除状态文件。
+ *
+ * @author gudaoxuri
+ */
+public class ChunkedUploader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChunkedUploader.class);
+
+    private static final String STATE_FILE_SUFFIX = ".uploading";
+    private static final int READ_SIZE = 64 * 1024;
+
+    private final HttpHelper httpHelper;
+    private Protocol protocol = Protocol.CONTENT_RANGE;
+    private int connections = 4;
+    private long chunkSize = 8 * 1024 * 1024;
+    private int retries = 3;
+    private int retryIntervalMS = 200;
+    private int timeoutMS = -1;
+    private Path stateFile;
+    private ProgressListener progressListener;
+
+    /**
+     * Instantiates a new Chunked uploader.
+     *
+     * @param httpHelper 使用的HTTP操作实例
+     */
+    public ChunkedUploader(HttpHelper httpHelper) {
+        this.httpHelper = httpHelper;
+    }
+
+    /**
+     * 设置上传协议，默认为 {@link Protocol#CONTENT_RANGE}.
+     *
+     * @param protocol 上传协议
+     * @return the chunked uploader
+     */
+    public ChunkedUploader protocol(Protocol protocol) {
+        this.protocol = protocol;
+        return this;
+    }
+
+    /**
+     * 设置并发连接数，默认为4.
+     *
+     * @param connections 并发连接数
+     * @return the chunked uploader
+     */
+    public ChunkedUploader connections(int connections) {
+        if (connections <= 0) {
+            throw new IllegalArgumentException("The connections must be greater than 0");
+        }
+        this.connections = connections;
+        return this;
+    }
+
+    /**
+     * 设置分段大小，默认为8MB.
+     * <p>
+     * 分段是重试及断点续传的最小单位
+     *
+     * @param chunkSize 分段大小（字节）
+     * @return the chunked uploader
+     */
+    public ChunkedUploader chunkSize(long chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("The chunk size must be greater than 0");
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * 设置每个分段失败后的重试次数，默认为3.
+     *
+     * @param retries         重试次数
+     * @param retryIntervalMS 首次重试的间隔时间，之后每次翻倍
+     * @return the chunked uploader
+     */
+    public ChunkedUploader retries(int retries, int retryIntervalMS) {
+        this.retries = retries;
+        this.retryIntervalMS = retryIntervalMS;
+        return this;
+    }
+
+    /**
+     * 设置每个请求的超时时间.
+     *
+     * @param timeoutMS 超时时间
+     * @return the chunked uploader
+     */
+    public ChunkedUploader timeoutMS(int timeoutMS) {
+        this.timeoutMS = timeoutMS;
+        return this;
+    }
+
+    /**
+     * 设置状态文件，默认为源文件同目录的 {@code .uploading} 文件.
+     *
+     * @param stateFile 状态文件
+     * @return the chunked uploader
+     */
+    public ChunkedUploader stateFile(Path stateFile) {
+        this.stateFile = stateFile;
+        return this;
+    }
+
+    /**
+     * 设置进度回调.
+     *
+     * @param progressListener 进度回调
+     * @return the chunked uploader
+     */
+    public ChunkedUploader progress(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+        return this;
+    }
+
+    /**
+     * 上传文件.
+     *
+     * @param url    请求url
+     * @param header 请求头
+     * @param file   源文件
+     * @return 协议有完成请求时为完成请求的结果，否则为最后完成的分段的结果，所有分段之前都已完成时为null
+     * @throws RTIOException the rtio exception
+     */
+    public HttpHelper.ResponseWrap upload(String url, Map<String, String> header, Path file) throws RTIOException {
+        Path currentStateFile = stateFile != null ? stateFile : file.resolveSibling(file.getFileName() + STATE_FILE_SUFFIX);
+        HttpHelper.ResponseWrap result;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            long lastModified = Files.getLastModifiedTime(file).toMillis();
+            Set<Integer> completed = loadState(currentStateFile, url, length, lastModified);
+            int parts = (int) Math.max(1, (length + chunkSize - 1) / chunkSize);
+            Queue<Integer> pending = new ConcurrentLinkedQueue<>();
+            long uploaded = 0;
+            for (int i = 0; i < parts; i++) {
+                if (completed.contains(i)) {
+                    uploaded += partLength(i, length);
+                } else {
+                    pending.add(i);
+                }
+            }
+            UploadContext context = new UploadContext(url, header, length, lastModified, channel, pending, completed, currentStateFile);
+            context.uploaded = uploaded;
+            if (progressListener != null && uploaded > 0) {
+                progressListener.progress(percent(uploaded, length), uploaded, length);
+            }
+            CompletableFuture<?>[] workers = new CompletableFuture<?>[Math.min(connections, pending.size())];
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = nextPart(context);
+            }
+            CompletableFuture.allOf(workers).get();
+            result = context.lastResponse;
+            RequestSpec complete = protocol.complete(url, parts, length);
+            if (complete != null) {
+                result = httpHelper.request(complete.getMethod(), complete.getUrl(), complete.getBody(), merge(header, complete.getHeader()),
+                        complete.getContentType(), complete.getCharset(), timeoutMS);
+                if (result.statusCode / 100 != 2) {
+                    throw new RTIOException("Complete upload of " + url + " failed, status code " + result.statusCode);
+                }
+            }
+        } catch (IOException e) {
+            throw new RTIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RTIOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RTIOException) {
+                throw (RTIOException) e.getCause();
+            }
+            throw new RTIOException(e.getCause());
+        }
+        try {
+            Files.deleteIfExists(currentStateFile);
+        } catch (IOException e) {
+            throw new RTIOException(e);
+        }
+        return result;
+    }
+
+    private CompletableFuture<Void> nextPart(UploadContext context) {
+        Integer index = context.pending.poll();
+        if (index == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return sendPart(context, index, 0).thenCompose(v -> nextPart(context));
+    }
+
+    private CompletableFuture<Void> sendPart(UploadContext context, int index, int attempt) {
+        long start = index * chunkSize;
+        long partLength = partLength(index, context.length);
+        long end = start + partLength - 1;
+        RequestSpec spec = protocol.part(context.url, index + 1, start, end, context.length);
+        HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.fromPublisher(
+                HttpRequest.BodyPublishers.ofByteArrays(() -> new FileRegionIterator(context.channel, start, partLength)), partLength);
+        String contentType = spec.getContentType() != null ? spec.getContentType() : "application/octet-stream";
+        return httpHelper.requestAsync(spec.getMethod(), spec.getUrl(), body, merge(context.header, spec.getHeader()),
+                        contentType, spec.getCharset(), timeoutMS)
+                .thenAccept(responseWrap -> {
+                    if (responseWrap.statusCode / 100 != 2 && responseWrap.statusCode != 308) {
+                        throw new RTIOException("Part [" + start + "-" + end + "] of " + context.url
+                                + " failed, status code " + responseWrap.statusCode);
+                    }
+                    context.complete(index, partLength, responseWrap);
+                })
+                .handle((v, e) -> {
+                    if (e == null) {
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (attempt >= retries) {
+                        return CompletableFuture.<Void>failedFuture(cause);
+                    }
+                    LOGGER.warn("Part [" + start + "-" + end + "] of " + context.url + " failed, retry "
+                            + (attempt + 1) + " : " + cause.getMessage());
+                    Executor delayed = CompletableFuture.delayedExecutor((long) retryIntervalMS << attempt, TimeUnit.MILLISECONDS);
+                    return CompletableFuture.supplyAsync(() -> null, delayed)
+                            .thenCompose(n -> sendPart(context, index, attempt + 1));
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private long partLength(int index, long length) {
+        return Math.min(length, (index + 1) * chunkSize) - index * chunkSize;
+    }
+
+    private Set<Integer> loadState(Path stateFile, String url, long length, long lastModified) {
+        Set<Integer> completed = ConcurrentHashMap.newKeySet();
+        if (!Files.exists(stateFile)) {
+            return completed;
+        }
+        try {
+            JsonNode state = $.json.toJson(Files.readString(stateFile));
+            if (state.path("url").asText().equals(url)
+                    && state.path("length").asLong() == length
+                    && state.path("lastModified").asLong() == lastModified
+                    && state.path("chunkSize").asLong() == chunkSize) {
+                state.path("completed").forEach(node -> completed.add(node.asInt()));
+                LOGGER.debug("Resume upload " + url + " , " + completed.size() + " parts completed.");
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Invalid upload state file " + stateFile + " , restart upload.", e);
+        }
+        return completed;
+    }
+
+    private static Map<String, String> merge(Map<String, String> header, Map<String, String> partHeader) {
+        Map<String, String> result = header == null ? new HashMap<>() : new HashMap<>(header);
+        if (partHeader != null) {
+            result.putAll(partHeader);
+        }
+        return result;
+    }
+
+    private static int percent(long uploaded, long length) {
+        return length == 0 ? 100 : (int) (uploaded * 100 / length);
+    }
+
+    /**
+     * 上传协议.
+     * <p>
+     * 描述每个分段的请求（方法、url及请求头，请求体由上传器填充），及所有分段完成后的提交请求
+     */
+    public interface Protocol {
+
+        /**
+         * 按 {@code Content-Range} 上传：每个分段以 {@code PUT url} 上传，请求头为 {@code Content-Range: bytes start-end/total}，没有提交请求.
+         */
+        Protocol CONTENT_RANGE = (url, partNumber, start, end, total) ->
+                RequestSpec.of("PUT", url).header("Content-Range", "bytes " + start + "-" + end + "/" + total);
+
+        /**
+         * 按分段序号上传：每个分段以 {@code PUT url?partNumber=n} 上传（n从1开始），
+         * 所有分段完成后以 {@code POST url?complete} 提交，请求体为 {@code {"parts":分段数,"length":文件大小}}.
+         */
+        Protocol PART_NUMBER = new Protocol() {
+            @Override
+            public RequestSpec part(String url, int partNumber, long start, long end, long total) {
+                return RequestSpec.of("PUT", url + (url.contains("?") ? "&" : "?") + "partNumber=" + partNumber);
+            }
+
+            @Override
+            public RequestSpec complete(String url, int parts, long total) {
+                Map<String, Object> body = new LinkedHashMap<>();
+                body.put("parts", parts);
+                body.put("length", total);
+                return RequestSpec.post(url + (url.contains("?") ? "&" : "?") + "complete", body);
+            }
+        };
+
+        /**
+         * 分段请求.
+         *
+         * @param url        上传url
+         * @param partNumber 分段序号，从1开始
+         * @param start      分段在文件中的起始位置
+         * @param end        分段在文件中的结束位置（包含）
+         * @param total      文件大小
+         * @return 分段的请求描述，请求体会被忽略
+         */
+        RequestSpec part(String url, int partNumber, long start, long end, long total);
+
+        /**
+         * 所有分段完成后的提交请求.
+         *
+         * @param url   上传url
+         * @param parts 分段数
+         * @param total 文件大小
+         * @return 提交请求的描述，为null时不提交
+         */
+        default RequestSpec complete(String url, int parts, long total) {
+            return null;
+        }
+
+    }
+
+    /**
+     * 进度回调.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+
+        /**
+         * 进度回调，每完成一个分段调用一次，同一上传的回调不会并发执行.
+         *
+         * @param progress      0-100
+         * @param uploadedBytes 已上传的字节数（包含之前中断前已完成的分段）
+         * @param totalBytes    文件大小
+         */
+        void progress(int progress, long uploadedBytes, long totalBytes);
+
+    }
+
+    private final class UploadContext {
+
+        private final String url;
+        private final Map<String, String> header;
+        private final long length;
+        private final long lastModified;
+        private final FileChannel channel;
+        private final Queue<Integer> pending;
+        private final Set<Integer> completed;
+        private final Path stateFile;
+        private long uploaded;
+        private volatile HttpHelper.ResponseWrap lastResponse;
+
+        private UploadContext(String url, Map<String, String> header, long length, long lastModified, FileChannel channel,
+                              Queue<Integer> pending, Set<Integer> completed, Path stateFile) {
+            this.url = url;
+            this.header = header;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.channel = channel;
+            this.pending = pending;
+            this.completed = completed;
+            this.stateFile = stateFile;
+        }
+
+        private synchronized void complete(int index, long partLength, HttpHelper.ResponseWrap responseWrap) {
+            completed.add(index);
+            uploaded += partLength;
+            lastResponse = responseWrap;
+            Map<String, Object> state = new LinkedHashMap<>();
+            state.put("url", url);
+            state.put("length", length);
+            state.put("lastModified", lastModified);
+            state.put("chunkSize", chunkSize);
+            state.put("completed", new TreeSet<>(completed));
+            Path tmpFile = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+            try {
+                Files.writeString(tmpFile, $.json.toJsonString(state));
+                Files.move(tmpFile, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new RTIOException(e);
+            }
+            if (progressListener != null) {
+                progressListener.progress(percent(uploaded, length), uploaded, length);
+            }
+        }
+    }
+
+    /**
+     * 按位置读取文件区域，每次订阅（包括重试）都从区域起始位置重新读取.
+     */
+    private static final class FileRegionIterator implements Iterator<byte[]> {
+
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        private FileRegionIterator(FileChannel channel, long start, long length) {
+            this.channel = channel;
+            this.position = start;
+            this.end = start + length;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < end;
+        }
+
+        @Override
+        public byte[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(READ_SIZE, end - position));
+            try {
+                while (buffer.hasRemaining()) {
+                    int read = channel.read(buffer, position + buffer.position());
+                    if (read < 0) {
+                        throw new IOException("Unexpected end of file at " + (position + buffer.position()));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            position += buffer.capacity();
+            return buffer.array();
+        }
+    }
+
+}
@@ -0,0 +1,194 @@
+package com.ecfront.dew.common.http;
+
+import com.ecfront.dew.common.$;
+import com.ecfront.dew.common.FallbackHelper;
+import com.ecfront.dew.common.HttpHelper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 按host熔断.
+ * <p>
+ * 每个host（含端口）对应 {@link FallbackHelper} 中的一个降级组，组名为前缀加 {@code host:port}，
+ * 实际发出的每个请求（包含重试及对冲请求）都计入该组：5xx状态码、超时及连接错误等 {@link IOException} 视为失败，其它视为成功。
+ * 降级策略判定不执行时请求直接以 {@link FallbackHelper.FallbackException} 结束，不会建立连接。
+ * <p>
+ * 返回字符串结果的请求失败（包含被熔断及5xx状态码）时可返回降级响应：
+ * 优先使用该url最近一次成功的Get响应（需开启 {@link #cacheLastResponse(int)} ），其次使用 {@link #fallback(Function)} 的默认响应，
+ * 都没有时返回原结果
+ *
+ * @author gudaoxuri
+ */
+public class CircuitBreaker {
+
+    private String groupPrefix = "http:";
+    private FallbackHelper.FallbackStrategy fallbackStrategy = new FallbackHelper.DefaultFallbackStrategy();
+    private Map<String, HttpHelper.ResponseWrap> lastResponses;
+    private Function<HttpRequest, HttpHelper.ResponseWrap> fallback;
+
+    /**
+     * 设置降级组名的前缀，默认为 {@code http:}.
+     *
+     * @param groupPrefix 组名前缀
+     * @return the circuit breaker
+     */
+    public CircuitBreaker groupPrefix(String groupPrefix) {
+        this.groupPrefix = groupPrefix;
+        return this;
+    }
+
+    /**
+     * 设置降级策略，默认为 {@link FallbackHelper.DefaultFallbackStrategy}.
+     *
+     * @param fallbackStrategy 降级策略
+     * @return the circuit breaker
+     */
+    public CircuitBreaker fallbackStrategy(FallbackHelper.FallbackStrategy fallbackStrategy) {
+        this.fallbackStrategy = fallbackStrategy;
+        return this;
+    }
+
+    /**
+     * 缓存每个url最近一次成功（2xx）的Get响应，请求失败时作为降级响应返回.
+     *
+     * @param maxEntries 最多缓存的url数，超出时淘汰最久未使用的
+     * @return the circuit breaker
+     */
+    public CircuitBreaker cacheLastResponse(int maxEntries) {
+        this.lastResponses = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, HttpHelper.ResponseWrap> eldest) {
+                return size() > maxEntries;
+            }
+        });
+        return this;
+    }
+
+    /**
+     * 设置默认的降级响应，请求失败且没有缓存的响应时返回.
+     *
+     * @param fallback 根据请求生成降级响应，返回null时使用原结果
+     * @return the circuit breaker
+     */
+    public CircuitBreaker fallback(Function<HttpRequest, HttpHelper.ResponseWrap> fallback) {
+        this.fallback = fallback;
+        return this;
+    }
+
+    /**
+     * 获取请求对应的降级组名.
+     *
+     * @param uri 请求地址
+     * @return 降级组名
+     */
+    public String getGroupName(URI uri) {
+        int port = uri.getPort() != -1 ? uri.getPort() : "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+        return groupPrefix + uri.getHost() + ":" + port;
+    }
+
+    /**
+     * 获取请求对应的降级信息.
+     *
+     * @param uri 请求地址
+     * @return 降级信息
+     */
+    public FallbackHelper.FallbackInfo getFallbackInfo(URI uri) {
+        return $.fallback.getFallbackInfo(getGroupName(uri));
+    }
+
+    /**
+     * 在熔断保护下发起请求.
+     *
+     * @param <T>         响应体类型
+     * @param request     请求
+     * @param bodyHandler 响应体处理器
+     * @param send        实际发起请求的方法
+     * @return 请求结果，被熔断时以 {@link FallbackHelper.FallbackException} 结束
+     */
+    public <T> CompletableFuture<HttpResponse<T>> execute(
+            HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler,
+            BiFunction<HttpRequest, HttpResponse.BodyHandler<T>, CompletableFuture<HttpResponse<T>>> send) {
+        FallbackHelper.FallbackInfo fallbackInfo;
+        try {
+            fallbackInfo = $.fallback.check(getGroupName(request.uri()), fallbackStrategy);
+        } catch (FallbackHelper.FallbackException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<HttpResponse<T>> call;
+        try {
+            call = send.apply(request, bodyHandler);
+        } catch (RuntimeException e) {
+            // 请求未能发起，不计入结果
+            fallbackInfo.cancel();
+            throw e;
+        }
+        // 返回记录结果后的Future，调用方拿到结果时已计入降级信息
+        CompletableFuture<HttpResponse<T>> result = call.whenComplete((response, e) -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof CancellationException) {
+                // 被取消（如对冲请求中较慢的一个）的请求不计入结果
+                fallbackInfo.cancel();
+                return;
+            }
+            if (cause instanceof IOException || cause == null && response.statusCode() >= 500) {
+                fallbackInfo.error();
+            } else {
+                fallbackInfo.success();
+            }
+        });
+        result.whenComplete((response, e) -> {
+            if (result.isCancelled()) {
+                call.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 请求失败时使用降级响应.
+     *
+     * @param request        请求
+     * @param responseFuture 请求结果
+     * @return 请求成功时为原结果，失败时为降级响应，没有降级响应时为原结果
+     */
+    public CompletableFuture<HttpHelper.ResponseWrap> fallback(HttpRequest request, CompletableFuture<HttpHelper.ResponseWrap> responseFuture) {
+        if (lastResponses == null && fallback == null) {
+            return responseFuture;
+        }
+        return responseFuture.handle((response, e) -> {
+            if (e == null && response.statusCode < 500) {
+                if (lastResponses != null && "GET".equals(request.method()) && response.statusCode / 100 == 2) {
+                    lastResponses.put(request.uri().toString(), response);
+                }
+                return response;
+            }
+            HttpHelper.ResponseWrap fallbackResponse = lastResponses == null ? null : lastResponses.get(request.uri().toString());
+            if (fallbackResponse == null && fallback != null) {
+                fallbackResponse = fallback.apply(request);
+            }
+            if (fallbackResponse != null) {
+                HttpHelper.ResponseWrap copy = new HttpHelper.ResponseWrap();
+                copy.statusCode = fallbackResponse.statusCode;
+                copy.result = fallbackResponse.result;
+                copy.head = fallbackResponse.head;
+                return copy;
+            }
+            if (e != null) {
+                throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+            }
+            return response;
+        });
+    }
+
+}
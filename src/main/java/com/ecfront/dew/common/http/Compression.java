@@ -0,0 +1,504 @@
+package com.ecfront.dew.common.http;
+
+import com.ecfront.dew.common.exception.RTIOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.*;
+
+/**
+ * HTTP压缩.
+ * <p>
+ * 请求时发送 {@code Accept-Encoding: gzip, deflate} （classpath中存在 {@code org.brotli.dec.BrotliInputStream} 时追加 {@code br}），
+ * 响应体按 {@code Content-Encoding} 边接收边解压后交给原始的响应体处理器；
+ * 可选地对超过阈值的请求体进行gzip压缩。
+ * <p>
+ * 由于Brotli解码器只提供输入流形式的接口，Brotli响应在接收完压缩后的响应体后再解压，压缩数据通常只有原始数据的几分之一；
+ * 缓存的压缩数据及解压后的数据均不能超过 {@link #brotliMaxBytes(int)} ，超过时响应出错。
+ *
+ * @author gudaoxuri
+ */
+public class Compression {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Compression.class);
+
+    private static final int OUTPUT_CHUNK_SIZE = 16 * 1024;
+    private static final Constructor<?> BROTLI_INPUT_STREAM = brotliInputStream();
+
+    private int requestThreshold = -1;
+    private int brotliMaxBytes = 64 * 1024 * 1024;
+
+    /**
+     * 设置请求体压缩阈值，默认不压缩.
+     * <p>
+     * 字符串、数值及Json对象请求体的字节数不小于阈值时使用gzip压缩并添加 {@code Content-Encoding: gzip}
+     * ，需确认服务端支持压缩的请求体
+     *
+     * @param requestThreshold 阈值（字节），-1表示不压缩
+     * @return the compression
+     */
+    public Compression requestThreshold(int requestThreshold) {
+        this.requestThreshold = requestThreshold;
+        return this;
+    }
+
+    /**
+     * 设置Brotli响应可缓存的最大字节数，默认为64MB.
+     * <p>
+     * 压缩数据及解压后的数据分别计算，超过时响应出错
+     *
+     * @param brotliMaxBytes 最大字节数
+     * @return the compression
+     */
+    public Compression brotliMaxBytes(int brotliMaxBytes) {
+        if (brotliMaxBytes <= 0) {
+            throw new IllegalArgumentException("The brotli max bytes must be greater than 0");
+        }
+        this.brotliMaxBytes = brotliMaxBytes;
+        return this;
+    }
+
+    /**
+     * 获取请求时发送的 {@code Accept-Encoding} .
+     *
+     * @return the accept encoding
+     */
+    public String acceptEncoding() {
+        return BROTLI_INPUT_STREAM == null ? "gzip, deflate" : "gzip, deflate, br";
+    }
+
+    /**
+     * 按阈值压缩请求体.
+     *
+     * @param body   请求体
+     * @param header 请求头，压缩时添加 {@code Content-Encoding: gzip}
+     * @return 压缩后的请求体，未达到阈值或已指定 {@code Content-Encoding} 时返回原始请求体
+     */
+    public byte[] encodeRequest(byte[] body, Map<String, String> header) {
+        if (requestThreshold < 0 || body.length < requestThreshold
+                || header.keySet().stream().anyMatch(name -> name.equalsIgnoreCase("Content-Encoding"))) {
+            return body;
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new RTIOException(e);
+        }
+        header.put("Content-Encoding", "gzip");
+        return output.toByteArray();
+    }
+
+    /**
+     * 包装响应体处理器，按 {@code Content-Encoding} 解压响应体.
+     *
+     * @param <T>         响应体类型
+     * @param bodyHandler 原始的响应体处理器
+     * @return 解压的响应体处理器
+     */
+    public <T> HttpResponse.BodyHandler<T> decoding(HttpResponse.BodyHandler<T> bodyHandler) {
+        return responseInfo -> {
+            String encoding = responseInfo.headers().firstValue("Content-Encoding").orElse("").trim().toLowerCase();
+            if (!isDecodable(encoding)) {
+                return bodyHandler.apply(responseInfo);
+            }
+            Decoder decoder = encoding.equals("br") ? new BrotliDecoder(brotliMaxBytes) : new InflatingDecoder(!encoding.equals("deflate"));
+            return new DecodingBodySubscriber<>(bodyHandler.apply(responseInfo), decoder);
+        };
+    }
+
+    /**
+     * 获取解压后的响应头.
+     *
+     * @param head 原始的响应头
+     * @return 已解压时去掉 {@code Content-Encoding} 及 {@code Content-Length} 的响应头，否则返回原始的响应头
+     */
+    public Map<String, List<String>> decodedHead(Map<String, List<String>> head) {
+        List<String> encoding = head.get("Content-Encoding");
+        if (encoding == null || encoding.isEmpty() || !isDecodable(encoding.get(0).trim().toLowerCase())) {
+            return head;
+        }
+        Map<String, List<String>> decodedHead = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        decodedHead.putAll(head);
+        decodedHead.remove("Content-Encoding");
+        decodedHead.remove("Content-Length");
+        return Collections.unmodifiableMap(decodedHead);
+    }
+
+    private static boolean isDecodable(String encoding) {
+        return encoding.equals("gzip") || encoding.equals("x-gzip") || encoding.equals("deflate")
+                || encoding.equals("br") && BROTLI_INPUT_STREAM != null;
+    }
+
+    private static Constructor<?> brotliInputStream() {
+        try {
+            return Class.forName("org.brotli.dec.BrotliInputStream").getConstructor(InputStream.class);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 解压响应体并交给原始处理器的处理器.
+     * <p>
+     * 每个压缩数据块解压后作为一个数据块交给原始处理器，解压后为空时再向上游请求一个数据块，以保持背压的对应关系；
+     * 压缩流结束时剩余的解压数据在原始处理器有请求时再交付
+     *
+     * @param <T> 响应体类型
+     */
+    private static final class DecodingBodySubscriber<T> implements HttpResponse.BodySubscriber<T> {
+
+        private final HttpResponse.BodySubscriber<T> downstream;
+        private final Decoder decoder;
+        private final AtomicLong demand = new AtomicLong();
+        private Flow.Subscription subscription;
+        private List<ByteBuffer> remaining;
+        private volatile boolean failed;
+
+        private DecodingBodySubscriber(HttpResponse.BodySubscriber<T> downstream, Decoder decoder) {
+            this.downstream = downstream;
+            this.decoder = decoder;
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return downstream.getBody();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            downstream.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+                    if (!drainRemaining()) {
+                        subscription.request(n);
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    subscription.cancel();
+                }
+            });
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            if (failed) {
+                return;
+            }
+            List<ByteBuffer> output = new ArrayList<>();
+            try {
+                for (ByteBuffer item : items) {
+                    decoder.decode(item, output);
+                }
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+                return;
+            }
+            if (output.isEmpty()) {
+                subscription.request(1);
+            } else {
+                demand.decrementAndGet();
+                downstream.onNext(output);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            decoder.close();
+            if (!failed) {
+                downstream.onError(throwable);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            if (failed) {
+                return;
+            }
+            List<ByteBuffer> output = new ArrayList<>();
+            try {
+                decoder.finish(output);
+            } catch (IOException | RuntimeException e) {
+                fail(e);
+                return;
+            }
+            decoder.close();
+            if (output.isEmpty()) {
+                downstream.onComplete();
+                return;
+            }
+            synchronized (this) {
+                remaining = output;
+            }
+            drainRemaining();
+        }
+
+        // 交付压缩流结束时剩余的解压数据，存在剩余数据（无论是否已交付）时返回true
+        private boolean drainRemaining() {
+            List<ByteBuffer> items;
+            synchronized (this) {
+                if (remaining == null) {
+                    return false;
+                }
+                if (remaining.isEmpty() || demand.get() <= 0) {
+                    return true;
+                }
+                items = remaining;
+                remaining = Collections.emptyList();
+            }
+            demand.decrementAndGet();
+            downstream.onNext(items);
+            downstream.onComplete();
+            return true;
+        }
+
+        private void fail(Throwable e) {
+            failed = true;
+            decoder.close();
+            subscription.cancel();
+            LOGGER.warn("Decode compressed response error.", e);
+            downstream.onError(e);
+        }
+    }
+
+    /**
+     * 增量解码器.
+     */
+    private interface Decoder {
+
+        void decode(ByteBuffer input, List<ByteBuffer> output) throws IOException;
+
+        void finish(List<ByteBuffer> output) throws IOException;
+
+        void close();
+    }
+
+    /**
+     * 基于 {@link Inflater} 的gzip/deflate增量解码器.
+     */
+    private static final class InflatingDecoder implements Decoder {
+
+        private static final int GZIP_HEADER_SIZE = 10;
+        private static final int GZIP_TRAILER_SIZE = 8;
+
+        private final boolean gzip;
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private final CRC32 crc = new CRC32();
+        // 解压用的缓冲区，交付的数据块按实际长度复制
+        private final byte[] buffer = new byte[OUTPUT_CHUNK_SIZE];
+        private Inflater inflater;
+        private boolean inBody;
+        private boolean inTrailer;
+        private boolean finished;
+
+        private InflatingDecoder(boolean gzip) {
+            this.gzip = gzip;
+        }
+
+        @Override
+        public void decode(ByteBuffer input, List<ByteBuffer> output) throws IOException {
+            while (input.hasRemaining()) {
+                if (finished && !gzip) {
+                    // 忽略deflate流结束后的多余数据
+                    input.position(input.limit());
+                } else if (inBody) {
+                    inflate(input, output);
+                } else if (inTrailer) {
+                    readTrailer(input);
+                } else if (!readHeader(input, output)) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void finish(List<ByteBuffer> output) throws IOException {
+            if (inBody && !gzip && inflater.getRemaining() == 0) {
+                // 原始deflate流可能需要额外的一个字节才能结束
+                inflate(ByteBuffer.wrap(new byte[1]), output);
+            }
+            // 没有响应体（如HEAD请求）时无需解压
+            if (!finished && (inflater != null || pending.size() > 0)) {
+                throw new ZipException("Unexpected end of compressed response");
+            }
+        }
+
+        @Override
+        public void close() {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+
+        // 读取头部，头部未接收完整时返回false
+        private boolean readHeader(ByteBuffer input, List<ByteBuffer> output) throws IOException {
+            while (input.hasRemaining()) {
+                pending.write(input.get());
+                byte[] header = pending.toByteArray();
+                // gzip头部自行解析，deflate只需根据前两个字节判断是zlib格式还是原始deflate格式，头部交由Inflater解析
+                int headerSize = gzip ? gzipHeaderSize(header) : header.length < 2 ? -1 : 0;
+                if (headerSize < 0) {
+                    continue;
+                }
+                pending.reset();
+                if (inflater == null) {
+                    inflater = new Inflater(gzip || !isZlib(header));
+                } else {
+                    inflater.reset();
+                }
+                crc.reset();
+                inBody = true;
+                finished = false;
+                if (headerSize < header.length) {
+                    inflate(ByteBuffer.wrap(header, headerSize, header.length - headerSize), output);
+                }
+                return true;
+            }
+            return false;
+        }
+
+        private void inflate(ByteBuffer input, List<ByteBuffer> output) throws IOException {
+            inflater.setInput(input);
+            try {
+                while (!inflater.finished()) {
+                    int length = inflater.inflate(buffer);
+                    if (length > 0) {
+                        crc.update(buffer, 0, length);
+                        output.add(ByteBuffer.wrap(Arrays.copyOf(buffer, length)));
+                    } else if (inflater.needsInput()) {
+                        break;
+                    } else if (inflater.needsDictionary()) {
+                        throw new ZipException("Deflate dictionary is not supported");
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            }
+            input.position(input.limit() - inflater.getRemaining());
+            if (inflater.finished()) {
+                inBody = false;
+                inTrailer = gzip;
+                finished = !gzip;
+            }
+        }
+
+        private void readTrailer(ByteBuffer input) throws IOException {
+            while (input.hasRemaining() && pending.size() < GZIP_TRAILER_SIZE) {
+                pending.write(input.get());
+            }
+            if (pending.size() < GZIP_TRAILER_SIZE) {
+                return;
+            }
+            ByteBuffer trailer = ByteBuffer.wrap(pending.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+            pending.reset();
+            if ((trailer.getInt() & 0xFFFFFFFFL) != crc.getValue()
+                    || (trailer.getInt() & 0xFFFFFFFFL) != (inflater.getBytesWritten() & 0xFFFFFFFFL)) {
+                throw new ZipException("Corrupt gzip trailer");
+            }
+            inTrailer = false;
+            // 之后可能还有下一个gzip成员
+            finished = true;
+        }
+
+        // 返回gzip头部的长度，数据不足时返回-1
+        private static int gzipHeaderSize(byte[] header) throws ZipException {
+            if (header.length < GZIP_HEADER_SIZE) {
+                return -1;
+            }
+            if ((header[0] & 0xFF) != 0x1F || (header[1] & 0xFF) != 0x8B || header[2] != 8) {
+                throw new ZipException("Not in gzip format");
+            }
+            int flags = header[3] & 0xFF;
+            int position = GZIP_HEADER_SIZE;
+            if ((flags & 0x04) != 0) {
+                if (header.length < position + 2) {
+                    return -1;
+                }
+                position += 2 + ((header[position] & 0xFF) | (header[position + 1] & 0xFF) << 8);
+            }
+            for (int flag : new int[]{0x08, 0x10}) {
+                if ((flags & flag) != 0) {
+                    while (position < header.length && header[position] != 0) {
+                        position++;
+                    }
+                    if (position >= header.length) {
+                        return -1;
+                    }
+                    position++;
+                }
+            }
+            if ((flags & 0x02) != 0) {
+                position += 2;
+            }
+            return position <= header.length ? position : -1;
+        }
+
+        private static boolean isZlib(byte[] header) {
+            return (header[0] & 0x0F) == 8 && (((header[0] & 0xFF) << 8) | (header[1] & 0xFF)) % 31 == 0;
+        }
+    }
+
+    /**
+     * Brotli解码器，接收完整的压缩数据后再解压，压缩数据及解压后的数据均有上限.
+     */
+    private static final class BrotliDecoder implements Decoder {
+
+        private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        private final int maxBytes;
+
+        private BrotliDecoder(int maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public void decode(ByteBuffer input, List<ByteBuffer> output) throws IOException {
+            if (compressed.size() + (long) input.remaining() > maxBytes) {
+                throw new IOException("Brotli response exceeds the max bytes [" + maxBytes + "]");
+            }
+            byte[] bytes = new byte[input.remaining()];
+            input.get(bytes);
+            compressed.write(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public void finish(List<ByteBuffer> output) throws IOException {
+            try (InputStream brotli = (InputStream) BROTLI_INPUT_STREAM.newInstance(new ByteArrayInputStream(compressed.toByteArray()))) {
+                long decoded = 0;
+                while (true) {
+                    byte[] buffer = brotli.readNBytes(OUTPUT_CHUNK_SIZE);
+                    if (buffer.length == 0) {
+                        break;
+                    }
+                    decoded += buffer.length;
+                    if (decoded > maxBytes) {
+                        throw new IOException("Decoded brotli response exceeds the max bytes [" + maxBytes + "]");
+                    }
+                    output.add(ByteBuffer.wrap(buffer));
+                }
+            } catch (ReflectiveOperationException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+}
@@ -0,0 +1,571 @@
+package com.ecfront.dew.common.http;
+
+import com.ecfront.dew.common.exception.RTIOException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * 流式事件订阅，支持Server-Sent Events（SSE）及换行分隔的Json（NDJSON）.
+ * <p>
+ * 响应体按数据块增量解析，每个SSE事件或NDJSON行解析为 {@link Event} ，事件数据按指定类型反序列化。
+ * 每次订阅都会发起新的请求，可通过 {@link #subscribe(Consumer)} 回调消费，或作为 {@link Flow.Publisher} 订阅，
+ * 后者只在订阅者有请求数时才读取下一个数据块，消费慢时通过TCP流控反压服务端。
+ * <p>
+ * 内存占用有上限：同时只缓存一个数据块解析出的事件，单行及单个事件的大小（UTF-8编码后的字节数）不能超过 {@link #maxEventBytes(int)} 。
+ * <p>
+ * 配置 {@link #reconnect(int, long)} 后，连接正常断开、响应5xx或网络异常时会携带 {@code Last-Event-ID} 重新连接，
+ * 重连间隔可被SSE的retry字段修改，响应5xx或网络异常时按连续重连次数指数退避；
+ * 响应204或其它非2xx状态码（如401、404）时不再重连
+ *
+ * @param <T> 事件数据类型
+ * @author gudaoxuri
+ */
+public class EventStream<T> implements Flow.Publisher<EventStream.Event<T>> {
+
+    // 出错重连时退避倍数的上限为 2^6
+    private static final int MAX_BACKOFF_SHIFT = 6;
+
+    private final Format format;
+    private final ObjectMapper mapper;
+    private final JavaType dataType;
+    private final BiFunction<Map<String, String>, HttpResponse.BodyHandler<Void>, CompletableFuture<?>> connector;
+    private int maxEventBytes = 1024 * 1024;
+    private int maxReconnects;
+    private long reconnectDelayMS = 3000;
+    private String lastEventId;
+
+    /**
+     * Instantiates a new Event stream.
+     *
+     * @param format    格式
+     * @param mapper    ObjectMapper
+     * @param dataType  事件数据类型
+     * @param connector 发起请求的方法，参数为请求头及响应体处理器
+     */
+    public EventStream(Format format, ObjectMapper mapper, JavaType dataType,
+                       BiFunction<Map<String, String>, HttpResponse.BodyHandler<Void>, CompletableFuture<?>> connector) {
+        this.format = format;
+        this.mapper = mapper;
+        this.dataType = dataType;
+        this.connector = connector;
+    }
+
+    /**
+     * 设置单行及单个事件的最大字节数，默认为1MB，超过时订阅出错.
+     *
+     * @param maxEventBytes 最大字节数
+     * @return the event stream
+     */
+    public EventStream<T> maxEventBytes(int maxEventBytes) {
+        if (maxEventBytes <= 0) {
+            throw new IllegalArgumentException("The max event bytes must be greater than 0");
+        }
+        this.maxEventBytes = maxEventBytes;
+        return this;
+    }
+
+    /**
+     * 设置断开后的重连，默认不重连.
+     *
+     * @param maxReconnects 连续重连的最大次数（收到事件后重新计数），-1表示不限制
+     * @param delayMS       重连间隔，SSE的retry字段会修改此值，响应5xx或网络异常时每次连续重连翻倍，最多为64倍
+     * @return the event stream
+     */
+    public EventStream<T> reconnect(int maxReconnects, long delayMS) {
+        this.maxReconnects = maxReconnects;
+        this.reconnectDelayMS = delayMS;
+        return this;
+    }
+
+    /**
+     * 设置首次请求的 {@code Last-Event-ID} ，用于从上次消费的位置继续订阅.
+     *
+     * @param lastEventId 最后收到的事件id
+     * @return the event stream
+     */
+    public EventStream<T> lastEventId(String lastEventId) {
+        this.lastEventId = lastEventId;
+        return this;
+    }
+
+    /**
+     * 以回调方式订阅.
+     * <p>
+     * 回调在请求线程中串行执行，不能阻塞
+     *
+     * @param callback 事件回调
+     * @return 订阅结束（不再重连）时完成，取消该Future即取消订阅
+     */
+    public CompletableFuture<Void> subscribe(Consumer<Event<T>> callback) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                result.whenComplete((r, e) -> {
+                    if (result.isCancelled()) {
+                        subscription.cancel();
+                    }
+                });
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(Event<T> item) {
+                callback.accept(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                result.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                result.complete(null);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Event<T>> subscriber) {
+        EventSubscription subscription = new EventSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.connect();
+    }
+
+    /**
+     * 事件格式.
+     */
+    public enum Format {
+        /**
+         * Server-Sent Events，{@code text/event-stream} .
+         */
+        SSE("text/event-stream"),
+        /**
+         * 换行分隔的Json，{@code application/x-ndjson} .
+         */
+        NDJSON("application/x-ndjson");
+
+        private final String accept;
+
+        Format(String accept) {
+            this.accept = accept;
+        }
+    }
+
+    /**
+     * 事件.
+     *
+     * @param <T> 事件数据类型
+     */
+    public static class Event<T> {
+
+        private final String id;
+        private final String type;
+        private final T data;
+
+        private Event(String id, String type, T data) {
+            this.id = id;
+            this.type = type;
+            this.data = data;
+        }
+
+        /**
+         * 获取事件id.
+         *
+         * @return SSE的事件id（未设置时沿用上一个事件的id），NDJSON为null
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * 获取事件类型.
+         *
+         * @return SSE的事件类型（默认为message），NDJSON为null
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * 获取事件数据.
+         *
+         * @return 事件数据
+         */
+        public T getData() {
+            return data;
+        }
+    }
+
+    /**
+     * 单次连接的状态，由连接的回调线程写入，由drain读取.
+     */
+    private static final class Connection {
+
+        private final Queue<List<ByteBuffer>> batches = new ConcurrentLinkedQueue<>();
+        private volatile Flow.Subscription upstream;
+        private volatile CompletableFuture<?> responseFuture;
+        private volatile boolean ended;
+        private volatile Throwable error;
+        private volatile boolean noReconnect;
+        private boolean requested;
+        private boolean flushed;
+    }
+
+    /**
+     * 订阅.
+     * <p>
+     * 解析及向订阅者推送只在drain中执行，通过wip计数保证串行
+     */
+    private final class EventSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super Event<T>> downstream;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final Queue<Event<T>> events = new ArrayDeque<>();
+        private volatile Connection connection;
+        private volatile boolean cancelled;
+        private volatile Throwable pendingError;
+        private boolean terminated;
+        private int reconnects;
+        private long delayMS = reconnectDelayMS;
+        private String currentEventId = lastEventId;
+        // 解析状态，每次连接重置
+        private byte[] line = new byte[256];
+        private int lineLength;
+        private boolean lastCR;
+        private final StringBuilder data = new StringBuilder();
+        private int dataBytes;
+        private String eventType;
+
+        private EventSubscription(Flow.Subscriber<? super Event<T>> downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                pendingError = new IllegalArgumentException("Non-positive subscription request: " + n);
+            } else {
+                demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        private void connect() {
+            if (cancelled) {
+                return;
+            }
+            // 此时connection为null，drain不会访问解析状态
+            lineLength = 0;
+            lastCR = false;
+            data.setLength(0);
+            dataBytes = 0;
+            eventType = null;
+            Connection current = new Connection();
+            connection = current;
+            Map<String, String> header = new HashMap<>();
+            header.put("Accept", format.accept);
+            header.put("Cache-Control", "no-cache");
+            if (currentEventId != null && format == Format.SSE) {
+                header.put("Last-Event-ID", currentEventId);
+            }
+            CompletableFuture<?> responseFuture;
+            try {
+                responseFuture = connector.apply(header, responseInfo -> new UpstreamSubscriber(current, responseInfo.statusCode()));
+            } catch (RuntimeException e) {
+                responseFuture = CompletableFuture.failedFuture(e);
+            }
+            current.responseFuture = responseFuture;
+            responseFuture.whenComplete((r, e) -> {
+                if (e != null) {
+                    end(current, e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                }
+            });
+        }
+
+        private void end(Connection current, Throwable error) {
+            if (!current.ended) {
+                current.error = error;
+                current.ended = true;
+                drain();
+            }
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                while (!terminated) {
+                    Connection current = connection;
+                    if (cancelled) {
+                        terminated = true;
+                        cancelConnection(current);
+                    } else if (pendingError != null) {
+                        terminate(current, pendingError);
+                    } else if (!events.isEmpty()) {
+                        if (demand.get() == 0) {
+                            break;
+                        }
+                        demand.decrementAndGet();
+                        downstream.onNext(events.poll());
+                    } else if (current == null) {
+                        // 等待重连
+                        break;
+                    } else if (!current.batches.isEmpty()) {
+                        current.requested = false;
+                        try {
+                            parse(current.batches.poll());
+                        } catch (RuntimeException e) {
+                            terminate(current, e);
+                        }
+                    } else if (current.ended) {
+                        if (!current.flushed) {
+                            current.flushed = true;
+                            if (current.error == null && format == Format.NDJSON && lineLength > 0) {
+                                try {
+                                    onLine();
+                                } catch (RuntimeException e) {
+                                    terminate(current, e);
+                                }
+                            }
+                            continue;
+                        }
+                        onEnded(current);
+                        break;
+                    } else {
+                        if (demand.get() > 0 && current.upstream != null && !current.requested) {
+                            current.requested = true;
+                            current.upstream.request(1);
+                            continue;
+                        }
+                        break;
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void onEnded(Connection current) {
+            if (!current.noReconnect && (maxReconnects == -1 || reconnects < maxReconnects)) {
+                reconnects++;
+                connection = null;
+                long delay = current.error == null ? delayMS : delayMS << Math.min(reconnects - 1, MAX_BACKOFF_SHIFT);
+                CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(this::connect);
+                return;
+            }
+            terminated = true;
+            if (current.error == null) {
+                downstream.onComplete();
+            } else {
+                downstream.onError(current.error instanceof RTIOException ? current.error : new RTIOException(current.error));
+            }
+        }
+
+        private void terminate(Connection current, Throwable error) {
+            terminated = true;
+            cancelConnection(current);
+            downstream.onError(error instanceof RTIOException ? error : new RTIOException(error));
+        }
+
+        private void cancelConnection(Connection current) {
+            if (current == null) {
+                return;
+            }
+            if (current.upstream != null) {
+                current.upstream.cancel();
+            }
+            if (current.responseFuture != null) {
+                current.responseFuture.cancel(true);
+            }
+        }
+
+        private void parse(List<ByteBuffer> batch) {
+            for (ByteBuffer buffer : batch) {
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    if (b == '\n' && lastCR) {
+                        lastCR = false;
+                    } else if (b == '\n' || b == '\r') {
+                        lastCR = b == '\r';
+                        onLine();
+                        lineLength = 0;
+                    } else {
+                        lastCR = false;
+                        if (lineLength == maxEventBytes) {
+                            throw new RTIOException("The line exceeds the max event bytes [" + maxEventBytes + "]");
+                        }
+                        if (lineLength == line.length) {
+                            byte[] expanded = new byte[(int) Math.min(maxEventBytes, line.length * 2L)];
+                            System.arraycopy(line, 0, expanded, 0, lineLength);
+                            line = expanded;
+                        }
+                        line[lineLength++] = b;
+                    }
+                }
+            }
+        }
+
+        private void onLine() {
+            if (format == Format.NDJSON) {
+                for (int i = 0; i < lineLength; i++) {
+                    if (!Character.isWhitespace(line[i])) {
+                        events.add(new Event<>(null, null, decode(new String(line, 0, lineLength, StandardCharsets.UTF_8))));
+                        reconnects = 0;
+                        return;
+                    }
+                }
+                return;
+            }
+            if (lineLength == 0) {
+                dispatch();
+                return;
+            }
+            String str = new String(line, 0, lineLength, StandardCharsets.UTF_8);
+            if (str.startsWith(":")) {
+                return;
+            }
+            int colon = str.indexOf(':');
+            String field = colon == -1 ? str : str.substring(0, colon);
+            String value = colon == -1 ? "" : str.substring(colon + 1);
+            if (value.startsWith(" ")) {
+                value = value.substring(1);
+            }
+            switch (field) {
+                case "data":
+                    // 值之前的 "data:" 及可选的空格均为ASCII，值的字节数即行的字节数减去其字符数
+                    int valueBytes = lineLength - (str.length() - value.length());
+                    if (dataBytes + valueBytes >= maxEventBytes) {
+                        throw new RTIOException("The event exceeds the max event bytes [" + maxEventBytes + "]");
+                    }
+                    data.append(value).append('\n');
+                    dataBytes += valueBytes + 1;
+                    break;
+                case "event":
+                    eventType = value;
+                    break;
+                case "id":
+                    if (value.indexOf('\0') == -1) {
+                        currentEventId = value;
+                    }
+                    break;
+                case "retry":
+                    if (!value.isEmpty() && value.chars().allMatch(Character::isDigit)) {
+                        delayMS = Long.parseLong(value);
+                    }
+                    break;
+                default:
+                    // 忽略未知字段
+            }
+        }
+
+        private void dispatch() {
+            if (data.length() == 0) {
+                eventType = null;
+                return;
+            }
+            String str = data.substring(0, data.length() - 1);
+            data.setLength(0);
+            dataBytes = 0;
+            events.add(new Event<>(currentEventId, eventType == null ? "message" : eventType, decode(str)));
+            eventType = null;
+            reconnects = 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        private T decode(String str) {
+            if (dataType.getRawClass() == String.class) {
+                return (T) str;
+            }
+            try {
+                return mapper.readValue(str, dataType);
+            } catch (IOException e) {
+                throw new RTIOException(e);
+            }
+        }
+
+        /**
+         * 响应体订阅者，只将数据块放入队列，由drain解析.
+         */
+        private final class UpstreamSubscriber implements HttpResponse.BodySubscriber<Void> {
+
+            private final Connection current;
+            private final int statusCode;
+
+            private UpstreamSubscriber(Connection current, int statusCode) {
+                this.current = current;
+                this.statusCode = statusCode;
+            }
+
+            @Override
+            public CompletionStage<Void> getBody() {
+                // 收到响应头即返回，响应体由订阅者持续消费
+                return CompletableFuture.completedFuture(null);
+            }
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                if (statusCode == 204) {
+                    subscription.cancel();
+                    current.noReconnect = true;
+                    end(current, null);
+                } else if (statusCode < 200 || statusCode >= 300) {
+                    subscription.cancel();
+                    // 只有5xx可能是暂时的，其它状态码重连也不会成功
+                    current.noReconnect = statusCode < 500;
+                    end(current, new RTIOException("Event stream responded with status [" + statusCode + "]"));
+                } else {
+                    current.upstream = subscription;
+                    drain();
+                }
+            }
+
+            @Override
+            public void onNext(List<ByteBuffer> item) {
+                current.batches.add(item);
+                drain();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                end(current, throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                end(current, null);
+            }
+        }
+    }
+
+}
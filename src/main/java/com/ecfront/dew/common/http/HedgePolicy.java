@@ -0,0 +1,264 @@
+package com.ecfront.dew.common.http;
+
+import com.ecfront.dew.common.HttpHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.http.HttpRequest;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 对冲请求策略.
+ * <p>
+ * 幂等请求（GET、HEAD、OPTIONS）在对冲延迟内未完成时，再发起一个相同的请求，返回先成功的结果并取消另一个请求
+ * （5xx响应在另一个请求仍在进行时不算成功），
+ * 用于降低单个慢副本导致的长尾延迟。
+ * <p>
+ * 对冲延迟可为固定值，或按各host最近请求耗时的百分位（默认p95）学习得出，
+ * 对冲请求胜出时被取消的原始请求以已等待的时间（不小于对冲延迟）作为样本，使慢请求也能体现在百分位中；
+ * 额外负载按令牌控制：令牌初始为0，每个请求存入 maxExtraLoadPercent/100 个令牌，每次对冲消耗1个令牌，令牌不足时不对冲，
+ * 令牌最多累积10个请求存入的数量（至少1个），即连续对冲的数量不超过该数量请求所允许的对冲数。
+ *
+ * @author gudaoxuri
+ */
+public class HedgePolicy {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HedgePolicy.class);
+
+    private static final Set<String> IDEMPOTENT_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+    private static final int WINDOW_SIZE = 512;
+    private static final int BURST_REQUESTS = 10;
+
+    private long delayMS = -1;
+    private double percentile = 0.95;
+    private long minDelayMS = 10;
+    private int minSamples = 20;
+    private double maxExtraLoadPercent = 10;
+    private double loadTokens;
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    private final LongAdder hedgeCount = new LongAdder();
+    private final LongAdder hedgeWinCount = new LongAdder();
+
+    /**
+     * 设置固定的对冲延迟.
+     *
+     * @param delayMS 对冲延迟
+     * @return the hedge policy
+     */
+    public HedgePolicy delayMS(long delayMS) {
+        this.delayMS = delayMS;
+        return this;
+    }
+
+    /**
+     * 使用学习的对冲延迟（默认）.
+     * <p>
+     * 对冲延迟为对应host最近请求耗时的指定百分位，不小于minDelayMS，样本数不足minSamples时不对冲
+     *
+     * @param percentile 百分位，如0.95
+     * @param minDelayMS 最小对冲延迟
+     * @param minSamples 最少样本数
+     * @return the hedge policy
+     */
+    public HedgePolicy learnedDelay(double percentile, long minDelayMS, int minSamples) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("The percentile must be between 0 and 1");
+        }
+        this.delayMS = -1;
+        this.percentile = percentile;
+        this.minDelayMS = minDelayMS;
+        this.minSamples = minSamples;
+        return this;
+    }
+
+    /**
+     * 设置对冲请求占总请求数的最大比例，默认为10%.
+     * <p>
+     * 重新设置时清空已累积的令牌
+     *
+     * @param maxExtraLoadPercent 最大比例（百分数）
+     * @return the hedge policy
+     */
+    public HedgePolicy maxExtraLoadPercent(double maxExtraLoadPercent) {
+        this.maxExtraLoadPercent = maxExtraLoadPercent;
+        synchronized (this) {
+            loadTokens = 0;
+        }
+        return this;
+    }
+
+    /**
+     * 获取已发起的对冲请求数.
+     *
+     * @return 对冲请求数
+     */
+    public long getHedgeCount() {
+        return hedgeCount.sum();
+    }
+
+    /**
+     * 获取对冲请求先于原始请求成功的次数.
+     *
+     * @return 对冲成功次数
+     */
+    public long getHedgeWinCount() {
+        return hedgeWinCount.sum();
+    }
+
+    /**
+     * 按对冲策略执行请求.
+     *
+     * @param request  请求
+     * @param exchange 实际发起请求的方法，取消其返回的Future时需取消对应的请求
+     * @return 先成功的请求结果
+     */
+    public CompletableFuture<HttpHelper.ResponseWrap> execute(HttpRequest request,
+                                                              Function<HttpRequest, CompletableFuture<HttpHelper.ResponseWrap>> exchange) {
+        if (!IDEMPOTENT_METHODS.contains(request.method())) {
+            return exchange.apply(request);
+        }
+        String host = request.uri().getHost() + ":" + request.uri().getPort();
+        LatencyWindow window = latencies.computeIfAbsent(host, h -> new LatencyWindow());
+        depositLoadToken();
+        long hedgeDelayMS = delayMS >= 0 ? delayMS : window.percentile(percentile, minSamples);
+        long startNanos = System.nanoTime();
+        CompletableFuture<HttpHelper.ResponseWrap> primary = exchange.apply(request);
+        CompletableFuture<HttpHelper.ResponseWrap> result = new CompletableFuture<>();
+        primary.whenComplete((r, e) -> {
+            // 对冲请求胜出时原始请求被取消，已等待的时间是其耗时的下限，仍作为样本记录
+            if (e == null || primary.isCancelled() && result.isDone() && !result.isCancelled()) {
+                window.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            }
+        });
+        if (hedgeDelayMS < 0) {
+            return primary;
+        }
+        AtomicInteger pending = new AtomicInteger(1);
+        AtomicReferenceArray<CompletableFuture<HttpHelper.ResponseWrap>> calls = new AtomicReferenceArray<>(2);
+        AtomicReference<HttpHelper.ResponseWrap> serverError = new AtomicReference<>();
+        calls.set(0, primary);
+        race(primary, 0, calls, pending, serverError, result);
+        CompletableFuture.delayedExecutor(Math.max(hedgeDelayMS, minDelayMS), TimeUnit.MILLISECONDS).execute(() -> {
+            synchronized (calls) {
+                if (result.isDone() || !tryAcquireLoadToken()) {
+                    return;
+                }
+                pending.incrementAndGet();
+            }
+            hedgeCount.increment();
+            LOGGER.debug("HTTP [" + request.method() + "] " + request.uri() + " not completed in " + hedgeDelayMS + "ms, send hedged request.");
+            CompletableFuture<HttpHelper.ResponseWrap> hedge;
+            try {
+                hedge = exchange.apply(request);
+            } catch (RuntimeException e) {
+                hedge = CompletableFuture.failedFuture(e);
+            }
+            calls.set(1, hedge);
+            if (result.isDone()) {
+                hedge.cancel(true);
+                return;
+            }
+            race(hedge, 1, calls, pending, serverError, result);
+        });
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) {
+                for (int i = 0; i < calls.length(); i++) {
+                    CompletableFuture<HttpHelper.ResponseWrap> call = calls.get(i);
+                    if (call != null) {
+                        call.cancel(true);
+                    }
+                }
+            }
+        });
+        return result;
+    }
+
+    // 成功（非5xx）的结果直接胜出；5xx或异常时，另一个请求仍在进行则继续等待，否则返回已收到的5xx响应或异常
+    private void race(CompletableFuture<HttpHelper.ResponseWrap> call, int index,
+                      AtomicReferenceArray<CompletableFuture<HttpHelper.ResponseWrap>> calls, AtomicInteger pending,
+                      AtomicReference<HttpHelper.ResponseWrap> serverError, CompletableFuture<HttpHelper.ResponseWrap> result) {
+        call.whenComplete((responseWrap, e) -> {
+            CompletableFuture<HttpHelper.ResponseWrap> loser = null;
+            synchronized (calls) {
+                if (result.isDone()) {
+                    return;
+                }
+                boolean otherPending = pending.decrementAndGet() > 0;
+                if (e == null && (responseWrap.statusCode < 500 || !otherPending)) {
+                    // 先计数再返回结果，保证调用方拿到结果时统计已完成
+                    if (index == 1) {
+                        hedgeWinCount.increment();
+                    }
+                    loser = calls.get(1 - index);
+                    result.complete(responseWrap);
+                } else if (e == null) {
+                    serverError.set(responseWrap);
+                } else if (!otherPending) {
+                    if (serverError.get() != null) {
+                        result.complete(serverError.get());
+                    } else {
+                        result.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                    }
+                }
+            }
+            if (loser != null) {
+                loser.cancel(true);
+            }
+        });
+    }
+
+    private synchronized void depositLoadToken() {
+        double perRequest = maxExtraLoadPercent / 100;
+        loadTokens = Math.min(loadTokens + perRequest, Math.max(1, perRequest * BURST_REQUESTS));
+    }
+
+    private synchronized boolean tryAcquireLoadToken() {
+        if (loadTokens >= 1) {
+            loadTokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 最近请求耗时的滑动窗口.
+     */
+    private static final class LatencyWindow {
+
+        private final long[] samples = new long[WINDOW_SIZE];
+        private int count;
+        private int position;
+        private long cachedPercentile = -1;
+        private int sinceComputed;
+
+        private synchronized void record(long latencyMS) {
+            samples[position] = latencyMS;
+            position = (position + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+            sinceComputed++;
+        }
+
+        private synchronized long percentile(double percentile, int minSamples) {
+            if (count < minSamples) {
+                return -1;
+            }
+            // 每记录32个样本重新计算一次，避免每个请求都排序
+            if (cachedPercentile < 0 || sinceComputed >= 32) {
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                cachedPercentile = sorted[(int) Math.min(count - 1, Math.ceil(percentile * count) - 1)];
+                sinceComputed = 0;
+            }
+            return cachedPercentile;
+        }
+    }
+
+}
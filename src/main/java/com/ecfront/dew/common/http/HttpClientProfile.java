@@ -0,0 +1,214 @@
+package com.ecfront.dew.common.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * 命名的HttpClient配置.
+ * <p>
+ * 通过 {@link com.ecfront.dew.common.$#http(HttpClientProfile)} 使用，同名的配置只创建一次HttpClient并缓存，
+ * 之后可通过 {@link com.ecfront.dew.common.$#http(String)} 获取，请求时不会重复创建客户端。
+ * <p>
+ * JDK的HttpClient不支持HTTP/2的prior knowledge方式：设置为HTTP/2时，https通过ALPN协商，http通过h2c升级协商，
+ * 服务端不支持时自动降级为HTTP/1.1。
+ * <p>
+ * 连接的空闲保持时间及连接池大小是JVM级别的设置（系统属性 {@code jdk.httpclient.keepalive.timeout} 及
+ * {@code jdk.httpclient.connectionPoolSize} ），在JVM创建首个HttpClient时读取，对所有配置共同生效，
+ * 因此不属于单个配置，需在创建任何HttpClient前通过 {@link #setKeepAliveSeconds(int)} 及 {@link #setConnectionPoolSize(int)} 设置
+ *
+ * @author gudaoxuri
+ */
+public class HttpClientProfile {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpClientProfile.class);
+
+    private static volatile boolean clientConfigured;
+
+    private final String name;
+    private HttpClient.Version version;
+    private Executor executor;
+    private boolean autoRedirect = true;
+    private int connectTimeoutMS = -1;
+    private int requestTimeoutMS = -1;
+    private int priority;
+
+    /**
+     * Instantiates a new Http client profile.
+     *
+     * @param name 配置名称
+     */
+    public HttpClientProfile(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("The profile name can't be empty");
+        }
+        this.name = name;
+    }
+
+    /**
+     * 设置HTTP版本，默认为HTTP/2（协商失败时降级为HTTP/1.1）.
+     *
+     * @param version HTTP版本
+     * @return the http client profile
+     */
+    public HttpClientProfile version(HttpClient.Version version) {
+        this.version = version;
+        return this;
+    }
+
+    /**
+     * 设置执行异步任务（如响应回调）的线程池，默认使用HttpClient内置的线程池.
+     *
+     * @param executor 线程池
+     * @return the http client profile
+     */
+    public HttpClientProfile executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * 使用虚拟线程执行异步任务，每个任务一个虚拟线程.
+     *
+     * @return the http client profile
+     */
+    public HttpClientProfile virtualThreads() {
+        return executor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    /**
+     * 设置302状态下是否自动跳转，默认为true.
+     *
+     * @param autoRedirect 是否自动跳转
+     * @return the http client profile
+     */
+    public HttpClientProfile autoRedirect(boolean autoRedirect) {
+        this.autoRedirect = autoRedirect;
+        return this;
+    }
+
+    /**
+     * 设置建立连接的超时时间，默认不限制.
+     *
+     * @param connectTimeoutMS 超时时间，-1表示不限制
+     * @return the http client profile
+     */
+    public HttpClientProfile connectTimeoutMS(int connectTimeoutMS) {
+        this.connectTimeoutMS = connectTimeoutMS;
+        return this;
+    }
+
+    /**
+     * 设置默认的请求超时时间，请求未指定超时时间（-1）时使用，默认不限制.
+     *
+     * @param requestTimeoutMS 超时时间，-1表示不限制
+     * @return the http client profile
+     */
+    public HttpClientProfile requestTimeoutMS(int requestTimeoutMS) {
+        this.requestTimeoutMS = requestTimeoutMS;
+        return this;
+    }
+
+    /**
+     * 设置HTTP/2请求的默认优先级.
+     *
+     * @param priority 优先级，1-256
+     * @return the http client profile
+     */
+    public HttpClientProfile priority(int priority) {
+        if (priority < 1 || priority > 256) {
+            throw new IllegalArgumentException("The priority must be between 1 and 256");
+        }
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * 设置JVM中所有HttpClient空闲连接的保持时间.
+     * <p>
+     * 写入系统属性 {@code jdk.httpclient.keepalive.timeout} ，已通过任一配置创建过HttpClient时不再写入，并输出警告
+     *
+     * @param keepAliveSeconds 保持时间（秒）
+     * @return 设置是否能生效
+     */
+    public static boolean setKeepAliveSeconds(int keepAliveSeconds) {
+        if (keepAliveSeconds <= 0) {
+            throw new IllegalArgumentException("The keep alive seconds must be greater than 0");
+        }
+        return setJvmProperty("jdk.httpclient.keepalive.timeout", keepAliveSeconds);
+    }
+
+    /**
+     * 设置JVM中所有HttpClient每个目标地址的最大空闲连接数.
+     * <p>
+     * 写入系统属性 {@code jdk.httpclient.connectionPoolSize} ，已通过任一配置创建过HttpClient时不再写入，并输出警告
+     *
+     * @param connectionPoolSize 最大空闲连接数，0表示不限制
+     * @return 设置是否能生效
+     */
+    public static boolean setConnectionPoolSize(int connectionPoolSize) {
+        if (connectionPoolSize < 0) {
+            throw new IllegalArgumentException("The connection pool size must be greater than or equal to 0");
+        }
+        return setJvmProperty("jdk.httpclient.connectionPoolSize", connectionPoolSize);
+    }
+
+    // 系统属性在JVM创建首个HttpClient时读取，之后修改不再生效，与configure互斥以免在两者之间创建HttpClient
+    private static synchronized boolean setJvmProperty(String key, int value) {
+        if (clientConfigured) {
+            LOGGER.warn("The system property [" + key + "] can't be set to " + value + " after a HttpClient was created.");
+            return false;
+        }
+        System.setProperty(key, String.valueOf(value));
+        return true;
+    }
+
+    /**
+     * 获取配置名称.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取默认的请求超时时间.
+     *
+     * @return 超时时间，-1表示不限制
+     */
+    public int getRequestTimeoutMS() {
+        return requestTimeoutMS;
+    }
+
+    /**
+     * 将配置应用到HttpClient构建器.
+     *
+     * @param builder HttpClient构建器
+     * @return the http client builder
+     */
+    public HttpClient.Builder configure(HttpClient.Builder builder) {
+        synchronized (HttpClientProfile.class) {
+            clientConfigured = true;
+        }
+        builder.followRedirects(autoRedirect ? HttpClient.Redirect.ALWAYS : HttpClient.Redirect.NEVER);
+        if (version != null) {
+            builder.version(version);
+        }
+        if (executor != null) {
+            builder.executor(executor);
+        }
+        if (connectTimeoutMS != -1 && connectTimeoutMS != 0) {
+            builder.connectTimeout(Duration.ofMillis(connectTimeoutMS));
+        }
+        if (priority != 0) {
+            builder.priority(priority);
+        }
+        return builder;
+    }
+
+}
@@ -0,0 +1,272 @@
+package com.ecfront.dew.common.http;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpTimeoutException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP请求统计.
+ * <p>
+ * 按 http方法 + host 统计请求数、各类状态码数、延迟分布、收发字节数、超时数及异常数，
+ * 通过 {@link #snapshot()} 获取当前的统计结果，可直接转成Json供监控系统采集
+ *
+ * @author gudaoxuri
+ */
+public class HttpMetrics implements HttpMetricsListener {
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    @Override
+    public void onComplete(HttpRequest request, int statusCode, long latencyNanos, long bytesSent, long bytesReceived, Throwable error) {
+        String host = request.uri().getPort() == -1 ? request.uri().getHost() : request.uri().getHost() + ":" + request.uri().getPort();
+        Endpoint endpoint = endpoints.get(request.method() + " " + host);
+        if (endpoint == null) {
+            endpoint = endpoints.computeIfAbsent(request.method() + " " + host, key -> new Endpoint(request.method(), host));
+        }
+        endpoint.record(statusCode, latencyNanos, bytesSent, bytesReceived, error);
+    }
+
+    /**
+     * 获取统计结果.
+     *
+     * @return 各 http方法 + host 的统计结果，按名称排序
+     */
+    public List<Snapshot> snapshot() {
+        List<Snapshot> snapshots = new ArrayList<>();
+        new TreeMap<>(endpoints).values().forEach(endpoint -> snapshots.add(endpoint.snapshot()));
+        return snapshots;
+    }
+
+    /**
+     * 获取指定 http方法 + host 的统计结果.
+     *
+     * @param method http方法
+     * @param host   host，非默认端口时需包含端口，如 127.0.0.1:8080
+     * @return 统计结果，无请求时返回null
+     */
+    public Snapshot snapshot(String method, String host) {
+        Endpoint endpoint = endpoints.get(method.toUpperCase() + " " + host);
+        return endpoint == null ? null : endpoint.snapshot();
+    }
+
+    /**
+     * 清空统计.
+     */
+    public void reset() {
+        endpoints.clear();
+    }
+
+    private static final class Endpoint {
+
+        private final String method;
+        private final String host;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder[] statusClasses = new LongAdder[5];
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder exceptions = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private Endpoint(String method, String host) {
+            this.method = method;
+            this.host = host;
+            for (int i = 0; i < statusClasses.length; i++) {
+                statusClasses[i] = new LongAdder();
+            }
+        }
+
+        private void record(int statusCode, long latencyNanos, long sent, long received, Throwable error) {
+            count.increment();
+            if (error != null) {
+                if (error instanceof HttpTimeoutException) {
+                    timeouts.increment();
+                } else {
+                    exceptions.increment();
+                }
+            } else if (statusCode >= 100 && statusCode < 600) {
+                statusClasses[statusCode / 100 - 1].increment();
+            }
+            if (sent > 0) {
+                bytesSent.add(sent);
+            }
+            if (received > 0) {
+                bytesReceived.add(received);
+            }
+            latency.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        }
+
+        private Snapshot snapshot() {
+            Snapshot snapshot = new Snapshot();
+            snapshot.method = method;
+            snapshot.host = host;
+            snapshot.count = count.sum();
+            snapshot.statusClasses = new LinkedHashMap<>();
+            for (int i = 0; i < statusClasses.length; i++) {
+                snapshot.statusClasses.put((i + 1) + "xx", statusClasses[i].sum());
+            }
+            snapshot.timeouts = timeouts.sum();
+            snapshot.exceptions = exceptions.sum();
+            snapshot.bytesSent = bytesSent.sum();
+            snapshot.bytesReceived = bytesReceived.sum();
+            snapshot.latencyMeanMS = latency.getMean() / 1000;
+            snapshot.latencyP50MS = latency.getValueAtPercentile(0.5) / 1000D;
+            snapshot.latencyP90MS = latency.getValueAtPercentile(0.9) / 1000D;
+            snapshot.latencyP99MS = latency.getValueAtPercentile(0.99) / 1000D;
+            snapshot.latencyP999MS = latency.getValueAtPercentile(0.999) / 1000D;
+            snapshot.latencyMaxMS = latency.getMax() / 1000D;
+            return snapshot;
+        }
+    }
+
+    /**
+     * 统计结果.
+     */
+    public static class Snapshot {
+
+        private String method;
+        private String host;
+        private long count;
+        private Map<String, Long> statusClasses;
+        private long timeouts;
+        private long exceptions;
+        private long bytesSent;
+        private long bytesReceived;
+        private double latencyMeanMS;
+        private double latencyP50MS;
+        private double latencyP90MS;
+        private double latencyP99MS;
+        private double latencyP999MS;
+        private double latencyMaxMS;
+
+        /**
+         * Gets method.
+         *
+         * @return the method
+         */
+        public String getMethod() {
+            return method;
+        }
+
+        /**
+         * Gets host.
+         *
+         * @return the host
+         */
+        public String getHost() {
+            return host;
+        }
+
+        /**
+         * 获取请求数.
+         *
+         * @return the count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * 获取各类状态码的请求数.
+         *
+         * @return 1xx、2xx、3xx、4xx、5xx 对应的请求数
+         */
+        public Map<String, Long> getStatusClasses() {
+            return statusClasses;
+        }
+
+        /**
+         * 获取超时的请求数.
+         *
+         * @return the timeouts
+         */
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        /**
+         * 获取异常（不包含超时）的请求数.
+         *
+         * @return the exceptions
+         */
+        public long getExceptions() {
+            return exceptions;
+        }
+
+        /**
+         * 获取发送的字节数.
+         *
+         * @return the bytes sent
+         */
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        /**
+         * 获取接收的字节数.
+         *
+         * @return the bytes received
+         */
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        /**
+         * 获取平均延迟.
+         *
+         * @return 平均延迟（毫秒）
+         */
+        public double getLatencyMeanMS() {
+            return latencyMeanMS;
+        }
+
+        /**
+         * 获取p50延迟.
+         *
+         * @return p50延迟（毫秒）
+         */
+        public double getLatencyP50MS() {
+            return latencyP50MS;
+        }
+
+        /**
+         * 获取p90延迟.
+         *
+         * @return p90延迟（毫秒）
+         */
+        public double getLatencyP90MS() {
+            return latencyP90MS;
+        }
+
+        /**
+         * 获取p99延迟.
+         *
+         * @return p99延迟（毫秒）
+         */
+        public double getLatencyP99MS() {
+            return latencyP99MS;
+        }
+
+        /**
+         * 获取p999延迟.
+         *
+         * @return p999延迟（毫秒）
+         */
+        public double getLatencyP999MS() {
+            return latencyP999MS;
+        }
+
+        /**
+         * 获取最大延迟.
+         *
+         * @return 最大延迟（毫秒）
+         */
+        public double getLatencyMaxMS() {
+            return latencyMaxMS;
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.ecfront.dew.common.http;
+
+import java.net.http.HttpRequest;
+
+/**
+ * HTTP请求监听器.
+ * <p>
+ * 通过 {@link com.ecfront.dew.common.HttpHelper#addMetricsListener(HttpMetricsListener)} 注册，
+ * 每个实际发出的请求（包含重试及对冲请求）都会回调，回调在请求线程中执行，实现需保证线程安全且不能阻塞
+ *
+ * @author gudaoxuri
+ * @see HttpMetrics
+ */
+public interface HttpMetricsListener {
+
+    /**
+     * 请求开始.
+     *
+     * @param request 请求
+     */
+    default void onStart(HttpRequest request) {
+    }
+
+    /**
+     * 请求结束.
+     *
+     * @param request       请求
+     * @param statusCode    状态码，请求异常时为-1
+     * @param latencyNanos  从发出请求到收到响应（对于字符串等非流式响应为收到完整响应体）的耗时（纳秒）
+     * @param bytesSent     发送的请求体字节数，未知时为-1
+     * @param bytesReceived 接收的响应体字节数，流式响应未读取完时为 {@code Content-Length} ，未知时为-1
+     * @param error         请求异常，成功时为null
+     */
+    void onComplete(HttpRequest request, int statusCode, long latencyNanos, long bytesSent, long bytesReceived, Throwable error);
+
+}
@@ -0,0 +1,245 @@
+package com.ecfront.dew.common.http;
+
+import com.ecfront.dew.common.Resp;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * 将响应体直接解析为Java对象的处理器.
+ * <p>
+ * 响应体的数据块到达时即送入Jackson的非阻塞解析器，解析出的Token暂存于 {@link TokenBuffer} ，
+ * 响应结束后再绑定到目标类型，不会生成响应体的字节数组或字符串。
+ * 非UTF-8编码（由Content-Type的charset指定）的响应体先按对应编码读取为字符串再解析。
+ * <p>
+ * 响应体为空时返回null
+ *
+ * @param <T> 目标类型
+ * @author gudaoxuri
+ */
+public final class JsonBodyHandler<T> implements HttpResponse.BodyHandler<T> {
+
+    private final ObjectMapper mapper;
+    private final Binder<T> binder;
+
+    private JsonBodyHandler(ObjectMapper mapper, Binder<T> binder) {
+        this.mapper = mapper;
+        this.binder = binder;
+    }
+
+    /**
+     * 创建解析为指定类型的处理器.
+     *
+     * @param <T>    目标类型
+     * @param mapper ObjectMapper
+     * @param type   目标类型
+     * @return 处理器
+     */
+    public static <T> JsonBodyHandler<T> of(ObjectMapper mapper, JavaType type) {
+        return new JsonBodyHandler<>(mapper, tokens -> mapper.readValue(tokens.asParser(), type));
+    }
+
+    /**
+     * 创建解析为 {@link Resp} 的处理器.
+     * <p>
+     * 一次解析即完成body的类型绑定，语义同 {@link Resp#generic(String, Class)} ：
+     * 仅在成功时返回body，失败时body为null（body与目标类型不匹配也不会报错）
+     *
+     * @param <E>       body类型
+     * @param mapper    ObjectMapper
+     * @param bodyClazz body类型
+     * @return 处理器
+     */
+    public static <E> JsonBodyHandler<Resp<E>> ofResp(ObjectMapper mapper, Class<E> bodyClazz) {
+        JavaType type = mapper.getTypeFactory().constructParametricType(Resp.class, bodyClazz);
+        return new JsonBodyHandler<>(mapper, tokens -> {
+            Resp<E> resp;
+            try {
+                resp = mapper.readValue(tokens.asParser(), type);
+            } catch (JsonMappingException e) {
+                // 失败的响应不需要body，重新绑定暂存的Token，无需再次解析
+                Resp<?> rawResp = mapper.readValue(tokens.asParser(), Resp.class);
+                if (rawResp.ok()) {
+                    throw e;
+                }
+                return new Resp<>(rawResp.getCode(), rawResp.getMessage(), null);
+            }
+            if (!resp.ok()) {
+                resp.setBody(null);
+            }
+            return resp;
+        });
+    }
+
+    @Override
+    public HttpResponse.BodySubscriber<T> apply(HttpResponse.ResponseInfo responseInfo) {
+        Charset charset = charsetOf(responseInfo.headers().firstValue("Content-Type").orElse(null));
+        if (charset == StandardCharsets.UTF_8) {
+            try {
+                return new JsonBodySubscriber<>(mapper, binder);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofString(charset), str -> {
+            try (JsonParser parser = mapper.createParser(str)) {
+                TokenBuffer tokens = createTokenBuffer(mapper, parser);
+                copyTokens(parser, tokens);
+                return tokens.firstToken() == null ? null : binder.bind(tokens);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    // 获取Content-Type中的编码，未指定或为兼容编码时返回UTF-8
+    private static Charset charsetOf(String contentType) {
+        if (contentType == null) {
+            return StandardCharsets.UTF_8;
+        }
+        for (String param : contentType.split(";")) {
+            String trimmed = param.trim();
+            if (trimmed.regionMatches(true, 0, "charset=", 0, 8)) {
+                String name = trimmed.substring(8).replace("\"", "").trim();
+                if (name.equalsIgnoreCase("utf-8") || name.equalsIgnoreCase("utf8") || name.equalsIgnoreCase("us-ascii")
+                        || !Charset.isSupported(name)) {
+                    return StandardCharsets.UTF_8;
+                }
+                return Charset.forName(name);
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private static TokenBuffer createTokenBuffer(ObjectMapper mapper, JsonParser parser) {
+        TokenBuffer tokens = new TokenBuffer(parser);
+        tokens.forceUseOfBigDecimal(mapper.isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS));
+        return tokens;
+    }
+
+    // 复制当前可用的Token，非阻塞解析器在数据不足时返回NOT_AVAILABLE
+    private static void copyTokens(JsonParser parser, TokenBuffer tokens) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            tokens.copyCurrentEvent(parser);
+        }
+    }
+
+    /**
+     * Token绑定函数.
+     *
+     * @param <T> 目标类型
+     */
+    @FunctionalInterface
+    private interface Binder<T> {
+
+        /**
+         * 绑定到目标类型.
+         *
+         * @param tokens 暂存的Token
+         * @return 目标对象
+         * @throws IOException 绑定失败
+         */
+        T bind(TokenBuffer tokens) throws IOException;
+
+    }
+
+    /**
+     * 增量解析响应体的订阅者.
+     * <p>
+     * 数据块的回调是串行的，解析器与TokenBuffer无需同步
+     *
+     * @param <T> 目标类型
+     */
+    private static final class JsonBodySubscriber<T> implements HttpResponse.BodySubscriber<T> {
+
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final JsonParser parser;
+        private final ByteBufferFeeder feeder;
+        private final TokenBuffer tokens;
+        private final Binder<T> binder;
+        private Flow.Subscription subscription;
+
+        private JsonBodySubscriber(ObjectMapper mapper, Binder<T> binder) throws IOException {
+            this.parser = mapper.getFactory().createNonBlockingByteBufferParser();
+            this.feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+            this.tokens = createTokenBuffer(mapper, parser);
+            this.binder = binder;
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                for (int i = 0; i < items.size(); i++) {
+                    feeder.feedInput(items.get(i));
+                    copyTokens(parser, tokens);
+                }
+            } catch (IOException | RuntimeException e) {
+                subscription.cancel();
+                closeParser();
+                result.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            closeParser();
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                feeder.endOfInput();
+                copyTokens(parser, tokens);
+                closeParser();
+                result.complete(tokens.firstToken() == null ? null : binder.bind(tokens));
+            } catch (IOException | RuntimeException e) {
+                closeParser();
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void closeParser() {
+            try {
+                parser.close();
+            } catch (IOException ignore) {
+                // 解析器仅持有内存中的缓冲区
+            }
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+package com.ecfront.dew.common.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 延迟直方图.
+ * <p>
+ * 参考HdrHistogram的对数-线性分桶：小于64的值精确记录，之后每个2的幂区间再等分为32个桶，相对误差不超过约3%。
+ * 记录时只做计数数组的原子递增，不分配对象。
+ *
+ * @author gudaoxuri
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int HALF_SUB_BUCKET_COUNT = 1 << (SUB_BUCKET_BITS - 1);
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS + 2) * HALF_SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalValue = new LongAdder();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * 记录一个值.
+     *
+     * @param value 值（如微秒），小于0时按0记录
+     */
+    public void record(long value) {
+        long recorded = Math.max(0, value);
+        counts.incrementAndGet(indexOf(recorded));
+        totalCount.increment();
+        totalValue.add(recorded);
+        maxValue.accumulateAndGet(recorded, Math::max);
+    }
+
+    /**
+     * 获取记录的总数.
+     *
+     * @return 总数
+     */
+    public long getTotalCount() {
+        return totalCount.sum();
+    }
+
+    /**
+     * 获取最大值.
+     *
+     * @return 最大值
+     */
+    public long getMax() {
+        return maxValue.get();
+    }
+
+    /**
+     * 获取平均值.
+     *
+     * @return 平均值，未记录时为0
+     */
+    public double getMean() {
+        long count = totalCount.sum();
+        return count == 0 ? 0 : (double) totalValue.sum() / count;
+    }
+
+    /**
+     * 获取百分位值.
+     *
+     * @param percentile 百分位，如0.99
+     * @return 百分位值（所在桶的上界，不超过最大值），未记录时为0
+     */
+    public long getValueAtPercentile(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile * count));
+        long accumulated = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            accumulated += snapshot[i];
+            if (accumulated >= target) {
+                return Math.min(highestValueOf(i), maxValue.get());
+            }
+        }
+        return maxValue.get();
+    }
+
+    /**
+     * 清空记录.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.reset();
+        totalValue.reset();
+        maxValue.set(0);
+    }
+
+    static int indexOf(long value) {
+        if (value < 2 * HALF_SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return shift * HALF_SUB_BUCKET_COUNT + (int) (value >>> shift);
+    }
+
+    static long highestValueOf(int index) {
+        if (index < 2 * HALF_SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / HALF_SUB_BUCKET_COUNT - 1;
+        long subBucket = index % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.ecfront.dew.common.http;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.function.BiFunction;
+
+/**
+ * 请求监听的执行辅助.
+ * <p>
+ * 统计请求耗时及收发的字节数并回调 {@link HttpMetricsListener}
+ *
+ * @author gudaoxuri
+ */
+public final class MetricsObserver {
+
+    private MetricsObserver() {
+    }
+
+    /**
+     * 执行请求并回调监听器.
+     *
+     * @param <T>         响应体类型
+     * @param listeners   监听器
+     * @param request     请求
+     * @param bodyHandler 响应体处理器
+     * @param send        实际发起请求的方法
+     * @return 请求结果
+     */
+    public static <T> CompletableFuture<HttpResponse<T>> observe(
+            List<HttpMetricsListener> listeners, HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler,
+            BiFunction<HttpRequest, HttpResponse.BodyHandler<T>, CompletableFuture<HttpResponse<T>>> send) {
+        if (listeners.isEmpty()) {
+            return send.apply(request, bodyHandler);
+        }
+        for (HttpMetricsListener listener : listeners) {
+            listener.onStart(request);
+        }
+        long bytesSent = request.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength).orElse(0L);
+        ReceivedCounter received = new ReceivedCounter();
+        long startNanos = System.nanoTime();
+        CompletableFuture<HttpResponse<T>> responseFuture = send.apply(request,
+                responseInfo -> new CountingBodySubscriber<>(bodyHandler.apply(responseInfo), received));
+        // 返回回调完成后的Future，保证调用方拿到结果时统计已完成
+        CompletableFuture<HttpResponse<T>> observedFuture = responseFuture.whenComplete((response, e) -> {
+            long latencyNanos = System.nanoTime() - startNanos;
+            Throwable error = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            long bytesReceived;
+            if (response == null) {
+                bytesReceived = -1;
+            } else if (received.completed) {
+                bytesReceived = received.bytes;
+            } else {
+                bytesReceived = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+            }
+            for (HttpMetricsListener listener : listeners) {
+                listener.onComplete(request, response == null ? -1 : response.statusCode(), latencyNanos, bytesSent, bytesReceived, error);
+            }
+        });
+        observedFuture.whenComplete((response, e) -> {
+            if (observedFuture.isCancelled()) {
+                responseFuture.cancel(true);
+            }
+        });
+        return observedFuture;
+    }
+
+    /**
+     * 已接收的字节数，响应体的回调是串行的，只需保证可见性.
+     */
+    private static final class ReceivedCounter {
+
+        private volatile long bytes;
+        private volatile boolean completed;
+    }
+
+    /**
+     * 统计接收字节数的响应体处理器.
+     *
+     * @param <T> 响应体类型
+     */
+    private static final class CountingBodySubscriber<T> implements HttpResponse.BodySubscriber<T> {
+
+        private final HttpResponse.BodySubscriber<T> delegate;
+        private final ReceivedCounter received;
+
+        private CountingBodySubscriber(HttpResponse.BodySubscriber<T> delegate, ReceivedCounter received) {
+            this.delegate = delegate;
+            this.received = received;
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            delegate.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            long size = 0;
+            for (int i = 0; i < items.size(); i++) {
+                size += items.get(i).remaining();
+            }
+            received.bytes += size;
+            delegate.onNext(items);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            delegate.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            received.completed = true;
+            delegate.onComplete();
+        }
+    }
+
+}
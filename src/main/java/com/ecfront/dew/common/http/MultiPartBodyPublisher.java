@@ -0,0 +1,451 @@
+package com.ecfront.dew.common.http;
+
+import com.ecfront.dew.common.exception.RTIOException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Multipart请求体构建器.
+ * <p>
+ * 可添加任意数量的表单字段、文件及输入流，各部分按添加顺序流式发送，不会一次性读入内存。
+ * 所有部分的长度已知（输入流需指定长度）时会预先计算 {@code Content-Length} ，否则使用分块传输。
+ * <p>
+ * 各部分的头信息在添加时即编码为字节，文件及输入流按块读取，每个数据块直接读入新分配的缓冲区，不再二次复制
+ * （HttpClient可能在异步写出前持有数据块，如HTTP/2按帧切片后排队发送，缓冲区无法复用）。
+ * 发送过程中文件被截断会导致请求失败。
+ * <p>
+ * 可作为 {@link com.ecfront.dew.common.HttpHelper} 请求的body使用，此时会自动设置对应的Content-Type。
+ * <p>
+ * From https://stackoverflow.com/questions/46392160/java-9-httpclient-send-a-multipart-form-data-request .
+ *
+ * @author gudaoxuri
+ */
+public class MultiPartBodyPublisher {
+
+    private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.UTF_8);
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final List<PartsSpecification> partsSpecificationList = new ArrayList<>();
+    private final String boundary = UUID.randomUUID().toString();
+    private final byte[] finalBoundary = ("--" + boundary + "--").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Build http request . body publisher.
+     * <p>
+     * 可多次调用，每次构建的请求体都会重新读取各部分
+     *
+     * @return the http request . body publisher
+     */
+    public HttpRequest.BodyPublisher build() {
+        if (partsSpecificationList.size() == 0) {
+            throw new IllegalStateException("Must have at least one part to build multipart message.");
+        }
+        long contentLength = getContentLength();
+        return new HttpRequest.BodyPublisher() {
+            @Override
+            public long contentLength() {
+                return contentLength;
+            }
+
+            @Override
+            public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+                subscriber.onSubscribe(new PartsSubscription(subscriber, new PartsIterator()));
+            }
+        };
+    }
+
+    /**
+     * Gets boundary.
+     *
+     * @return the boundary
+     */
+    public String getBoundary() {
+        return boundary;
+    }
+
+    /**
+     * 获取请求的Content-Type.
+     *
+     * @return 包含boundary的Content-Type
+     */
+    public String getContentType() {
+        return "multipart/form-data; boundary=" + boundary;
+    }
+
+    /**
+     * 获取请求体的总长度.
+     * <p>
+     * 文件的长度在调用时获取，发送前文件大小发生变化会导致请求失败
+     *
+     * @return 总长度，存在未指定长度的输入流时返回-1
+     * @throws RTIOException 获取文件大小失败
+     */
+    public long getContentLength() throws RTIOException {
+        long length = finalBoundary.length;
+        for (PartsSpecification part : partsSpecificationList) {
+            long size;
+            switch (part.type) {
+                case STRING:
+                    length += part.header.length;
+                    continue;
+                case FILE:
+                    try {
+                        size = Files.size(part.path);
+                    } catch (IOException e) {
+                        throw new RTIOException(e);
+                    }
+                    break;
+                default:
+                    size = part.contentLength;
+            }
+            if (size < 0) {
+                return -1;
+            }
+            length += part.header.length + size + CRLF.length;
+        }
+        return length;
+    }
+
+    /**
+     * Add part multi part body publisher.
+     *
+     * @param name  the name
+     * @param value the value
+     * @return the multi part body publisher
+     */
+    public MultiPartBodyPublisher addPart(String name, String value) {
+        PartsSpecification newPart = new PartsSpecification();
+        newPart.type = PartsSpecification.TYPE.STRING;
+        // 字符串部分的头信息、内容及结尾换行合并为一个数据块
+        newPart.header = ("--" + boundary + "\r\n" + "Content-Disposition: form-data; name=" + quote(name) + "\r\n"
+                + "Content-Type: text/plain; charset=UTF-8\r\n\r\n" + value + "\r\n").getBytes(StandardCharsets.UTF_8);
+        partsSpecificationList.add(newPart);
+        return this;
+    }
+
+    /**
+     * Add part multi part body publisher.
+     *
+     * @param name  the name
+     * @param value the value
+     * @return the multi part body publisher
+     * @throws RTIOException 获取文件类型失败
+     */
+    public MultiPartBodyPublisher addPart(String name, Path value) throws RTIOException {
+        String contentType;
+        try {
+            contentType = Files.probeContentType(value);
+        } catch (IOException e) {
+            throw new RTIOException(e);
+        }
+        PartsSpecification newPart = new PartsSpecification();
+        newPart.type = PartsSpecification.TYPE.FILE;
+        newPart.header = fileHeader(name, value.getFileName().toString(), contentType);
+        newPart.path = value;
+        partsSpecificationList.add(newPart);
+        return this;
+    }
+
+    /**
+     * Add part multi part body publisher.
+     * <p>
+     * 输入流长度未知，添加后请求体将使用分块传输
+     *
+     * @param name        the name
+     * @param value       the value
+     * @param filename    the filename
+     * @param contentType the content type
+     * @return the multi part body publisher
+     */
+    public MultiPartBodyPublisher addPart(String name, Supplier<InputStream> value, String filename, String contentType) {
+        return addPart(name, value, filename, contentType, -1);
+    }
+
+    /**
+     * Add part multi part body publisher.
+     *
+     * @param name          the name
+     * @param value         the value，每次构建请求体时调用一次，返回的输入流在读取完成后关闭
+     * @param filename      the filename
+     * @param contentType   the content type
+     * @param contentLength 输入流的长度，-1表示未知
+     * @return the multi part body publisher
+     */
+    public MultiPartBodyPublisher addPart(String name, Supplier<InputStream> value, String filename, String contentType, long contentLength) {
+        PartsSpecification newPart = new PartsSpecification();
+        newPart.type = PartsSpecification.TYPE.STREAM;
+        newPart.header = fileHeader(name, filename, contentType);
+        newPart.stream = value;
+        newPart.contentLength = contentLength;
+        partsSpecificationList.add(newPart);
+        return this;
+    }
+
+    private byte[] fileHeader(String name, String filename, String contentType) {
+        return ("--" + boundary + "\r\n" + "Content-Disposition: form-data; name=" + quote(name) + "; filename=" + quote(filename) + "\r\n"
+                + "Content-Type: " + (contentType == null ? DEFAULT_CONTENT_TYPE : contentType) + "\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    // 按RFC 7578转义引号及换行
+    private static String quote(String value) {
+        return "\"" + value.replace("\"", "%22").replace("\r", "%0D").replace("\n", "%0A") + "\"";
+    }
+
+    /**
+     * The type Parts specification.
+     */
+    static class PartsSpecification {
+
+        private PartsSpecification.TYPE type;
+        private byte[] header;
+        private Path path;
+        private Supplier<InputStream> stream;
+        private long contentLength;
+
+        /**
+         * The enum Type.
+         */
+        public enum TYPE {
+            /**
+             * String type.
+             */
+            STRING,
+            /**
+             * File type.
+             */
+            FILE,
+            /**
+             * Stream type.
+             */
+            STREAM
+        }
+
+    }
+
+    /**
+     * 按订阅者的请求数推送数据块.
+     * <p>
+     * request可能在onNext中被重入调用，通过wip计数保证迭代器只在一个线程中串行访问
+     */
+    private static final class PartsSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final PartsIterator iterator;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable pendingError;
+        private boolean terminated;
+
+        private PartsSubscription(Flow.Subscriber<? super ByteBuffer> subscriber, PartsIterator iterator) {
+            this.subscriber = subscriber;
+            this.iterator = iterator;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                pendingError = new IllegalArgumentException("Non-positive subscription request: " + n);
+            } else {
+                demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                while (!terminated) {
+                    if (cancelled) {
+                        terminate();
+                    } else if (pendingError != null) {
+                        terminate();
+                        subscriber.onError(pendingError);
+                    } else if (demand.get() == 0) {
+                        break;
+                    } else {
+                        ByteBuffer buffer;
+                        try {
+                            if (!iterator.hasNext()) {
+                                terminate();
+                                subscriber.onComplete();
+                                break;
+                            }
+                            buffer = iterator.next();
+                        } catch (RuntimeException e) {
+                            terminate();
+                            subscriber.onError(e);
+                            break;
+                        }
+                        demand.decrementAndGet();
+                        subscriber.onNext(buffer);
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void terminate() {
+            terminated = true;
+            iterator.close();
+        }
+    }
+
+    /**
+     * The type Parts iterator.
+     */
+    class PartsIterator implements Iterator<ByteBuffer> {
+
+        private final Iterator<PartsSpecification> iter;
+        private FileChannel currentFileChannel;
+        private long currentFilePosition;
+        private long currentFileSize;
+        private InputStream currentInput;
+
+        private boolean done;
+        private boolean finished;
+        private ByteBuffer next;
+
+        /**
+         * Instantiates a new Parts iterator.
+         */
+        PartsIterator() {
+            iter = partsSpecificationList.iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (done) {
+                return false;
+            }
+            if (next != null) {
+                return true;
+            }
+            try {
+                next = computeNext();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (next == null) {
+                done = true;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public ByteBuffer next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ByteBuffer res = next;
+            next = null;
+            return res;
+        }
+
+        /**
+         * 关闭正在读取的文件或输入流.
+         */
+        void close() {
+            done = true;
+            closeCurrent();
+        }
+
+        private ByteBuffer computeNext() throws IOException {
+            if (currentFileChannel != null) {
+                ByteBuffer chunk = nextFileChunk();
+                if (chunk != null) {
+                    return chunk;
+                }
+                closeCurrent();
+                return ByteBuffer.wrap(CRLF);
+            }
+            if (currentInput != null) {
+                byte[] buf = new byte[CHUNK_SIZE];
+                int r = currentInput.readNBytes(buf, 0, buf.length);
+                if (r > 0) {
+                    return ByteBuffer.wrap(buf, 0, r);
+                }
+                closeCurrent();
+                return ByteBuffer.wrap(CRLF);
+            }
+            if (!iter.hasNext()) {
+                if (finished) {
+                    return null;
+                }
+                finished = true;
+                return ByteBuffer.wrap(finalBoundary);
+            }
+            PartsSpecification nextPart = iter.next();
+            if (PartsSpecification.TYPE.FILE.equals(nextPart.type)) {
+                currentFileChannel = FileChannel.open(nextPart.path, StandardOpenOption.READ);
+                currentFilePosition = 0;
+                currentFileSize = currentFileChannel.size();
+            } else if (PartsSpecification.TYPE.STREAM.equals(nextPart.type)) {
+                currentInput = nextPart.stream.get();
+            }
+            return ByteBuffer.wrap(nextPart.header);
+        }
+
+        // 按位置读取文件的下一个数据块，读取到的长度以打开时的文件大小为准，文件被截断时抛出异常
+        private ByteBuffer nextFileChunk() throws IOException {
+            long remaining = currentFileSize - currentFilePosition;
+            if (remaining <= 0) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(CHUNK_SIZE, remaining));
+            while (buffer.hasRemaining()) {
+                if (currentFileChannel.read(buffer, currentFilePosition + buffer.position()) < 0) {
+                    throw new IOException("The file was truncated at " + (currentFilePosition + buffer.position())
+                            + ", expected " + currentFileSize + " bytes");
+                }
+            }
+            currentFilePosition += buffer.position();
+            return buffer.flip();
+        }
+
+        private void closeCurrent() {
+            try {
+                if (currentFileChannel != null) {
+                    currentFileChannel.close();
+                }
+                if (currentInput != null) {
+                    currentInput.close();
+                }
+            } catch (IOException ignore) {
+                // 读取已结束，关闭失败不影响请求
+            } finally {
+                currentFileChannel = null;
+                currentInput = null;
+            }
+        }
+    }
+}
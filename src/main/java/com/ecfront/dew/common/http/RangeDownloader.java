@@ -0,0 +1,462 @@
+package com.ecfront.dew.common.http;
+
+import com.ecfront.dew.common.$;
+import com.ecfront.dew.common.HttpHelper;
+import com.ecfront.dew.common.exception.RTIOException;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * 多连接分段下载.
+ * <p>
+ * 先通过HEAD请求获取文件大小及是否支持 {@code Accept-Ranges: bytes}，
+ * 支持时将文件切分成多个分段并发下载，各分段按位置直接写入预分配的目标文件，
+ * 不支持时退化为普通的单连接下载。
+ * <p>
+ * 下载进度记录在目标文件同目录的 {@code .ranges} 状态文件中，中断后再次下载同一文件时只下载未完成的分段，
+ * 下载完成后删除状态文件。
+ * <p>
+ * 分段请求通过 {@code If-Range} 携带强 {@code ETag} （没有时使用 {@code Last-Modified} ）保证各分段来自同一版本的文件，
+ * 服务端对分段请求返回200表示文件已变化，此时丢弃已下载的分段重新下载一次，再次变化时下载失败。
+ * <p>
+ * 206响应的 {@code Content-Range} 必须与请求的范围一致，且响应体不能超出该范围，否则分段失败，避免覆盖相邻的分段；
+ * 任一分段重试后仍失败时取消其它正在下载的分段，下载立即失败。
+ *
+ * @author gudaoxuri
+ */
+public class RangeDownloader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RangeDownloader.class);
+
+    private static final String STATE_FILE_SUFFIX = ".ranges";
+
+    private final HttpHelper httpHelper;
+    private int connections = 4;
+    private long chunkSize = 8 * 1024 * 1024;
+    private int retries = 3;
+    private int retryIntervalMS = 200;
+    private int timeoutMS = -1;
+
+    /**
+     * Instantiates a new Range downloader.
+     *
+     * @param httpHelper 使用的HTTP操作实例
+     */
+    public RangeDownloader(HttpHelper httpHelper) {
+        this.httpHelper = httpHelper;
+    }
+
+    /**
+     * 设置并发连接数，默认为4.
+     *
+     * @param connections 并发连接数
+     * @return the range downloader
+     */
+    public RangeDownloader connections(int connections) {
+        if (connections <= 0) {
+            throw new IllegalArgumentException("The connections must be greater than 0");
+        }
+        this.connections = connections;
+        return this;
+    }
+
+    /**
+     * 设置分段大小，默认为8MB.
+     * <p>
+     * 分段是重试及断点续传的最小单位
+     *
+     * @param chunkSize 分段大小（字节）
+     * @return the range downloader
+     */
+    public RangeDownloader chunkSize(long chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("The chunk size must be greater than 0");
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * 设置每个分段失败后的重试次数，默认为3.
+     *
+     * @param retries         重试次数
+     * @param retryIntervalMS 首次重试的间隔时间，之后每次翻倍
+     * @return the range downloader
+     */
+    public RangeDownloader retries(int retries, int retryIntervalMS) {
+        this.retries = retries;
+        this.retryIntervalMS = retryIntervalMS;
+        return this;
+    }
+
+    /**
+     * 设置每个请求的超时时间.
+     *
+     * @param timeoutMS 超时时间
+     * @return the range downloader
+     */
+    public RangeDownloader timeoutMS(int timeoutMS) {
+        this.timeoutMS = timeoutMS;
+        return this;
+    }
+
+    /**
+     * 下载文件.
+     *
+     * @param url    请求url
+     * @param header 请求头
+     * @param file   目标文件
+     * @return 目标文件 path
+     * @throws RTIOException the rtio exception
+     */
+    public Path download(String url, Map<String, String> header, Path file) throws RTIOException {
+        try {
+            return download(url, header, file, false);
+        } catch (ValidatorChangedException e) {
+            LOGGER.warn("Download " + url + " changed during the download, restart.");
+            return download(url, header, file, true);
+        }
+    }
+
+    private Path download(String url, Map<String, String> header, Path file, boolean restarted) throws RTIOException {
+        Map<String, List<String>> head = httpHelper.head(url, header, null, null, timeoutMS);
+        long length = Long.parseLong(firstHeader(head, "Content-Length", "-1"));
+        boolean acceptRanges = firstHeader(head, "Accept-Ranges", "none").toLowerCase().contains("bytes");
+        if (!acceptRanges || length <= 0) {
+            LOGGER.debug("HTTP [GET] " + url + " does not support ranges, fallback to single connection download.");
+            return httpHelper.download(url, header, file, timeoutMS).body;
+        }
+        // 弱ETag不能用于If-Range
+        String etag = firstHeader(head, "ETag", "");
+        String validator = !etag.isEmpty() && !etag.startsWith("W/") ? etag : firstHeader(head, "Last-Modified", "");
+        Path stateFile = file.resolveSibling(file.getFileName() + STATE_FILE_SUFFIX);
+        Set<Integer> completed = loadState(stateFile, file, url, length, validator);
+        int chunks = (int) ((length + chunkSize - 1) / chunkSize);
+        Queue<Integer> pending = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < chunks; i++) {
+            if (!completed.contains(i)) {
+                pending.add(i);
+            }
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(length);
+            DownloadContext context = new DownloadContext(url, header, validator, length, raf.getChannel(), pending, completed, stateFile);
+            CompletableFuture<?>[] workers = new CompletableFuture<?>[Math.min(connections, pending.size())];
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = nextChunk(context).whenComplete((v, e) -> {
+                    if (e != null) {
+                        context.fail(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                    }
+                });
+            }
+            // 以首个失败的原因结束，其它分段因取消而失败
+            CompletableFuture.allOf(workers).exceptionally(e -> {
+                throw new CompletionException(context.failure);
+            }).get();
+        } catch (IOException e) {
+            throw new RTIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RTIOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ValidatorChangedException) {
+                deleteState(stateFile);
+                if (restarted) {
+                    throw new RTIOException("Download " + url + " changed again during the download", e.getCause());
+                }
+                throw (ValidatorChangedException) e.getCause();
+            }
+            if (e.getCause() instanceof RTIOException) {
+                throw (RTIOException) e.getCause();
+            }
+            throw new RTIOException(e.getCause());
+        }
+        deleteState(stateFile);
+        return file;
+    }
+
+    private static void deleteState(Path stateFile) {
+        try {
+            Files.deleteIfExists(stateFile);
+        } catch (IOException e) {
+            throw new RTIOException(e);
+        }
+    }
+
+    private CompletableFuture<Void> nextChunk(DownloadContext context) {
+        Integer index = context.changed || context.failure != null ? null : context.pending.poll();
+        if (index == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return fetchChunk(context, index, 0).thenCompose(v -> nextChunk(context));
+    }
+
+    private CompletableFuture<Void> fetchChunk(DownloadContext context, int index, int attempt) {
+        long start = index * chunkSize;
+        long end = Math.min(context.length, start + chunkSize) - 1;
+        Map<String, String> rangeHeader = context.header == null ? new HashMap<>() : new HashMap<>(context.header);
+        rangeHeader.put("Range", "bytes=" + start + "-" + end);
+        if (!context.validator.isEmpty()) {
+            rangeHeader.put("If-Range", context.validator);
+        }
+        HttpResponse.BodyHandler<Long> bodyHandler = responseInfo -> {
+            if (responseInfo.statusCode() == 206) {
+                return new PositionalBodySubscriber(context.channel, start, end, responseInfo.headers().firstValue("Content-Range").orElse(""));
+            }
+            // 返回200时响应体是整个文件，不读取
+            return responseInfo.statusCode() == 200 ? new CancelledBodySubscriber() : HttpResponse.BodySubscribers.replacing(-1L);
+        };
+        CompletableFuture<HttpHelper.StreamResponseWrap<Long>> call =
+                httpHelper.requestAsync("GET", context.url, null, rangeHeader, null, null, timeoutMS, bodyHandler);
+        context.inFlight.add(call);
+        call.whenComplete((r, e) -> context.inFlight.remove(call));
+        if (context.failure != null) {
+            call.cancel(true);
+        }
+        return call
+                .thenAccept(wrap -> {
+                    if (wrap.statusCode == 200) {
+                        // If-Range不匹配（或服务端不再支持Range），已下载的分段可能来自其它版本
+                        context.changed = true;
+                        throw new ValidatorChangedException("Range [" + start + "-" + end + "] of " + context.url
+                                + " returned the whole content, the file has changed");
+                    }
+                    if (wrap.statusCode != 206 || wrap.body != end - start + 1) {
+                        throw new RTIOException("Range [" + start + "-" + end + "] of " + context.url
+                                + " failed, status code " + wrap.statusCode + ", received " + wrap.body + " bytes");
+                    }
+                    context.complete(index);
+                })
+                .handle((v, e) -> {
+                    if (e == null) {
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (attempt >= retries || context.changed || context.failure != null) {
+                        return CompletableFuture.<Void>failedFuture(cause);
+                    }
+                    LOGGER.warn("Range [" + start + "-" + end + "] of " + context.url + " failed, retry "
+                            + (attempt + 1) + " : " + cause.getMessage());
+                    Executor delayed = CompletableFuture.delayedExecutor((long) retryIntervalMS << attempt, TimeUnit.MILLISECONDS);
+                    return CompletableFuture.supplyAsync(() -> null, delayed)
+                            .thenCompose(n -> fetchChunk(context, index, attempt + 1));
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private Set<Integer> loadState(Path stateFile, Path file, String url, long length, String validator) {
+        Set<Integer> completed = ConcurrentHashMap.newKeySet();
+        if (!Files.exists(stateFile) || !Files.exists(file)) {
+            return completed;
+        }
+        try {
+            JsonNode state = $.json.toJson(Files.readString(stateFile));
+            if (state.path("url").asText().equals(url)
+                    && state.path("length").asLong() == length
+                    && state.path("validator").asText().equals(validator)
+                    && state.path("chunkSize").asLong() == chunkSize) {
+                state.path("completed").forEach(node -> completed.add(node.asInt()));
+                LOGGER.debug("Resume download " + url + " , " + completed.size() + " chunks completed.");
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Invalid download state file " + stateFile + " , restart download.", e);
+        }
+        return completed;
+    }
+
+    private static String firstHeader(Map<String, List<String>> head, String name, String defaultValue) {
+        List<String> values = head.get(name);
+        if (values == null || values.isEmpty()) {
+            return defaultValue;
+        }
+        return values.get(0);
+    }
+
+    private final class DownloadContext {
+
+        private final String url;
+        private final Map<String, String> header;
+        private final String validator;
+        private final long length;
+        private final FileChannel channel;
+        private final Queue<Integer> pending;
+        private final Set<Integer> completed;
+        private final Path stateFile;
+        private final Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+        private volatile boolean changed;
+        private volatile Throwable failure;
+
+        private DownloadContext(String url, Map<String, String> header, String validator, long length, FileChannel channel,
+                                Queue<Integer> pending, Set<Integer> completed, Path stateFile) {
+            this.url = url;
+            this.header = header;
+            this.validator = validator;
+            this.length = length;
+            this.channel = channel;
+            this.pending = pending;
+            this.completed = completed;
+            this.stateFile = stateFile;
+        }
+
+        // 记录首个失败的原因并取消其它正在下载的分段
+        private void fail(Throwable cause) {
+            synchronized (inFlight) {
+                if (failure != null) {
+                    return;
+                }
+                failure = cause;
+            }
+            inFlight.forEach(call -> call.cancel(true));
+        }
+
+        private synchronized void complete(int index) {
+            completed.add(index);
+            Map<String, Object> state = new LinkedHashMap<>();
+            state.put("url", url);
+            state.put("length", length);
+            state.put("validator", validator);
+            state.put("chunkSize", chunkSize);
+            state.put("completed", new TreeSet<>(completed));
+            Path tmpFile = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+            try {
+                Files.writeString(tmpFile, $.json.toJsonString(state));
+                Files.move(tmpFile, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new RTIOException(e);
+            }
+        }
+    }
+
+    /**
+     * 下载过程中文件发生变化.
+     */
+    private static final class ValidatorChangedException extends RTIOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private ValidatorChangedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 不读取响应体的处理器，订阅后即取消，返回-1.
+     */
+    private static final class CancelledBodySubscriber implements HttpResponse.BodySubscriber<Long> {
+
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+
+        @Override
+        public CompletionStage<Long> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.cancel();
+            result.complete(-1L);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.complete(-1L);
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(-1L);
+        }
+    }
+
+    /**
+     * 将响应体按位置写入文件的处理器，返回写入的字节数.
+     * <p>
+     * {@code Content-Range} 与请求的范围不一致或响应体超出范围时取消读取并失败
+     */
+    private static final class PositionalBodySubscriber implements HttpResponse.BodySubscriber<Long> {
+
+        private final FileChannel channel;
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+        private final long startPosition;
+        private final long endPosition;
+        private final String contentRange;
+        private long position;
+        private Flow.Subscription subscription;
+
+        private PositionalBodySubscriber(FileChannel channel, long startPosition, long endPosition, String contentRange) {
+            this.channel = channel;
+            this.startPosition = startPosition;
+            this.endPosition = endPosition;
+            this.contentRange = contentRange;
+            this.position = startPosition;
+        }
+
+        @Override
+        public CompletionStage<Long> getBody() {
+            return result;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (!contentRange.trim().toLowerCase().startsWith("bytes " + startPosition + "-" + endPosition + "/")) {
+                subscription.cancel();
+                result.completeExceptionally(new IOException("Range [" + startPosition + "-" + endPosition
+                        + "] was answered with Content-Range [" + contentRange + "]"));
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                for (ByteBuffer item : items) {
+                    if (position + item.remaining() > endPosition + 1) {
+                        throw new IOException("Range [" + startPosition + "-" + endPosition + "] received more than "
+                                + (endPosition - startPosition + 1) + " bytes");
+                    }
+                    while (item.hasRemaining()) {
+                        position += channel.write(item, position);
+                    }
+                }
+            } catch (IOException e) {
+                subscription.cancel();
+                result.completeExceptionally(e);
+                return;
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            result.complete(position - startPosition);
+        }
+    }
+
+}
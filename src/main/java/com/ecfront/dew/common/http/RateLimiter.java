@@ -0,0 +1,314 @@
+package com.ecfront.dew.common.http;
+
+import com.ecfront.dew.common.exception.RTIOException;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 客户端限流.
+ * <p>
+ * 按host或url前缀配置限制，每个限制包含令牌桶速率限制及并发数限制，请求匹配最长的限制。
+ * 超出限制时可排队等待至最大等待时间，超时或不排队时请求以 {@link RTIOException} 结束。
+ * <p>
+ * 未超出限制时获取令牌及并发许可均为CAS操作，无锁。
+ *
+ * @author gudaoxuri
+ */
+public class RateLimiter {
+
+    private final List<Limit> limits = new CopyOnWriteArrayList<>();
+
+    /**
+     * 添加限制，超出限制时不排队，直接失败.
+     *
+     * @param key              host（如 api.example.com 或 api.example.com:8080）或url前缀（如 https://api.example.com/v1/）
+     * @param permitsPerSecond 每秒允许的请求数，小于等于0表示不限制
+     * @param burst            允许的突发请求数（令牌桶容量）
+     * @param maxConcurrency   最大并发数，小于等于0表示不限制
+     * @return the rate limiter
+     */
+    public RateLimiter limit(String key, double permitsPerSecond, int burst, int maxConcurrency) {
+        return limit(key, permitsPerSecond, burst, maxConcurrency, 0);
+    }
+
+    /**
+     * 添加限制.
+     *
+     * @param key              host（如 api.example.com 或 api.example.com:8080）或url前缀（如 https://api.example.com/v1/）
+     * @param permitsPerSecond 每秒允许的请求数，小于等于0表示不限制
+     * @param burst            允许的突发请求数（令牌桶容量）
+     * @param maxConcurrency   最大并发数，小于等于0表示不限制
+     * @param maxWaitMS        超出限制时排队的最大等待时间，0表示不排队，-1表示不限制
+     * @return the rate limiter
+     */
+    public RateLimiter limit(String key, double permitsPerSecond, int burst, int maxConcurrency, long maxWaitMS) {
+        Limit limit = new Limit(key, permitsPerSecond, burst, maxConcurrency, maxWaitMS);
+        limits.removeIf(item -> item.key.equals(key));
+        limits.add(limit);
+        return this;
+    }
+
+    /**
+     * 获取所有限制.
+     *
+     * @return 限制列表，包含各限制的等待统计
+     */
+    public List<Limit> getLimits() {
+        return Collections.unmodifiableList(limits);
+    }
+
+    /**
+     * 获取指定的限制.
+     *
+     * @param key host或url前缀
+     * @return 限制，不存在时返回null
+     */
+    public Limit getLimit(String key) {
+        return limits.stream().filter(limit -> limit.key.equals(key)).findAny().orElse(null);
+    }
+
+    /**
+     * 在限制内执行请求.
+     *
+     * @param <T>     结果类型
+     * @param request 请求
+     * @param call    实际发起请求的方法
+     * @return 请求结果
+     */
+    public <T> CompletableFuture<T> execute(HttpRequest request, Supplier<CompletableFuture<T>> call) {
+        Limit limit = match(request.uri());
+        if (limit == null) {
+            return call.get();
+        }
+        long startNanos = System.nanoTime();
+        long maxWaitNanos = limit.maxWaitMS < 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(limit.maxWaitMS);
+        long rateWaitNanos = limit.bucket == null ? 0 : limit.bucket.reserve(maxWaitNanos);
+        if (rateWaitNanos < 0) {
+            limit.rejectedCount.increment();
+            return CompletableFuture.failedFuture(new RTIOException("Rate limit [" + limit.key + "] exceeded"));
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable acquire = () -> limit.acquireSlot(maxWaitNanos < Long.MAX_VALUE ? startNanos + maxWaitNanos : Long.MAX_VALUE)
+                .whenComplete((v, e) -> {
+                    if (e != null) {
+                        limit.rejectedCount.increment();
+                        result.completeExceptionally(e);
+                        return;
+                    }
+                    if (result.isDone()) {
+                        limit.releaseSlot();
+                        return;
+                    }
+                    limit.recordWait(System.nanoTime() - startNanos);
+                    CompletableFuture<T> actual;
+                    try {
+                        actual = call.get();
+                    } catch (RuntimeException ex) {
+                        limit.releaseSlot();
+                        result.completeExceptionally(ex);
+                        return;
+                    }
+                    result.whenComplete((r, ex) -> {
+                        if (result.isCancelled()) {
+                            actual.cancel(true);
+                        }
+                    });
+                    actual.whenComplete((r, ex) -> {
+                        limit.releaseSlot();
+                        if (ex != null) {
+                            result.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+                        } else {
+                            result.complete(r);
+                        }
+                    });
+                });
+        if (rateWaitNanos == 0) {
+            acquire.run();
+        } else {
+            CompletableFuture.delayedExecutor(rateWaitNanos, TimeUnit.NANOSECONDS).execute(acquire);
+        }
+        return result;
+    }
+
+    private Limit match(URI uri) {
+        Limit matched = null;
+        String url = null;
+        for (Limit limit : limits) {
+            boolean matches;
+            if (limit.urlPrefix) {
+                if (url == null) {
+                    url = uri.toString();
+                }
+                matches = url.startsWith(limit.key);
+            } else {
+                matches = limit.key.equalsIgnoreCase(uri.getHost()) || limit.key.equalsIgnoreCase(uri.getHost() + ":" + uri.getPort());
+            }
+            if (matches && (matched == null || limit.key.length() > matched.key.length())) {
+                matched = limit;
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * 限制及其统计.
+     */
+    public static final class Limit {
+
+        private final String key;
+        private final boolean urlPrefix;
+        private final TokenBucket bucket;
+        private final int maxConcurrency;
+        private final long maxWaitMS;
+        private final AtomicInteger availableSlots;
+        private final Queue<CompletableFuture<Void>> waiters = new ConcurrentLinkedQueue<>();
+        private final LongAdder acquiredCount = new LongAdder();
+        private final LongAdder waitedCount = new LongAdder();
+        private final LongAdder totalWaitNanos = new LongAdder();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        private final LongAdder rejectedCount = new LongAdder();
+
+        private Limit(String key, double permitsPerSecond, int burst, int maxConcurrency, long maxWaitMS) {
+            this.key = key;
+            this.urlPrefix = key.contains("://");
+            this.bucket = permitsPerSecond > 0 ? new TokenBucket(Math.max(1, burst), permitsPerSecond) : null;
+            this.maxConcurrency = maxConcurrency;
+            this.maxWaitMS = maxWaitMS;
+            this.availableSlots = new AtomicInteger(maxConcurrency);
+        }
+
+        /**
+         * Gets key.
+         *
+         * @return host或url前缀
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * 获取通过限制的请求数.
+         *
+         * @return 请求数
+         */
+        public long getAcquiredCount() {
+            return acquiredCount.sum();
+        }
+
+        /**
+         * 获取需要等待的请求数.
+         *
+         * @return 请求数
+         */
+        public long getWaitedCount() {
+            return waitedCount.sum();
+        }
+
+        /**
+         * 获取所有请求的总等待时间.
+         *
+         * @return 总等待时间（毫秒）
+         */
+        public long getTotalWaitMS() {
+            return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.sum());
+        }
+
+        /**
+         * 获取单个请求的最大等待时间.
+         *
+         * @return 最大等待时间（毫秒）
+         */
+        public long getMaxWaitMS() {
+            return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+        }
+
+        /**
+         * 获取被拒绝（不排队或等待超时）的请求数.
+         *
+         * @return 请求数
+         */
+        public long getRejectedCount() {
+            return rejectedCount.sum();
+        }
+
+        /**
+         * 获取进行中的请求数.
+         *
+         * @return 请求数，未限制并发数时为-1
+         */
+        public int getInFlight() {
+            return maxConcurrency > 0 ? maxConcurrency - availableSlots.get() : -1;
+        }
+
+        private void recordWait(long waitNanos) {
+            acquiredCount.increment();
+            // 小于1ms视为未等待
+            if (waitNanos >= 1_000_000) {
+                waitedCount.increment();
+                totalWaitNanos.add(waitNanos);
+                maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+            }
+        }
+
+        private boolean tryAcquireSlot() {
+            while (true) {
+                int available = availableSlots.get();
+                if (available <= 0) {
+                    return false;
+                }
+                if (availableSlots.compareAndSet(available, available - 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private CompletableFuture<Void> acquireSlot(long deadlineNanos) {
+            if (maxConcurrency <= 0 || tryAcquireSlot()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            long waitNanos = deadlineNanos == Long.MAX_VALUE ? Long.MAX_VALUE : deadlineNanos - System.nanoTime();
+            if (waitNanos <= 0) {
+                return CompletableFuture.failedFuture(new RTIOException("Concurrency limit [" + key + "] exceeded"));
+            }
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+            // 入队前可能已有许可释放，再次尝试获取，避免错过唤醒
+            if (tryAcquireSlot() && !waiter.complete(null)) {
+                releaseSlot();
+            }
+            if (waitNanos != Long.MAX_VALUE && !waiter.isDone()) {
+                CompletableFuture.delayedExecutor(waitNanos, TimeUnit.NANOSECONDS).execute(() -> {
+                    if (waiter.completeExceptionally(new RTIOException("Concurrency limit [" + key + "] wait timeout"))) {
+                        waiters.remove(waiter);
+                    }
+                });
+            }
+            return waiter;
+        }
+
+        private void releaseSlot() {
+            if (maxConcurrency <= 0) {
+                return;
+            }
+            CompletableFuture<Void> waiter;
+            while ((waiter = waiters.poll()) != null) {
+                // 直接将许可交给等待者
+                if (waiter.complete(null)) {
+                    return;
+                }
+            }
+            availableSlots.incrementAndGet();
+            if (!waiters.isEmpty() && tryAcquireSlot()) {
+                releaseSlot();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,186 @@
+package com.ecfront.dew.common.http;
+
+import com.ecfront.dew.common.HttpHelper;
+import com.ecfront.dew.common.exception.RTIOException;
+
+import java.net.http.HttpTimeoutException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量请求结果.
+ * <p>
+ * 由 {@link HttpHelper#requestAll(List, int, int)} 创建，创建后请求即在后台并发执行，
+ * 可通过 {@link #futures()} 按请求顺序获取结果，或通过 {@link #completionOrder()} 按完成顺序获取结果
+ *
+ * @author gudaoxuri
+ */
+public final class RequestBatch {
+
+    private final HttpHelper httpHelper;
+    private final List<RequestSpec> specs;
+    private final List<CompletableFuture<HttpHelper.ResponseWrap>> results;
+    private final Map<Integer, CompletableFuture<HttpHelper.ResponseWrap>> inFlight = new ConcurrentHashMap<>();
+    private final BlockingQueue<Integer> completed = new LinkedBlockingQueue<>();
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private final AtomicInteger pendingSlots = new AtomicInteger();
+    private volatile boolean expired;
+
+    private RequestBatch(HttpHelper httpHelper, List<RequestSpec> specs) {
+        this.httpHelper = httpHelper;
+        this.specs = new ArrayList<>(specs);
+        this.results = new ArrayList<>(specs.size());
+        for (int i = 0; i < specs.size(); i++) {
+            int index = i;
+            CompletableFuture<HttpHelper.ResponseWrap> result = new CompletableFuture<>();
+            result.whenComplete((r, e) -> completed.add(index));
+            results.add(result);
+        }
+    }
+
+    /**
+     * 开始批量请求.
+     *
+     * @param httpHelper       使用的HTTP操作实例
+     * @param specs            请求列表
+     * @param concurrencyLimit 最大并发数
+     * @param deadlineMS       整体截止时间，-1表示不限制
+     * @return 批量请求结果
+     */
+    public static RequestBatch start(HttpHelper httpHelper, List<RequestSpec> specs, int concurrencyLimit, int deadlineMS) {
+        if (concurrencyLimit <= 0) {
+            throw new IllegalArgumentException("The concurrency limit must be greater than 0");
+        }
+        RequestBatch batch = new RequestBatch(httpHelper, specs);
+        if (deadlineMS > 0) {
+            CompletableFuture.delayedExecutor(deadlineMS, TimeUnit.MILLISECONDS).execute(() -> batch.expire(deadlineMS));
+        }
+        for (int i = 0; i < Math.min(concurrencyLimit, specs.size()); i++) {
+            batch.next();
+        }
+        return batch;
+    }
+
+    // 补充一个并发名额的请求，同一时刻只有一个线程在循环中发起请求，
+    // 其它线程（包括同步完成的请求的回调）只增加待补充的名额，避免请求同步完成时递归调用导致栈溢出
+    private void next() {
+        if (pendingSlots.getAndIncrement() > 0) {
+            return;
+        }
+        do {
+            launchNext();
+        } while (pendingSlots.decrementAndGet() > 0);
+    }
+
+    // 跳过已过期或已结束的请求，直到发起一个请求或没有剩余的请求
+    private void launchNext() {
+        while (true) {
+            int index = nextIndex.getAndIncrement();
+            if (index >= specs.size()) {
+                return;
+            }
+            CompletableFuture<HttpHelper.ResponseWrap> result = results.get(index);
+            if (expired || result.isDone()) {
+                continue;
+            }
+            RequestSpec spec = specs.get(index);
+            CompletableFuture<HttpHelper.ResponseWrap> call = httpHelper.requestAsync(spec.getMethod(), spec.getUrl(), spec.getBody(),
+                    spec.getHeader(), spec.getContentType(), spec.getCharset(), spec.getTimeoutMS());
+            inFlight.put(index, call);
+            // 发起期间过期时expire可能已遍历过inFlight，需在登记后再次检查
+            if (expired) {
+                call.cancel(true);
+            }
+            // 取消结果时同时取消请求，请求结束后释放并发名额
+            result.whenComplete((r, e) -> {
+                if (result.isCancelled()) {
+                    call.cancel(true);
+                }
+            });
+            call.whenComplete((r, e) -> {
+                inFlight.remove(index);
+                if (e != null) {
+                    result.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                } else {
+                    result.complete(r);
+                }
+                next();
+            });
+            return;
+        }
+    }
+
+    private void expire(int deadlineMS) {
+        expired = true;
+        for (CompletableFuture<HttpHelper.ResponseWrap> result : results) {
+            if (!result.isDone()) {
+                result.completeExceptionally(new RTIOException(new HttpTimeoutException("Batch deadline " + deadlineMS + "ms exceeded")));
+            }
+        }
+        inFlight.values().forEach(call -> call.cancel(true));
+    }
+
+    /**
+     * 按请求顺序获取各请求的结果.
+     * <p>
+     * 失败、超时的请求以 {@link RTIOException} 结束，取消某个结果时同时取消对应的请求并释放其并发名额
+     *
+     * @return 各请求的结果，与请求列表的顺序一致
+     */
+    public List<CompletableFuture<HttpHelper.ResponseWrap>> futures() {
+        return Collections.unmodifiableList(results);
+    }
+
+    /**
+     * 等待所有请求完成并按请求顺序返回结果.
+     *
+     * @return 各请求的结果，与请求列表的顺序一致，失败或超时的请求对应的结果为null
+     */
+    public List<HttpHelper.ResponseWrap> join() {
+        List<HttpHelper.ResponseWrap> responses = new ArrayList<>(results.size());
+        for (CompletableFuture<HttpHelper.ResponseWrap> result : results) {
+            try {
+                responses.add(result.join());
+            } catch (CompletionException | CancellationException e) {
+                responses.add(null);
+            }
+        }
+        return responses;
+    }
+
+    /**
+     * 按完成顺序获取请求的序号.
+     * <p>
+     * 迭代时会阻塞直到下一个请求完成，通过序号从 {@link #futures()} 中获取对应的结果，仅可迭代一次
+     *
+     * @return 按完成顺序排列的请求序号
+     */
+    public Iterable<Integer> completionOrder() {
+        return () -> new Iterator<>() {
+
+            private int taken;
+
+            @Override
+            public boolean hasNext() {
+                return taken < results.size();
+            }
+
+            @Override
+            public Integer next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    Integer index = completed.take();
+                    taken++;
+                    return index;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RTIOException(e);
+                }
+            }
+        };
+    }
+
+}
@@ -0,0 +1,114 @@
+package com.ecfront.dew.common.http;
+
+import com.ecfront.dew.common.HttpHelper;
+
+import java.net.http.HttpRequest;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 请求合并（Singleflight）.
+ * <p>
+ * 同一时刻方法、url及请求头都相同的幂等请求（GET、HEAD、OPTIONS）只发起一次，
+ * 其它调用方等待并共享同一个 {@link HttpHelper.ResponseWrap} 结果，用于避免热点数据失效时大量相同请求同时击穿到后端。
+ * <p>
+ * 请求完成后立即移除，之后的请求会重新发起。单个调用方取消返回的Future不会影响其它调用方及进行中的请求。
+ *
+ * @author gudaoxuri
+ */
+public class RequestCoalescer {
+
+    private static final Set<String> IDEMPOTENT_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    private final Map<String, CompletableFuture<HttpHelper.ResponseWrap>> inFlight = new ConcurrentHashMap<>();
+    // 小写的请求头名称，修改时整体替换，计算key时无需加锁
+    private volatile Set<String> ignoredHeaders = Set.of();
+    private final LongAdder dedupCount = new LongAdder();
+
+    /**
+     * 设置计算请求是否相同时忽略的请求头.
+     * <p>
+     * 默认所有请求头都参与比较，可忽略如 {@code X-Request-Id} 等每次请求都不同但不影响响应的请求头
+     *
+     * @param headerNames 忽略的请求头名称
+     * @return the request coalescer
+     */
+    public synchronized RequestCoalescer ignoreHeaders(String... headerNames) {
+        Set<String> headers = new HashSet<>(ignoredHeaders);
+        for (String headerName : headerNames) {
+            headers.add(headerName.toLowerCase());
+        }
+        ignoredHeaders = Set.copyOf(headers);
+        return this;
+    }
+
+    /**
+     * 合并执行请求.
+     *
+     * @param request  请求
+     * @param exchange 实际发起请求的方法
+     * @return 请求结果 ，包含扩展信息
+     */
+    public CompletableFuture<HttpHelper.ResponseWrap> execute(HttpRequest request,
+                                                              Function<HttpRequest, CompletableFuture<HttpHelper.ResponseWrap>> exchange) {
+        if (!IDEMPOTENT_METHODS.contains(request.method())) {
+            return exchange.apply(request);
+        }
+        String key = key(request);
+        CompletableFuture<HttpHelper.ResponseWrap> shared = new CompletableFuture<>();
+        CompletableFuture<HttpHelper.ResponseWrap> existing = inFlight.putIfAbsent(key, shared);
+        if (existing != null) {
+            dedupCount.increment();
+            return existing.thenApply(Function.identity());
+        }
+        try {
+            exchange.apply(request).whenComplete((responseWrap, e) -> {
+                inFlight.remove(key, shared);
+                if (e != null) {
+                    shared.completeExceptionally(e);
+                } else {
+                    shared.complete(responseWrap);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, shared);
+            shared.completeExceptionally(e);
+        }
+        return shared.thenApply(Function.identity());
+    }
+
+    /**
+     * 获取被合并（未实际发起）的请求数.
+     *
+     * @return 被合并的请求数
+     */
+    public long getDedupCount() {
+        return dedupCount.sum();
+    }
+
+    /**
+     * 获取当前进行中的合并请求数.
+     *
+     * @return 进行中的请求数
+     */
+    public int inFlightSize() {
+        return inFlight.size();
+    }
+
+    private String key(HttpRequest request) {
+        StringBuilder key = new StringBuilder(request.method()).append(' ').append(request.uri());
+        // HttpHeaders.map() 已按名称排序且忽略大小写
+        Set<String> ignored = ignoredHeaders;
+        request.headers().map().forEach((name, values) -> {
+            String lowerCaseName = name.toLowerCase();
+            if (!ignored.contains(lowerCaseName)) {
+                key.append('\n').append(lowerCaseName).append(':').append(String.join(",", values));
+            }
+        });
+        return key.toString();
+    }
+
+}
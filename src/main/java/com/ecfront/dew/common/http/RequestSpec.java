@@ -0,0 +1,195 @@
+package com.ecfront.dew.common.http;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 请求描述.
+ * <p>
+ * 用于批量请求等需要预先描述请求的场景，各属性的含义同 {@link com.ecfront.dew.common.HttpHelper#request}
+ *
+ * @author gudaoxuri
+ */
+public class RequestSpec {
+
+    private final String method;
+    private final String url;
+    private Object body;
+    private Map<String, String> header;
+    private String contentType;
+    private String charset;
+    private int timeoutMS = -1;
+
+    private RequestSpec(String method, String url) {
+        this.method = method;
+        this.url = url;
+    }
+
+    /**
+     * 创建请求描述.
+     *
+     * @param method http方法
+     * @param url    请求url
+     * @return the request spec
+     */
+    public static RequestSpec of(String method, String url) {
+        return new RequestSpec(method, url);
+    }
+
+    /**
+     * 创建Get请求描述.
+     *
+     * @param url 请求url
+     * @return the request spec
+     */
+    public static RequestSpec get(String url) {
+        return new RequestSpec("GET", url);
+    }
+
+    /**
+     * 创建Post请求描述.
+     *
+     * @param url  请求url
+     * @param body 请求体
+     * @return the request spec
+     */
+    public static RequestSpec post(String url, Object body) {
+        return new RequestSpec("POST", url).body(body);
+    }
+
+    /**
+     * 设置请求体.
+     *
+     * @param body 请求体
+     * @return the request spec
+     */
+    public RequestSpec body(Object body) {
+        this.body = body;
+        return this;
+    }
+
+    /**
+     * 设置请求头.
+     *
+     * @param header 请求头
+     * @return the request spec
+     */
+    public RequestSpec header(Map<String, String> header) {
+        this.header = header;
+        return this;
+    }
+
+    /**
+     * 添加请求头.
+     *
+     * @param name  请求头名称
+     * @param value 请求头值
+     * @return the request spec
+     */
+    public RequestSpec header(String name, String value) {
+        if (header == null) {
+            header = new HashMap<>();
+        }
+        header.put(name, value);
+        return this;
+    }
+
+    /**
+     * 设置content-type.
+     *
+     * @param contentType content-type
+     * @return the request spec
+     */
+    public RequestSpec contentType(String contentType) {
+        this.contentType = contentType;
+        return this;
+    }
+
+    /**
+     * 设置请求内容编码.
+     *
+     * @param charset 请求内容编码
+     * @return the request spec
+     */
+    public RequestSpec charset(String charset) {
+        this.charset = charset;
+        return this;
+    }
+
+    /**
+     * 设置超时时间.
+     *
+     * @param timeoutMS 超时时间
+     * @return the request spec
+     */
+    public RequestSpec timeoutMS(int timeoutMS) {
+        this.timeoutMS = timeoutMS;
+        return this;
+    }
+
+    /**
+     * Gets method.
+     *
+     * @return the method
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Gets url.
+     *
+     * @return the url
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Gets body.
+     *
+     * @return the body
+     */
+    public Object getBody() {
+        return body;
+    }
+
+    /**
+     * Gets header.
+     * <p>
+     * 返回副本，避免请求处理过程中修改原始的请求头
+     *
+     * @return the header
+     */
+    public Map<String, String> getHeader() {
+        return header == null ? null : new HashMap<>(header);
+    }
+
+    /**
+     * Gets content type.
+     *
+     * @return the content type
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Gets charset.
+     *
+     * @return the charset
+     */
+    public String getCharset() {
+        return charset;
+    }
+
+    /**
+     * Gets timeout ms.
+     *
+     * @return the timeout ms
+     */
+    public int getTimeoutMS() {
+        return timeoutMS;
+    }
+
+}
@@ -0,0 +1,574 @@
+package com.ecfront.dew.common.http;
+
+import com.ecfront.dew.common.$;
+import com.ecfront.dew.common.HttpHelper;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * HTTP响应缓存.
+ * <p>
+ * 内存中使用按条目数及占用字节数限制的LRU缓存，可选地将淘汰的条目转存到磁盘目录中，
+ * 磁盘缓存按占用字节数限制，超出时删除最早写入的缓存文件。
+ * <p>
+ * 缓存条目只保存请求中 {@code Authorization} 及 {@code Vary} 指定的请求头的SHA-256摘要，不会将凭证明文写入磁盘。
+ * <p>
+ * 缓存规则：
+ * <ul>
+ * <li>只缓存状态码为200的Get请求，响应包含 {@code Cache-Control: no-store} 或 {@code Vary: *} 时不缓存</li>
+ * <li>在 {@code Cache-Control: max-age} 内直接返回缓存结果</li>
+ * <li>过期（或 {@code no-cache}）后携带 {@code If-None-Match} / {@code If-Modified-Since} 重新验证，返回304时复用缓存结果，
+ * 并以304响应中的 {@code ETag} 、 {@code Last-Modified} 及 {@code Cache-Control} 更新缓存条目，304响应包含 {@code no-store} 时删除缓存条目</li>
+ * <li>请求包含 {@code Cache-Control: no-cache} 或 {@code max-age=0} 时即使缓存未过期也重新验证</li>
+ * <li>请求本身已是条件请求或包含 {@code Cache-Control: no-store} 时不使用缓存</li>
+ * </ul>
+ *
+ * @author gudaoxuri
+ */
+public class ResponseCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResponseCache.class);
+
+    private final int maxEntries;
+    private final Path diskDir;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // 磁盘缓存文件及其大小，按写入顺序排列
+    private final Map<Path, Long> diskFiles = new LinkedHashMap<>();
+    private long maxMemoryBytes = 64 * 1024 * 1024;
+    private long maxDiskBytes = 256 * 1024 * 1024;
+    private long memoryBytes;
+    private long diskBytes;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder revalidatedCount = new LongAdder();
+
+    /**
+     * Instantiates a new Response cache.
+     *
+     * @param maxEntries 内存中最多缓存的条目数
+     */
+    public ResponseCache(int maxEntries) {
+        this(maxEntries, null);
+    }
+
+    /**
+     * Instantiates a new Response cache.
+     *
+     * @param maxEntries 内存中最多缓存的条目数
+     * @param diskDir    磁盘缓存目录，为null时不使用磁盘缓存
+     */
+    public ResponseCache(int maxEntries, Path diskDir) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("The max entries must be greater than 0");
+        }
+        this.maxEntries = maxEntries;
+        this.diskDir = diskDir;
+        if (diskDir != null) {
+            try {
+                Files.createDirectories(diskDir);
+                loadDiskFiles();
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Can't create cache directory " + diskDir, e);
+            }
+        }
+    }
+
+    /**
+     * 设置内存缓存最多占用的字节数（按响应体及响应头的字符数估算），默认为64MB.
+     * <p>
+     * 超出时按LRU淘汰，单个超出此大小的响应不缓存在内存中
+     *
+     * @param maxMemoryBytes 最大字节数
+     * @return the response cache
+     */
+    public ResponseCache maxMemoryBytes(long maxMemoryBytes) {
+        if (maxMemoryBytes <= 0) {
+            throw new IllegalArgumentException("The max memory bytes must be greater than 0");
+        }
+        this.maxMemoryBytes = maxMemoryBytes;
+        return this;
+    }
+
+    /**
+     * 设置磁盘缓存最多占用的字节数，默认为256MB.
+     * <p>
+     * 超出时删除最早写入的缓存文件
+     *
+     * @param maxDiskBytes 最大字节数
+     * @return the response cache
+     */
+    public ResponseCache maxDiskBytes(long maxDiskBytes) {
+        if (maxDiskBytes <= 0) {
+            throw new IllegalArgumentException("The max disk bytes must be greater than 0");
+        }
+        this.maxDiskBytes = maxDiskBytes;
+        return this;
+    }
+
+    /**
+     * 使用缓存执行请求.
+     *
+     * @param request  请求
+     * @param exchange 实际发起请求的方法
+     * @return 请求结果 ，包含扩展信息
+     */
+    public CompletableFuture<HttpHelper.ResponseWrap> execute(HttpRequest request,
+                                                              Function<HttpRequest, CompletableFuture<HttpHelper.ResponseWrap>> exchange) {
+        CacheControl requestCacheControl = CacheControl.parse(request.headers().map());
+        if (request.headers().firstValue("If-None-Match").isPresent()
+                || request.headers().firstValue("If-Modified-Since").isPresent()
+                || requestCacheControl.noStore) {
+            return exchange.apply(request);
+        }
+        String key = request.uri().toString();
+        Entry entry = get(key);
+        if (entry != null && !entry.matches(request)) {
+            entry = null;
+        }
+        long now = System.currentTimeMillis();
+        if (entry != null && !requestCacheControl.noCache && requestCacheControl.maxAgeMS != 0 && entry.isFresh(now)) {
+            hitCount.increment();
+            return CompletableFuture.completedFuture(entry.toResponseWrap());
+        }
+        HttpRequest actualRequest = request;
+        if (entry != null && (entry.etag != null || entry.lastModified != null)) {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(request, (name, value) -> true);
+            if (entry.etag != null) {
+                builder.setHeader("If-None-Match", entry.etag);
+            }
+            if (entry.lastModified != null) {
+                builder.setHeader("If-Modified-Since", entry.lastModified);
+            }
+            actualRequest = builder.build();
+        }
+        Entry cachedEntry = entry;
+        return exchange.apply(actualRequest).thenApply(responseWrap -> {
+            if (responseWrap.statusCode == 304 && cachedEntry != null) {
+                revalidatedCount.increment();
+                Entry revalidatedEntry = cachedEntry.revalidated(responseWrap.head);
+                if (revalidatedEntry == null) {
+                    remove(key);
+                    return cachedEntry.toResponseWrap();
+                }
+                put(revalidatedEntry);
+                return revalidatedEntry.toResponseWrap();
+            }
+            missCount.increment();
+            Entry newEntry = Entry.of(key, request, responseWrap);
+            if (newEntry != null) {
+                put(newEntry);
+            } else if (cachedEntry != null) {
+                remove(key);
+            }
+            return responseWrap;
+        });
+    }
+
+    /**
+     * 获取直接命中缓存（未发起请求）的次数.
+     *
+     * @return 命中次数
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * 获取重新验证后复用缓存（服务端返回304）的次数.
+     *
+     * @return 重新验证次数
+     */
+    public long getRevalidatedCount() {
+        return revalidatedCount.sum();
+    }
+
+    /**
+     * 获取未命中缓存的次数.
+     *
+     * @return 未命中次数
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 获取内存中缓存的条目数.
+     *
+     * @return 条目数
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 获取内存缓存估算占用的字节数.
+     *
+     * @return 字节数
+     */
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    /**
+     * 获取磁盘缓存占用的字节数.
+     *
+     * @return 字节数
+     */
+    public long getDiskBytes() {
+        synchronized (diskFiles) {
+            return diskBytes;
+        }
+    }
+
+    /**
+     * 清空缓存（包含磁盘缓存）.
+     */
+    public void clear() {
+        synchronized (this) {
+            entries.clear();
+            memoryBytes = 0;
+        }
+        if (diskDir != null) {
+            synchronized (diskFiles) {
+                diskFiles.clear();
+                diskBytes = 0;
+            }
+            try (Stream<Path> files = Files.list(diskDir)) {
+                files.filter(file -> file.getFileName().toString().endsWith(".json")).forEach(file -> {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        LOGGER.warn("Delete cache file " + file + " error.", e);
+                    }
+                });
+            } catch (IOException e) {
+                LOGGER.warn("Clear cache directory " + diskDir + " error.", e);
+            }
+        }
+    }
+
+    private Entry get(String key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry != null || diskDir == null) {
+            return entry;
+        }
+        Path file = diskFile(key);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            entry = Entry.fromJson($.json.toJson(Files.readString(file)));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Read cache file " + file + " error.", e);
+            entry = null;
+        }
+        deleteDiskFile(file);
+        if (entry != null) {
+            put(entry);
+        }
+        return entry;
+    }
+
+    private void put(Entry entry) {
+        if (entry.estimatedBytes > maxMemoryBytes) {
+            remove(entry.key);
+            if (diskDir != null) {
+                spill(entry);
+            }
+            return;
+        }
+        List<Entry> spilled = new ArrayList<>();
+        synchronized (this) {
+            Entry previous = entries.put(entry.key, entry);
+            if (previous != null) {
+                memoryBytes -= previous.estimatedBytes;
+            }
+            memoryBytes += entry.estimatedBytes;
+            // 按访问顺序从最久未使用的条目开始淘汰
+            Iterator<Entry> iterator = entries.values().iterator();
+            while ((entries.size() > maxEntries || memoryBytes > maxMemoryBytes) && iterator.hasNext()) {
+                Entry eldest = iterator.next();
+                iterator.remove();
+                memoryBytes -= eldest.estimatedBytes;
+                spilled.add(eldest);
+            }
+        }
+        if (diskDir != null) {
+            spilled.forEach(this::spill);
+        }
+    }
+
+    private void remove(String key) {
+        synchronized (this) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                memoryBytes -= entry.estimatedBytes;
+            }
+        }
+    }
+
+    private void spill(Entry entry) {
+        Path file = diskFile(entry.key);
+        byte[] content = $.json.toJsonString(entry.toMap()).getBytes(StandardCharsets.UTF_8);
+        if (content.length > maxDiskBytes) {
+            return;
+        }
+        try {
+            Files.write(file, content);
+        } catch (IOException e) {
+            LOGGER.warn("Write cache file for " + entry.key + " error.", e);
+            return;
+        }
+        List<Path> expired = new ArrayList<>();
+        synchronized (diskFiles) {
+            Long previousSize = diskFiles.remove(file);
+            if (previousSize != null) {
+                diskBytes -= previousSize;
+            }
+            diskFiles.put(file, (long) content.length);
+            diskBytes += content.length;
+            Iterator<Map.Entry<Path, Long>> iterator = diskFiles.entrySet().iterator();
+            while (diskBytes > maxDiskBytes && iterator.hasNext()) {
+                Map.Entry<Path, Long> eldest = iterator.next();
+                iterator.remove();
+                diskBytes -= eldest.getValue();
+                expired.add(eldest.getKey());
+            }
+        }
+        for (Path expiredFile : expired) {
+            try {
+                Files.deleteIfExists(expiredFile);
+            } catch (IOException e) {
+                LOGGER.warn("Delete cache file " + expiredFile + " error.", e);
+            }
+        }
+    }
+
+    private void deleteDiskFile(Path file) {
+        synchronized (diskFiles) {
+            Long size = diskFiles.remove(file);
+            if (size != null) {
+                diskBytes -= size;
+            }
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.warn("Delete cache file " + file + " error.", e);
+        }
+    }
+
+    // 登记目录中已有的缓存文件，按修改时间从早到晚排列
+    private void loadDiskFiles() throws IOException {
+        try (Stream<Path> files = Files.list(diskDir)) {
+            files.filter(file -> file.getFileName().toString().endsWith(".json"))
+                    .map(file -> {
+                        try {
+                            return Map.entry(file, Files.getLastModifiedTime(file).toMillis());
+                        } catch (IOException e) {
+                            return Map.entry(file, 0L);
+                        }
+                    })
+                    .sorted(Map.Entry.comparingByValue())
+                    .forEach(file -> {
+                        try {
+                            long size = Files.size(file.getKey());
+                            diskFiles.put(file.getKey(), size);
+                            diskBytes += size;
+                        } catch (IOException e) {
+                            LOGGER.warn("Read cache file " + file.getKey() + " error.", e);
+                        }
+                    });
+        }
+    }
+
+    private Path diskFile(String key) {
+        return diskDir.resolve($.security.digest.digest(key, "SHA-256") + ".json");
+    }
+
+    /**
+     * 解析后的Cache-Control.
+     */
+    private static final class CacheControl {
+
+        private boolean noStore;
+        private boolean noCache;
+        private long maxAgeMS = -1;
+
+        private static CacheControl parse(Map<String, List<String>> head) {
+            CacheControl cacheControl = new CacheControl();
+            for (String value : head.getOrDefault("Cache-Control", Collections.emptyList())) {
+                for (String directive : value.split(",")) {
+                    directive = directive.trim().toLowerCase();
+                    if (directive.equals("no-store")) {
+                        cacheControl.noStore = true;
+                    } else if (directive.equals("no-cache")) {
+                        cacheControl.noCache = true;
+                    } else if (directive.startsWith("max-age=")) {
+                        try {
+                            cacheControl.maxAgeMS = Long.parseLong(directive.substring("max-age=".length()).replace("\"", "")) * 1000;
+                        } catch (NumberFormatException ignore) {
+                            cacheControl.maxAgeMS = 0;
+                        }
+                    }
+                }
+            }
+            return cacheControl;
+        }
+    }
+
+    /**
+     * 缓存条目，创建后不再修改，重新验证时以新的条目整体替换.
+     */
+    private static final class Entry {
+
+        // 304响应中需要合并到缓存条目的响应头
+        private static final List<String> REVALIDATED_HEADERS = List.of("ETag", "Last-Modified", "Cache-Control");
+
+        private final String key;
+        private final int statusCode;
+        private final String result;
+        private final Map<String, List<String>> head;
+        private final Map<String, String> vary;
+        private final String etag;
+        private final String lastModified;
+        private final long storedAt;
+        private final long maxAgeMS;
+        private final long estimatedBytes;
+
+        private Entry(String key, int statusCode, String result, Map<String, List<String>> head, Map<String, String> vary,
+                      long storedAt, long maxAgeMS) {
+            this.key = key;
+            this.statusCode = statusCode;
+            this.result = result;
+            this.head = head;
+            this.vary = vary;
+            this.etag = firstHeader(head, "ETag");
+            this.lastModified = firstHeader(head, "Last-Modified");
+            this.storedAt = storedAt;
+            this.maxAgeMS = maxAgeMS;
+            this.estimatedBytes = estimate();
+        }
+
+        private static Entry of(String key, HttpRequest request, HttpHelper.ResponseWrap responseWrap) {
+            if (responseWrap.statusCode != 200) {
+                return null;
+            }
+            CacheControl cacheControl = CacheControl.parse(responseWrap.head);
+            List<String> varyNames = new ArrayList<>();
+            varyNames.add("Authorization");
+            for (String value : responseWrap.head.getOrDefault("Vary", Collections.emptyList())) {
+                for (String name : value.split(",")) {
+                    varyNames.add(name.trim());
+                }
+            }
+            if (cacheControl.noStore || varyNames.contains("*")) {
+                return null;
+            }
+            long maxAgeMS = cacheControl.noCache ? 0 : Math.max(cacheControl.maxAgeMS, 0);
+            if (maxAgeMS == 0 && firstHeader(responseWrap.head, "ETag") == null && firstHeader(responseWrap.head, "Last-Modified") == null) {
+                return null;
+            }
+            Map<String, String> vary = new HashMap<>();
+            for (String name : varyNames) {
+                vary.put(name, varyDigest(request, name));
+            }
+            return new Entry(key, responseWrap.statusCode, responseWrap.result, responseWrap.head, vary, System.currentTimeMillis(), maxAgeMS);
+        }
+
+        // 合并304响应的响应头，生成新的条目，304响应包含no-store时返回null
+        private Entry revalidated(Map<String, List<String>> notModifiedHead) {
+            CacheControl cacheControl = CacheControl.parse(notModifiedHead);
+            if (cacheControl.noStore) {
+                return null;
+            }
+            Map<String, List<String>> mergedHead = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            mergedHead.putAll(head);
+            for (String name : REVALIDATED_HEADERS) {
+                List<String> values = notModifiedHead.get(name);
+                if (values != null && !values.isEmpty()) {
+                    mergedHead.put(name, values);
+                }
+            }
+            long newMaxAgeMS = cacheControl.noCache ? 0 : cacheControl.maxAgeMS >= 0 ? cacheControl.maxAgeMS : maxAgeMS;
+            return new Entry(key, statusCode, result, Collections.unmodifiableMap(mergedHead), vary, System.currentTimeMillis(), newMaxAgeMS);
+        }
+
+        private static Entry fromJson(JsonNode json) {
+            Map<String, List<String>> head = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            json.get("head").fields().forEachRemaining(item -> {
+                List<String> values = new ArrayList<>();
+                item.getValue().forEach(value -> values.add(value.asText()));
+                head.put(item.getKey(), values);
+            });
+            return new Entry(json.get("key").asText(), json.get("statusCode").asInt(), json.get("result").asText(), head,
+                    $.json.toMap(json.get("vary"), String.class, String.class), json.get("storedAt").asLong(), json.get("maxAgeMS").asLong());
+        }
+
+        // 请求头的值只保存摘要
+        private static String varyDigest(HttpRequest request, String name) {
+            return $.security.digest.digest(request.headers().firstValue(name).orElse(""), "SHA-256");
+        }
+
+        // 按字符数估算占用的内存（每个字符2字节）
+        private long estimate() {
+            long chars = key.length() + (result == null ? 0 : result.length());
+            for (Map.Entry<String, List<String>> item : head.entrySet()) {
+                chars += item.getKey().length();
+                for (String value : item.getValue()) {
+                    chars += value.length();
+                }
+            }
+            return chars * 2 + vary.size() * 128L;
+        }
+
+        private static String firstHeader(Map<String, List<String>> head, String name) {
+            List<String> values = head.get(name);
+            return values == null || values.isEmpty() ? null : values.get(0);
+        }
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("key", key);
+            map.put("statusCode", statusCode);
+            map.put("result", result);
+            map.put("head", head);
+            map.put("vary", vary);
+            map.put("storedAt", storedAt);
+            map.put("maxAgeMS", maxAgeMS);
+            return map;
+        }
+
+        private boolean matches(HttpRequest request) {
+            return vary.entrySet().stream().allMatch(item -> varyDigest(request, item.getKey()).equals(item.getValue()));
+        }
+
+        private boolean isFresh(long now) {
+            return now - storedAt < maxAgeMS;
+        }
+
+        private HttpHelper.ResponseWrap toResponseWrap() {
+            HttpHelper.ResponseWrap responseWrap = new HttpHelper.ResponseWrap();
+            responseWrap.statusCode = statusCode;
+            responseWrap.result = result;
+            responseWrap.head = head;
+            return responseWrap;
+        }
+    }
+
+}
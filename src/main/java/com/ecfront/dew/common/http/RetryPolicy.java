@@ -0,0 +1,282 @@
+package com.ecfront.dew.common.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * 请求重试策略.
+ * <p>
+ * 请求出现可重试的异常或返回可重试的状态码时，按指数退避（带随机抖动）的间隔重试，
+ * 每次重试需从对应host的令牌桶（重试预算）中获取令牌，预算耗尽时不再重试，避免故障期间重试放大后端压力。
+ * <p>
+ * 默认配置：最多执行3次，重试GET、HEAD、OPTIONS、PUT、DELETE请求，
+ * 重试状态码为429、502、503、504，重试异常为 {@link IOException} （包含连接重置及超时），
+ * 退避基准间隔为100ms，最大间隔为5s，每个host的重试预算为10个令牌，每秒补充1个令牌。
+ * <p>
+ * 请求体不可重放的请求（请求体为InputStream，或经 {@link #nonReplayable(HttpRequest.BodyPublisher)} 标记的BodyPublisher）不重试，
+ * 出错时直接返回首次请求的结果
+ *
+ * @author gudaoxuri
+ */
+public class RetryPolicy {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RetryPolicy.class);
+
+    private int maxAttempts = 3;
+    private Set<String> retryMethods = new HashSet<>(Arrays.asList("GET", "HEAD", "OPTIONS", "PUT", "DELETE"));
+    private Set<Integer> retryStatusCodes = new HashSet<>(Arrays.asList(429, 502, 503, 504));
+    private List<Class<? extends Throwable>> retryExceptions = new ArrayList<>(Collections.singletonList(IOException.class));
+    private long baseDelayMS = 100;
+    private long maxDelayMS = 5000;
+    private double budgetCapacity = 10;
+    private double budgetRefillPerSecond = 1;
+    private final Map<String, TokenBucket> budgets = new ConcurrentHashMap<>();
+    private final LongAdder retryCount = new LongAdder();
+    private final LongAdder budgetExhaustedCount = new LongAdder();
+
+    /**
+     * 设置最大执行次数（包含首次请求），默认为3.
+     *
+     * @param maxAttempts 最大执行次数
+     * @return the retry policy
+     */
+    public RetryPolicy maxAttempts(int maxAttempts) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("The max attempts must be greater than 0");
+        }
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * 设置可重试的http方法.
+     * <p>
+     * 默认只重试幂等的方法，非幂等的方法（如POST）重试可能导致重复提交
+     *
+     * @param methods http方法
+     * @return the retry policy
+     */
+    public RetryPolicy retryMethods(String... methods) {
+        this.retryMethods = new HashSet<>();
+        for (String method : methods) {
+            this.retryMethods.add(method.toUpperCase());
+        }
+        return this;
+    }
+
+    /**
+     * 设置可重试的状态码.
+     *
+     * @param statusCodes 状态码
+     * @return the retry policy
+     */
+    public RetryPolicy retryStatusCodes(Integer... statusCodes) {
+        this.retryStatusCodes = new HashSet<>(Arrays.asList(statusCodes));
+        return this;
+    }
+
+    /**
+     * 设置可重试的异常，包含其子类.
+     *
+     * @param exceptions 异常类型
+     * @return the retry policy
+     */
+    @SafeVarargs
+    public final RetryPolicy retryExceptions(Class<? extends Throwable>... exceptions) {
+        // 逐个复制，不将可变参数数组传出，@SafeVarargs 才成立
+        List<Class<? extends Throwable>> classes = new ArrayList<>(exceptions.length);
+        for (Class<? extends Throwable> exception : exceptions) {
+            classes.add(exception);
+        }
+        this.retryExceptions = classes;
+        return this;
+    }
+
+    /**
+     * 设置退避间隔.
+     * <p>
+     * 第n次重试的间隔为 [0, min(maxDelayMS, baseDelayMS * 2^(n-1))) 之间的随机值（Full Jitter），
+     * 响应包含 {@code Retry-After} 时间隔不小于其指定的时间（但不超过maxDelayMS）
+     *
+     * @param baseDelayMS 基准间隔
+     * @param maxDelayMS  最大间隔
+     * @return the retry policy
+     */
+    public RetryPolicy backoff(long baseDelayMS, long maxDelayMS) {
+        this.baseDelayMS = baseDelayMS;
+        this.maxDelayMS = maxDelayMS;
+        return this;
+    }
+
+    /**
+     * 设置每个host的重试预算.
+     *
+     * @param capacity        令牌桶容量，即允许的最大突发重试数
+     * @param refillPerSecond 每秒补充的令牌数
+     * @return the retry policy
+     */
+    public RetryPolicy budget(double capacity, double refillPerSecond) {
+        this.budgetCapacity = capacity;
+        this.budgetRefillPerSecond = refillPerSecond;
+        budgets.clear();
+        return this;
+    }
+
+    /**
+     * 获取已执行的重试次数.
+     *
+     * @return 重试次数
+     */
+    public long getRetryCount() {
+        return retryCount.sum();
+    }
+
+    /**
+     * 获取因重试预算耗尽而放弃重试的次数.
+     *
+     * @return 放弃重试的次数
+     */
+    public long getBudgetExhaustedCount() {
+        return budgetExhaustedCount.sum();
+    }
+
+    /**
+     * 标记不可重放的请求体，使用该请求体的请求不重试.
+     * <p>
+     * 只能被订阅一次的BodyPublisher（如基于一次性的输入流或Flow.Publisher）重试时无法重新发送相同的内容，需经此标记
+     *
+     * @param publisher 请求体
+     * @return 标记后的请求体
+     */
+    public static HttpRequest.BodyPublisher nonReplayable(HttpRequest.BodyPublisher publisher) {
+        return new NonReplayableBodyPublisher(publisher);
+    }
+
+    /**
+     * 按重试策略执行请求.
+     *
+     * @param <T>         响应体类型
+     * @param request     请求
+     * @param bodyHandler 响应体处理器
+     * @param send        实际发起请求的方法
+     * @return 最后一次请求的结果
+     */
+    public <T> CompletableFuture<HttpResponse<T>> execute(
+            HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler,
+            BiFunction<HttpRequest, HttpResponse.BodyHandler<T>, CompletableFuture<HttpResponse<T>>> send) {
+        CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        attempt(request, bodyHandler, send, result, 0);
+        return result;
+    }
+
+    private <T> void attempt(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler,
+                             BiFunction<HttpRequest, HttpResponse.BodyHandler<T>, CompletableFuture<HttpResponse<T>>> send,
+                             CompletableFuture<HttpResponse<T>> result, int attempt) {
+        if (result.isDone()) {
+            return;
+        }
+        boolean canRetry = attempt + 1 < maxAttempts && retryMethods.contains(request.method())
+                && !(request.bodyPublisher().orElse(null) instanceof NonReplayableBodyPublisher);
+        AtomicBoolean retryByStatus = new AtomicBoolean();
+        AtomicLong retryAfterMS = new AtomicLong();
+        // 需要重试的响应直接丢弃响应体，避免写入调用方的处理器（如文件、输入流）
+        HttpResponse.BodyHandler<T> attemptHandler = responseInfo -> {
+            if (canRetry && retryStatusCodes.contains(responseInfo.statusCode()) && acquire(request)) {
+                retryByStatus.set(true);
+                retryAfterMS.set(retryAfter(responseInfo.headers()));
+                return HttpResponse.BodySubscribers.replacing(null);
+            }
+            return bodyHandler.apply(responseInfo);
+        };
+        CompletableFuture<HttpResponse<T>> call;
+        try {
+            call = send.apply(request, attemptHandler);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        result.whenComplete((r, e) -> {
+            if (result.isCancelled()) {
+                call.cancel(true);
+            }
+        });
+        call.whenComplete((response, e) -> {
+            if (e == null && !retryByStatus.get()) {
+                result.complete(response);
+                return;
+            }
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                if (!canRetry || retryExceptions.stream().noneMatch(clazz -> clazz.isInstance(cause)) || !acquire(request)) {
+                    result.completeExceptionally(cause);
+                    return;
+                }
+            }
+            long delayMS = Math.min(maxDelayMS, Math.max(retryAfterMS.get(), backoff(attempt)));
+            LOGGER.debug("HTTP [" + request.method() + "] " + request.uri() + " "
+                    + (e != null ? "ERROR" : "status code " + response.statusCode()) + ", retry " + (attempt + 1) + " after " + delayMS + "ms.");
+            retryCount.increment();
+            CompletableFuture.delayedExecutor(delayMS, TimeUnit.MILLISECONDS)
+                    .execute(() -> attempt(request, bodyHandler, send, result, attempt + 1));
+        });
+    }
+
+    private boolean acquire(HttpRequest request) {
+        String host = request.uri().getHost() + ":" + request.uri().getPort();
+        if (budgets.computeIfAbsent(host, h -> new TokenBucket(budgetCapacity, budgetRefillPerSecond)).tryAcquire()) {
+            return true;
+        }
+        budgetExhaustedCount.increment();
+        LOGGER.warn("HTTP [" + request.method() + "] " + request.uri() + " retry budget exhausted, give up retrying.");
+        return false;
+    }
+
+    private long backoff(int attempt) {
+        long ceiling = Math.min(maxDelayMS, baseDelayMS << Math.min(attempt, 30));
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling);
+    }
+
+    private static long retryAfter(HttpHeaders headers) {
+        try {
+            return headers.firstValue("Retry-After").map(value -> Long.parseLong(value.trim()) * 1000).orElse(0L);
+        } catch (NumberFormatException ignore) {
+            // 不支持HTTP-date格式
+            return 0;
+        }
+    }
+
+    /**
+     * 不可重放的请求体.
+     */
+    private static final class NonReplayableBodyPublisher implements HttpRequest.BodyPublisher {
+
+        private final HttpRequest.BodyPublisher publisher;
+
+        private NonReplayableBodyPublisher(HttpRequest.BodyPublisher publisher) {
+            this.publisher = publisher;
+        }
+
+        @Override
+        public long contentLength() {
+            return publisher.contentLength();
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            publisher.subscribe(subscriber);
+        }
+    }
+
+}
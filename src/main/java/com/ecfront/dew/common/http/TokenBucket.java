@@ -0,0 +1,61 @@
+package com.ecfront.dew.common.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 令牌桶.
+ * <p>
+ * 按固定速率补充令牌，令牌数不超过容量。
+ * 使用GCRA（Generic Cell Rate Algorithm）实现：只记录令牌桶被取空后重新装满的理论时间，获取令牌时通过CAS推进，无锁。
+ * <p>
+ * 补充速率不大于0时为固定数量的令牌（按容量取整），取完后不再补充
+ *
+ * @author gudaoxuri
+ */
+final class TokenBucket {
+
+    private static final long MAX_NANOS = Long.MAX_VALUE / 4;
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong theoreticalArrivalNanos;
+    // 不补充时剩余的令牌数，补充速率大于0时为null
+    private final AtomicLong fixedTokens;
+
+    TokenBucket(double capacity, double refillPerSecond) {
+        if (refillPerSecond <= 0) {
+            this.intervalNanos = MAX_NANOS;
+            this.burstNanos = 0;
+            this.fixedTokens = new AtomicLong((long) capacity);
+        } else {
+            this.intervalNanos = (long) Math.min(MAX_NANOS, 1_000_000_000D / refillPerSecond);
+            this.burstNanos = (long) Math.min(MAX_NANOS, capacity * intervalNanos);
+            this.fixedTokens = null;
+        }
+        this.theoreticalArrivalNanos = new AtomicLong(System.nanoTime());
+    }
+
+    boolean tryAcquire() {
+        return reserve(0) == 0;
+    }
+
+    // 预约一个令牌，返回需要等待的纳秒数，等待时间超过maxWaitNanos时不预约并返回-1
+    long reserve(long maxWaitNanos) {
+        if (fixedTokens != null) {
+            return fixedTokens.getAndUpdate(tokens -> tokens > 0 ? tokens - 1 : 0) > 0 ? 0 : -1;
+        }
+        while (true) {
+            long now = System.nanoTime();
+            long arrival = theoreticalArrivalNanos.get();
+            long next = Math.max(arrival, now) + intervalNanos;
+            long waitNanos = Math.max(0, next - burstNanos - now);
+            if (waitNanos > maxWaitNanos) {
+                return -1;
+            }
+            if (theoreticalArrivalNanos.compareAndSet(arrival, next)) {
+                return waitNanos;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,162 @@
+package com.ecfront.dew.common.json;
+
+import com.ecfront.dew.common.exception.RTIOException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Json数组的流式读取.
+ * <p>
+ * 按需逐个解析数组中的元素，任一时刻只持有当前元素，内存占用与数组大小无关，适合读取超大的Json文件或响应体。
+ * <p>
+ * 数组可以是根节点，也可以通过路径指定嵌套的数组，如 {@code data.items} ，路径中的数字表示数组的下标，如 {@code data.0.items} ，
+ * 路径之前的内容只做跳过，不会解析成对象。路径不存在或其值为null时视为空数组。
+ * <p>
+ * 读取完所有元素或调用 {@link #close()} 时关闭底层的输入
+ *
+ * @param <E> 元素类型
+ * @author gudaoxuri
+ */
+public final class JsonArrayReader<E> implements Iterator<E>, Closeable {
+
+    private final ObjectReader reader;
+    private final JsonParser parser;
+    private boolean pending;
+    private boolean closed;
+
+    /**
+     * Instantiates a new Json array reader.
+     *
+     * @param reader 元素类型的ObjectReader
+     * @param parser 尚未开始读取的解析器
+     * @param path   数组的路径，为null或空时数组为根节点
+     * @throws RTIOException 读取失败或路径对应的值不是数组，此时会关闭解析器
+     */
+    public JsonArrayReader(ObjectReader reader, JsonParser parser, String path) throws RTIOException {
+        this.reader = reader;
+        this.parser = parser;
+        try {
+            JsonToken token = parser.nextToken();
+            if (path != null && !path.isEmpty()) {
+                for (String name : path.split("\\.")) {
+                    if (!moveTo(name)) {
+                        close();
+                        return;
+                    }
+                    token = parser.currentToken();
+                }
+            }
+            if (token == null || token == JsonToken.VALUE_NULL) {
+                close();
+            } else if (token != JsonToken.START_ARRAY) {
+                throw new RTIOException("The value of [" + (path == null || path.isEmpty() ? "root" : path) + "] is not an array");
+            }
+        } catch (IOException e) {
+            close();
+            throw new RTIOException(e);
+        } catch (RTIOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    // 将解析器移动到当前对象的name字段（或当前数组的第name个元素）的值上，不存在时返回false
+    private boolean moveTo(String name) throws IOException {
+        if (parser.currentToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                boolean matched = parser.currentName().equals(name);
+                parser.nextToken();
+                if (matched) {
+                    return true;
+                }
+                parser.skipChildren();
+            }
+            return false;
+        }
+        if (parser.currentToken() == JsonToken.START_ARRAY && !name.isEmpty() && name.chars().allMatch(Character::isDigit)) {
+            for (int i = Integer.parseInt(name); i >= 0; i--) {
+                if (parser.nextToken() == JsonToken.END_ARRAY) {
+                    return false;
+                }
+                if (i > 0) {
+                    parser.skipChildren();
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        if (pending) {
+            return true;
+        }
+        try {
+            if (parser.nextToken() == JsonToken.END_ARRAY) {
+                close();
+                return false;
+            }
+        } catch (IOException e) {
+            close();
+            throw new RTIOException(e);
+        }
+        pending = true;
+        return true;
+    }
+
+    @Override
+    public E next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        pending = false;
+        try {
+            return reader.readValue(parser);
+        } catch (IOException e) {
+            close();
+            throw new RTIOException(e);
+        }
+    }
+
+    /**
+     * 转成Stream，关闭Stream时关闭本读取器.
+     *
+     * @return 元素的Stream
+     */
+    public Stream<E> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false).onClose(this::close);
+    }
+
+    /**
+     * 关闭读取器及底层的输入.
+     *
+     * @throws RTIOException the rtio exception
+     */
+    @Override
+    public void close() throws RTIOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            parser.close();
+        } catch (IOException e) {
+            throw new RTIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,198 @@
+package com.ecfront.dew.common.json;
+
+import com.ecfront.dew.common.exception.RTIOException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 指定类型的Json编解码器.
+ * <p>
+ * 创建时即确定目标类型的 {@link JavaType} 及对应的 {@link ObjectReader} 、 {@link ObjectWriter} ，
+ * 之后的每次调用不再解析类型及查找序列化器，线程安全，适合在热点代码中持有复用。
+ * <p>
+ * 编解码器使用创建时的Mapper配置，之后修改Mapper配置需要重新获取
+ *
+ * @param <T> 目标类型
+ * @author gudaoxuri
+ */
+public final class JsonCodec<T> {
+
+    private final JavaType type;
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+    private final ObjectWriter valueWriter;
+    private final ObjectWriter streamWriter;
+
+    /**
+     * Instantiates a new Json codec.
+     * <p>
+     * 容器类型及final类按声明的类型序列化，其它类型按运行时的类型序列化，以免丢失子类的属性
+     *
+     * @param mapper 使用的Mapper
+     * @param type   目标类型
+     */
+    public JsonCodec(ObjectMapper mapper, JavaType type) {
+        this.type = type;
+        this.reader = mapper.readerFor(type);
+        this.valueWriter = mapper.writer();
+        this.writer = type.isContainerType() || type.isFinal() ? mapper.writerFor(type) : valueWriter;
+        this.streamWriter = writer.without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    /**
+     * 获取目标类型.
+     *
+     * @return 目标类型
+     */
+    public JavaType getType() {
+        return type;
+    }
+
+    /**
+     * 获取目标类型的Jackson ObjectReader.
+     *
+     * @return ObjectReader
+     */
+    public ObjectReader getReader() {
+        return reader;
+    }
+
+    /**
+     * 获取目标类型的Jackson ObjectWriter.
+     *
+     * @return ObjectWriter
+     */
+    public ObjectWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * 解析Json字符串.
+     *
+     * @param json Json字符串
+     * @return 目标对象
+     * @throws RTIOException the rtio exception
+     */
+    public T read(String json) throws RTIOException {
+        try {
+            return reader.readValue(json);
+        } catch (IOException e) {
+            throw new RTIOException(e);
+        }
+    }
+
+    /**
+     * 解析Json字节数组.
+     *
+     * @param json Json字节数组
+     * @return 目标对象
+     * @throws RTIOException the rtio exception
+     */
+    public T read(byte[] json) throws RTIOException {
+        try {
+            return reader.readValue(json);
+        } catch (IOException e) {
+            throw new RTIOException(e);
+        }
+    }
+
+    /**
+     * 解析Json输入流，解析完成后关闭输入流.
+     *
+     * @param json Json输入流
+     * @return 目标对象
+     * @throws RTIOException the rtio exception
+     */
+    public T read(InputStream json) throws RTIOException {
+        try (InputStream is = json) {
+            return reader.readValue(is);
+        } catch (IOException e) {
+            throw new RTIOException(e);
+        }
+    }
+
+    /**
+     * 转成目标对象.
+     * <p>
+     * JsonNode直接按树转换，其它Java对象序列化到TokenBuffer后再反序列化，不会生成中间的Json字符串
+     *
+     * @param obj 源数据，可以是Json字符串、JsonNode或其它Java对象
+     * @return 目标对象
+     * @throws RTIOException the rtio exception
+     */
+    public T convert(Object obj) throws RTIOException {
+        if (obj instanceof String) {
+            return read((String) obj);
+        }
+        try {
+            if (obj instanceof JsonNode) {
+                return reader.readValue((JsonNode) obj);
+            }
+            TokenBuffer buffer = new TokenBuffer(reader, false)
+                    .forceUseOfBigDecimal(reader.isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS));
+            valueWriter.writeValue(buffer, obj);
+            try (JsonParser parser = buffer.asParser()) {
+                return reader.readValue(parser);
+            }
+        } catch (IOException e) {
+            throw new RTIOException(e);
+        }
+    }
+
+    /**
+     * 转成Json字符串.
+     *
+     * @param value 目标对象
+     * @return Json字符串
+     * @throws RTIOException the rtio exception
+     */
+    public String write(T value) throws RTIOException {
+        try {
+            return writer.writeValueAsString(value);
+        } catch (IOException e) {
+            throw new RTIOException(e);
+        }
+    }
+
+    /**
+     * 转成Json字节数组（UTF-8）.
+     *
+     * @param value 目标对象
+     * @return Json字节数组
+     * @throws RTIOException the rtio exception
+     */
+    public byte[] writeBytes(T value) throws RTIOException {
+        try {
+            return writer.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new RTIOException(e);
+        }
+    }
+
+    /**
+     * 写入输出流（UTF-8），不会关闭输出流.
+     *
+     * @param os    输出流
+     * @param value 目标对象
+     * @throws RTIOException the rtio exception
+     */
+    public void write(OutputStream os, T value) throws RTIOException {
+        try {
+            streamWriter.writeValue(os, value);
+        } catch (IOException e) {
+            throw new RTIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,210 @@
+package com.ecfront.dew.common.json;
+
+import com.ecfront.dew.common.exception.RTIOException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * NDJSON（JSON Lines）读取.
+ * <p>
+ * 读取文件时按分段大小将文件切分成以行边界对齐的分段，各分段在ForkJoinPool中并行解析（在自定义的ForkJoinPool中执行终止操作时使用该线程池，
+ * 否则使用公共线程池），每个分段独立打开文件，关闭返回的Stream不是必须的。
+ * <p>
+ * 读取输入流时按行顺序逐个解析。
+ * <p>
+ * 空行会被跳过，行尾的 {@code \r} 会被忽略
+ *
+ * @param <E> 元素类型
+ * @author gudaoxuri
+ */
+public class JsonLinesReader<E> {
+
+    private static final int SCAN_SIZE = 8 * 1024;
+
+    private final ObjectReader reader;
+    private int chunkSize = 4 * 1024 * 1024;
+
+    /**
+     * Instantiates a new Json lines reader.
+     *
+     * @param reader 元素类型的ObjectReader
+     */
+    public JsonLinesReader(ObjectReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * 设置并行解析时每个分段的大小，默认为4MB.
+     * <p>
+     * 文件较小时会自动减小分段大小，使分段数不少于CPU核数的4倍（最小64KB）
+     *
+     * @param chunkSize 分段大小（字节）
+     * @return the json lines reader
+     */
+    public JsonLinesReader<E> chunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("The chunk size must be greater than 0");
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * 并行读取文件.
+     *
+     * @param file    NDJSON文件
+     * @param ordered 是否保持行顺序，为true时元素的遇到顺序与文件中的行顺序一致（需使用forEachOrdered、collect等保持顺序的终止操作），
+     *                为false时不保证顺序，可减少并行时的缓冲
+     * @return 元素的并行Stream ，解析失败时终止操作抛出 {@link RTIOException}
+     * @throws RTIOException the rtio exception
+     */
+    public Stream<E> read(Path file, boolean ordered) throws RTIOException {
+        List<long[]> chunks = split(file);
+        Stream<long[]> chunkStream = chunks.parallelStream();
+        if (!ordered) {
+            chunkStream = chunkStream.unordered();
+        }
+        return chunkStream.flatMap(chunk -> StreamSupport.stream(new ChunkSpliterator(file, chunk[0], chunk[1]), false));
+    }
+
+    /**
+     * 按行顺序逐个读取输入流.
+     *
+     * @param is NDJSON输入流，读取完成或关闭返回的Stream时关闭
+     * @return 元素的Stream
+     * @throws RTIOException the rtio exception
+     */
+    public Stream<E> read(InputStream is) throws RTIOException {
+        MappingIterator<E> iterator;
+        try {
+            iterator = reader.readValues(is);
+        } catch (IOException e) {
+            throw new RTIOException(e);
+        }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                .onClose(() -> {
+                    try {
+                        iterator.close();
+                    } catch (IOException e) {
+                        throw new RTIOException(e);
+                    }
+                });
+    }
+
+    // 切分成以行边界对齐的分段，每个分段为 [起始位置, 结束位置)
+    private List<long[]> split(Path file) {
+        List<long[]> chunks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long currentChunkSize = Math.min(chunkSize, Math.max(64 * 1024, size / (Runtime.getRuntime().availableProcessors() * 4L)));
+            long start = 0;
+            while (start < size) {
+                long end = start + currentChunkSize;
+                end = end >= size ? size : nextLineStart(channel, end - 1, size);
+                chunks.add(new long[]{start, end});
+                start = end;
+            }
+        } catch (IOException e) {
+            throw new RTIOException(e);
+        }
+        return chunks;
+    }
+
+    // 从指定位置开始查找换行符，返回其后一行的起始位置，没有换行符时返回文件大小
+    private static long nextLineStart(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_SIZE);
+        long position = from;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * 逐行解析一个分段，分段的内容在首次读取时一次性加载，解析出的对象不在分段内缓存.
+     */
+    private final class ChunkSpliterator extends Spliterators.AbstractSpliterator<E> {
+
+        private final Path file;
+        private final long start;
+        private final long end;
+        private byte[] bytes;
+        private int position;
+
+        private ChunkSpliterator(Path file, long start, long end) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED);
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            if (bytes == null) {
+                bytes = load();
+            }
+            while (position < bytes.length) {
+                int lineStart = position;
+                int lineEnd = lineStart;
+                while (lineEnd < bytes.length && bytes[lineEnd] != '\n') {
+                    lineEnd++;
+                }
+                position = lineEnd + 1;
+                while (lineEnd > lineStart && (bytes[lineEnd - 1] == '\r' || bytes[lineEnd - 1] == ' ' || bytes[lineEnd - 1] == '\t')) {
+                    lineEnd--;
+                }
+                if (lineEnd > lineStart) {
+                    E value;
+                    try {
+                        value = reader.readValue(bytes, lineStart, lineEnd - lineStart);
+                    } catch (IOException e) {
+                        throw new RTIOException("Invalid json line at offset " + (start + lineStart) + " of " + file, e);
+                    }
+                    action.accept(value);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private byte[] load() {
+            byte[] content = new byte[(int) (end - start)];
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, start + buffer.position()) < 0) {
+                        throw new IOException("Unexpected end of file at " + (start + buffer.position()));
+                    }
+                }
+            } catch (IOException e) {
+                throw new RTIOException(e);
+            }
+            return content;
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+package com.ecfront.dew.common.json;
+
+import com.ecfront.dew.common.exception.RTIOException;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * NDJSON（JSON Lines）写入.
+ * <p>
+ * 所有对象复用同一个JsonGenerator写入（UTF-8），每个对象一行且以换行符结尾，
+ * 写入时不逐个刷新，需要及时可见时调用 {@link #flush()} 。非线程安全
+ *
+ * @param <E> 元素类型
+ * @author gudaoxuri
+ */
+public class JsonLinesWriter<E> implements Closeable, Flushable {
+
+    private final ObjectWriter writer;
+    private final JsonGenerator generator;
+
+    /**
+     * Instantiates a new Json lines writer.
+     *
+     * @param writer 元素类型的ObjectWriter
+     * @param os     输出流，关闭本写入器时关闭
+     * @throws RTIOException the rtio exception
+     */
+    public JsonLinesWriter(ObjectWriter writer, OutputStream os) throws RTIOException {
+        this.writer = writer.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .without(SerializationFeature.INDENT_OUTPUT);
+        try {
+            this.generator = this.writer.createGenerator(os, JsonEncoding.UTF8);
+            // 行之间以换行符分隔，不使用默认的根节点分隔符（空格）
+            this.generator.setRootValueSeparator(null);
+        } catch (IOException e) {
+            throw new RTIOException(e);
+        }
+    }
+
+    /**
+     * 写入一个对象.
+     *
+     * @param value 对象
+     * @return the json lines writer
+     * @throws RTIOException the rtio exception
+     */
+    public JsonLinesWriter<E> write(E value) throws RTIOException {
+        try {
+            writer.writeValue(generator, value);
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new RTIOException(e);
+        }
+        return this;
+    }
+
+    /**
+     * 写入多个对象.
+     *
+     * @param values 对象
+     * @return the json lines writer
+     * @throws RTIOException the rtio exception
+     */
+    public JsonLinesWriter<E> writeAll(Iterable<? extends E> values) throws RTIOException {
+        for (E value : values) {
+            write(value);
+        }
+        return this;
+    }
+
+    /**
+     * 写入多个对象.
+     *
+     * @param values 对象，按遇到顺序写入
+     * @return the json lines writer
+     * @throws RTIOException the rtio exception
+     */
+    public JsonLinesWriter<E> writeAll(Stream<? extends E> values) throws RTIOException {
+        Iterator<? extends E> iterator = values.iterator();
+        while (iterator.hasNext()) {
+            write(iterator.next());
+        }
+        return this;
+    }
+
+    /**
+     * 将已写入的内容刷新到输出流.
+     *
+     * @throws RTIOException the rtio exception
+     */
+    @Override
+    public void flush() throws RTIOException {
+        try {
+            generator.flush();
+        } catch (IOException e) {
+            throw new RTIOException(e);
+        }
+    }
+
+    /**
+     * 刷新并关闭写入器及输出流.
+     *
+     * @throws RTIOException the rtio exception
+     */
+    @Override
+    public void close() throws RTIOException {
+        try {
+            generator.close();
+        } catch (IOException e) {
+            throw new RTIOException(e);
+        }
+    }
+
+}
@@ -1,14 +1,63 @@
 package com.ecfront.dew.common.test;
 
 import com.ecfront.dew.common.$;
+import com.ecfront.dew.common.FallbackHelper;
 import com.ecfront.dew.common.HttpHelper;
+import com.ecfront.dew.common.Page;
+import com.ecfront.dew.common.Resp;
+import com.ecfront.dew.common.exception.RTIOException;
+import com.ecfront.dew.common.http.ChunkedUploader;
+import com.ecfront.dew.common.http.CircuitBreaker;
+import com.ecfront.dew.common.http.Compression;
+import com.ecfront.dew.common.http.EventStream;
+import com.ecfront.dew.common.http.HedgePolicy;
+import com.ecfront.dew.common.http.HttpClientProfile;
+import com.ecfront.dew.common.http.HttpMetrics;
+import com.ecfront.dew.common.http.MultiPartBodyPublisher;
+import com.ecfront.dew.common.http.RangeDownloader;
+import com.ecfront.dew.common.http.RateLimiter;
+import com.ecfront.dew.common.http.RequestBatch;
+import com.ecfront.dew.common.http.RequestCoalescer;
+import com.ecfront.dew.common.http.RequestSpec;
+import com.ecfront.dew.common.http.ResponseCache;
+import com.ecfront.dew.common.http.RetryPolicy;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * The type Http helper test.
@@ -34,84 +83,1119 @@ public class HttpHelperTest {
      */
     @Test
     public void testHttp() {
+        String baseUrl = LocalHttpServer.start();
+        String host = baseUrl.substring("http://".length());
         // get
-        String result = $.http.get("https://httpbin.org/get");
-        Assertions.assertEquals("httpbin.org", $.json.toJson(result).get("headers").get("Host").asText());
-        result = $.http.get("https://httpbin.org/get", new HashMap<>() {
+        String result = $.http.get(baseUrl + "/get");
+        Assertions.assertEquals(host, $.json.toJson(result).get("headers").get("Host").asText());
+        result = $.http.get(baseUrl + "/get", new HashMap<>() {
             {
                 put("Customer-A", "AAA");
                 put("Accept", "json");
                 put("Date", "xx");
             }
         });
-        Assertions.assertEquals("AAA", $.json.toJson(result).get("headers").get("Customer-A").asText());
+        Assertions.assertEquals("AAA", $.json.toJson(result).get("headers").get("Customer-a").asText());
         Assertions.assertEquals("json", $.json.toJson(result).get("headers").get("Accept").asText());
-        result = $.http.get("https://httpbin.org/get", new HashMap<>() {
+        result = $.http.get(baseUrl + "/get", new HashMap<>() {
             {
                 put("Customer-A", "AAA");
                 put("Accept", "json");
             }
         }, "application/json; charset=utf-8", "utf-8", 5000);
-        Assertions.assertEquals("AAA", $.json.toJson(result).get("headers").get("Customer-A").asText());
+        Assertions.assertEquals("AAA", $.json.toJson(result).get("headers").get("Customer-a").asText());
         Assertions.assertEquals("json", $.json.toJson(result).get("headers").get("Accept").asText());
-        Assertions.assertEquals("application/json; charset=utf-8", $.json.toJson(result).get("headers").get("Content-Type").asText());
+        Assertions.assertEquals("application/json; charset=utf-8", $.json.toJson(result).get("headers").get("Content-type").asText());
         // delete
-        result = $.http.delete("https://httpbin.org/delete");
-        Assertions.assertEquals("httpbin.org", $.json.toJson(result).get("headers").get("Host").asText());
+        result = $.http.delete(baseUrl + "/delete");
+        Assertions.assertEquals("DELETE", $.json.toJson(result).get("method").asText());
         // post - data
-        result = $.http.post("https://httpbin.org/post", "some data");
+        result = $.http.post(baseUrl + "/post", "some data");
         Assertions.assertEquals("some data", $.json.toJson(result).get("data").asText());
         // post - form
-        result = $.http.post("https://httpbin.org/post", new HashMap<>() {
+        result = $.http.post(baseUrl + "/post", new HashMap<>() {
             {
                 put("a", "1");
             }
         }, "application/x-www-form-urlencoded");
-        result = $.http.post("https://httpbin.org/post", "custname=%E5%8C%BF%E5%90%8D&size=small&topping=cheese&topping=onion", "application/x-www-form-urlencoded");
-        Assertions.assertEquals("匿名", $.json.toJson(result).get("form").get("custname").asText());
-        Assertions.assertEquals("small", $.json.toJson(result).get("form").get("size").asText());
-        Assertions.assertEquals("onion", $.json.toJson(result).get("form").get("topping").get(1).asText());
+        Assertions.assertEquals("a=1", $.json.toJson(result).get("data").asText());
+        String form = "custname=%E5%8C%BF%E5%90%8D&size=small&topping=cheese&topping=onion";
+        result = $.http.post(baseUrl + "/post", form, "application/x-www-form-urlencoded");
+        Assertions.assertEquals(form, $.json.toJson(result).get("data").asText());
+        Assertions.assertEquals("application/x-www-form-urlencoded", $.json.toJson(result).get("headers").get("Content-type").asText());
         // post - file
-        result = $.http.post("https://httpbin.org/post", new File(currentPath + "/conf1.json"), "multipart/form-data");
-        Assertions.assertEquals("1", $.json.toJson($.json.toJson(result).get("files").get("conf1.json").asText()).get("a").asText());
-        result = $.http.post("https://httpbin.org/post", new File(currentPath + "/conf1.json"));
-        Assertions.assertEquals("1", $.json.toJson(result).get("json").get("a").asText());
+        File file = new File(currentPath + "/conf1.json");
+        result = $.http.post(baseUrl + "/multipart", file, "multipart/form-data");
+        JsonNode part = $.json.toJson(result).get("parts").get(0);
+        Assertions.assertEquals("conf1.json", part.get("filename").asText());
+        Assertions.assertEquals(file.length(), part.get("size").asLong());
+        result = $.http.post(baseUrl + "/post", file);
+        Assertions.assertEquals("1", $.json.toJson($.json.toJson(result).get("data").asText()).get("a").asText());
         // put - data
-        result = $.http.put("https://httpbin.org/put", "some data");
+        result = $.http.put(baseUrl + "/put", "some data");
         Assertions.assertEquals("some data", $.json.toJson(result).get("data").asText());
+        Assertions.assertEquals("PUT", $.json.toJson(result).get("method").asText());
         // put - form
-        result = $.http.put("https://httpbin.org/put", new HashMap<>() {
+        result = $.http.put(baseUrl + "/put", new HashMap<>() {
             {
                 put("a", "1");
             }
         }, "application/x-www-form-urlencoded");
-        Assertions.assertEquals("1", $.json.toJson(result).get("form").get("a").asText());
+        Assertions.assertEquals("a=1", $.json.toJson(result).get("data").asText());
         // put - file
-        result = $.http.put("https://httpbin.org/put", new File(currentPath + "/conf1.json"));
-        Assertions.assertEquals("1", $.json.toJson(result).get("json").get("a").asText());
+        result = $.http.put(baseUrl + "/put", file);
+        Assertions.assertEquals("1", $.json.toJson($.json.toJson(result).get("data").asText()).get("a").asText());
         // put with head
-        HttpHelper.ResponseWrap responseWrap = $.http.putWrap("https://httpbin.org/put", new File(currentPath + "/conf1.json"));
-        Assertions.assertEquals("1", $.json.toJson(result).get("json").get("a").asText());
+        HttpHelper.ResponseWrap responseWrap = $.http.putWrap(baseUrl + "/put", file);
+        Assertions.assertEquals("1", $.json.toJson($.json.toJson(responseWrap.result).get("data").asText()).get("a").asText());
         Assertions.assertEquals("application/json", responseWrap.head.get("Content-Type").get(0));
         // head
-        Map<String, List<String>> head = $.http.head("https://httpbin.org/get");
+        Map<String, List<String>> head = $.http.head(baseUrl + "/get");
         Assertions.assertEquals("application/json", head.get("Content-Type").get(0));
         // options
-        head = $.http.options("https://httpbin.org/get");
+        head = $.http.options(baseUrl + "/get");
         Assertions.assertTrue(head.get("Allow").get(0).contains("GET"));
         // patch - data
-        result = $.http.patch("https://httpbin.org/patch", new HashMap<>() {
+        result = $.http.patch(baseUrl + "/patch", new HashMap<>() {
             {
                 put("Customer-A", "AAA");
                 put("Accept", "json");
             }
         });
+        Assertions.assertEquals("PATCH", $.json.toJson(result).get("method").asText());
         Assertions.assertEquals("AAA", $.json.toJson($.json.toJson(result).get("data").asText()).get("Customer-A").asText());
         Assertions.assertEquals("json", $.json.toJson($.json.toJson(result).get("data").asText()).get("Accept").asText());
+        // scripted responses
+        responseWrap = $.http.getWrap(baseUrl + "/script?status=503&delay=50");
+        Assertions.assertEquals(503, responseWrap.statusCode);
+        responseWrap = $.http.getWrap(baseUrl + "/script?size=1048576&chunked=1");
+        Assertions.assertEquals(1048576, responseWrap.result.length());
+        Assertions.assertEquals("abc", responseWrap.result.substring(26, 29));
+        HttpHelper httpHelper = $.http(-1, true);
+        httpHelper.setCompression(new Compression());
+        responseWrap = httpHelper.getWrap(baseUrl + "/script?size=1048576&chunked=1&encoding=gzip");
+        Assertions.assertEquals(1048576, responseWrap.result.length());
+        responseWrap = httpHelper.getWrap(baseUrl + "/script?size=100000&encoding=deflate");
+        Assertions.assertEquals(100000, responseWrap.result.length());
+        // without compression the encoded body is returned as is
+        Assertions.assertTrue($.http.getWrap(baseUrl + "/script?size=100000&encoding=deflate").result.length() < 100000);
+    }
+
+    /**
+     * Test async.
+     */
+    @Test
+    public void testAsync() {
+        String baseUrl = LocalHttpServer.start();
+        HttpHelper.ResponseWrap responseWrap = $.http.getAsync(baseUrl + "/get?a=1", new HashMap<>() {
+            {
+                put("Customer-A", "AAA");
+            }
+        }).join();
+        Assertions.assertEquals(200, responseWrap.statusCode);
+        Assertions.assertEquals("GET", $.json.toJson(responseWrap.result).get("method").asText());
+        Assertions.assertEquals("a=1", $.json.toJson(responseWrap.result).get("query").asText());
+        Assertions.assertEquals("AAA", $.json.toJson(responseWrap.result).get("headers").get("Customer-a").asText());
+        // post - form
+        responseWrap = $.http.postAsync(baseUrl + "/post", new HashMap<>() {
+            {
+                put("a", "1");
+            }
+        }, null, "application/x-www-form-urlencoded", null, -1).join();
+        Assertions.assertEquals("a=1", $.json.toJson(responseWrap.result).get("data").asText());
+        // post - json
+        responseWrap = $.http.postAsync(baseUrl + "/post", new HashMap<>() {
+            {
+                put("a", "1");
+            }
+        }).join();
+        Assertions.assertEquals("1", $.json.toJson($.json.toJson(responseWrap.result).get("data").asText()).get("a").asText());
+        Assertions.assertEquals("application/json; charset=utf-8",
+                $.json.toJson(responseWrap.result).get("headers").get("Content-type").asText());
+        // status
+        Assertions.assertEquals(503, $.http.getAsync(baseUrl + "/status/503").join().statusCode);
+        // concurrent
+        List<CompletableFuture<HttpHelper.ResponseWrap>> futures = IntStream.range(0, 20)
+                .mapToObj(i -> $.http.getAsync(baseUrl + "/delay/100?i=" + i))
+                .collect(Collectors.toList());
+        for (int i = 0; i < futures.size(); i++) {
+            Assertions.assertEquals("i=" + i, $.json.toJson(futures.get(i).join().result).get("query").asText());
+        }
+        // timeout
+        try {
+            $.http.getAsync(baseUrl + "/delay/1000", null, null, null, 100).join();
+            Assertions.fail();
+        } catch (CompletionException e) {
+            Assertions.assertTrue(e.getCause() instanceof RTIOException);
+        }
+        try {
+            $.http.get(baseUrl + "/delay/1000", null, null, null, 100);
+            Assertions.fail();
+        } catch (RTIOException ignore) {
+        }
+        // interrupted while waiting: the interrupt flag is kept
+        Thread.currentThread().interrupt();
+        Assertions.assertThrows(RTIOException.class, () -> $.http.get(baseUrl + "/delay/1000"));
+        Assertions.assertTrue(Thread.interrupted());
+        // pre request
+        HttpHelper httpHelper = $.http(-1, true);
+        httpHelper.setPreRequest(context -> {
+            context.getHeader().put("Customer-B", "BBB");
+            return context;
+        });
+        responseWrap = httpHelper.getAsync(baseUrl + "/get").join();
+        Assertions.assertEquals("BBB", $.json.toJson(responseWrap.result).get("headers").get("Customer-b").asText());
+    }
+
+    /**
+     * Test stream.
+     *
+     * @throws IOException the io exception
+     */
+    @Test
+    public void testStream() throws IOException {
+        String baseUrl = LocalHttpServer.start();
+        int size = 5 * 1024 * 1024 + 7;
+        // download
+        Path file = Files.createTempFile("dew-download", ".bin");
+        HttpHelper.StreamResponseWrap<Path> fileWrap = $.http.download(baseUrl + "/bytes/" + size, file);
+        Assertions.assertEquals(200, fileWrap.statusCode);
+        Assertions.assertEquals(size, Files.size(fileWrap.body));
+        Assertions.assertEquals((byte) ((size - 1) % 256), Files.readAllBytes(file)[size - 1]);
+        Files.delete(file);
+        // input stream
+        HttpHelper.StreamResponseWrap<InputStream> streamWrap = $.http.getStream(baseUrl + "/bytes/" + size);
+        long count = 0;
+        try (InputStream is = streamWrap.body) {
+            byte[] buf = new byte[4096];
+            int len;
+            while ((len = is.read(buf)) != -1) {
+                for (int i = 0; i < len; i++) {
+                    Assertions.assertEquals((byte) ((count + i) % 256), buf[i]);
+                }
+                count += len;
+            }
+        }
+        Assertions.assertEquals(size, count);
+        // lines
+        HttpHelper.StreamResponseWrap<Stream<String>> linesWrap = $.http.getLines(baseUrl + "/lines/10000");
+        try (Stream<String> lines = linesWrap.body) {
+            Assertions.assertEquals(10000, lines.filter(line -> line.startsWith("line-")).count());
+        }
+        // chunks with backpressure
+        AtomicLong received = new AtomicLong();
+        $.http.getChunks(baseUrl + "/bytes/" + size, null, -1, new Flow.Subscriber<>() {
+
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(List<ByteBuffer> item) {
+                item.forEach(buffer -> received.addAndGet(buffer.remaining()));
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        Assertions.assertEquals(size, received.get());
+    }
+
+    /**
+     * Test ranged download.
+     *
+     * @throws IOException the io exception
+     */
+    @Test
+    public void testRangedDownload() throws IOException {
+        String baseUrl = LocalHttpServer.start();
+        int size = 3 * 1024 * 1024 + 11;
+        Path file = Files.createTempFile("dew-ranged", ".bin");
+        Assertions.assertEquals(file, $.http.downloadRanged(baseUrl + "/bytes/" + size, file, 4));
+        byte[] content = Files.readAllBytes(file);
+        Assertions.assertEquals(size, content.length);
+        for (int i = 0; i < size; i++) {
+            Assertions.assertEquals((byte) (i % 256), content[i]);
+        }
+        Assertions.assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".ranges")));
+        // retry failed ranges
+        Files.delete(file);
+        new RangeDownloader($.http).connections(3).chunkSize(512 * 1024).retries(2, 10)
+                .download(baseUrl + "/bytes/" + size + "?flaky=1", null, file);
+        content = Files.readAllBytes(file);
+        for (int i = 0; i < size; i++) {
+            Assertions.assertEquals((byte) (i % 256), content[i]);
+        }
+        // resume : chunk 0 is marked as completed and must not be downloaded again
+        Files.write(file, new byte[size]);
+        Files.writeString(file.resolveSibling(file.getFileName() + ".ranges"),
+                "{\"url\":\"" + baseUrl + "/bytes/" + size + "\",\"length\":" + size
+                        + ",\"validator\":\"\",\"chunkSize\":1048576,\"completed\":[0]}");
+        new RangeDownloader($.http).chunkSize(1024 * 1024).download(baseUrl + "/bytes/" + size, null, file);
+        content = Files.readAllBytes(file);
+        Assertions.assertEquals(0, content[1]);
+        Assertions.assertEquals((byte) (1024 * 1024 % 256 + 1), content[1024 * 1024 + 1]);
+        Assertions.assertEquals((byte) ((size - 1) % 256), content[size - 1]);
+        // a weak ETag is not used as If-Range, Last-Modified is used instead
+        Files.delete(file);
+        $.http.downloadRanged(baseUrl + "/bytes/" + size + "?etag=weak", file, 4);
+        content = Files.readAllBytes(file);
+        Assertions.assertEquals((byte) ((size - 1) % 256), content[size - 1]);
+        // the file changes after the HEAD request: ranges are answered with 200 and the download restarts
+        Files.delete(file);
+        new RangeDownloader($.http).chunkSize(512 * 1024).retries(2, 10)
+                .download(baseUrl + "/bytes/" + size + "?etag=strong&changed=1", null, file);
+        content = Files.readAllBytes(file);
+        for (int i = 0; i < size; i++) {
+            Assertions.assertEquals((byte) (i % 256), content[i]);
+        }
+        Assertions.assertFalse(Files.exists(file.resolveSibling(file.getFileName() + ".ranges")));
+        // a range response that does not match the requested range fails the download without starting further ranges
+        List<String> badRanges = List.of("overrun", "ignored");
+        for (int i = 0; i < badRanges.size(); i++) {
+            String badRange = badRanges.get(i);
+            Files.delete(file);
+            String path = "/bytes/" + (size + 100 + i);
+            RTIOException e = Assertions.assertThrows(RTIOException.class, () -> new RangeDownloader($.http).connections(2)
+                    .chunkSize(512 * 1024).retries(0, 10).download(baseUrl + path + "?badrange=" + badRange, null, file));
+            Assertions.assertTrue(e.getMessage().contains("Range"), e.getMessage());
+            Assertions.assertTrue(LocalHttpServer.requestCount(path) <= 3, "requests " + LocalHttpServer.requestCount(path));
+        }
+        // not support ranges
+        Assertions.assertEquals(10000 * "line-0000\n".length() - 10 * 3 - 90 * 2 - 900,
+                Files.size($.http.downloadRanged(baseUrl + "/lines/10000", file, 4)));
+        Files.delete(file);
+    }
+
+    /**
+     * Test chunked upload.
+     *
+     * @throws IOException the io exception
+     */
+    @Test
+    public void testChunkedUpload() throws IOException {
+        String baseUrl = LocalHttpServer.start();
+        byte[] content = new byte[1024 * 1024 + 7];
+        new Random(1).nextBytes(content);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        Path file = Files.createTempFile("dew-upload", ".bin");
+        Files.write(file, content);
+        Path stateFile = file.resolveSibling(file.getFileName() + ".uploading");
+        // retry failed parts
+        LocalHttpServer.failUpload("u1", 200000, 1);
+        List<Integer> progress = new CopyOnWriteArrayList<>();
+        new ChunkedUploader($.http).connections(3).chunkSize(100000).retries(2, 10)
+                .progress((percent, uploadedBytes, totalBytes) -> progress.add(percent))
+                .upload(baseUrl + "/upload/u1", null, file);
+        Assertions.assertEquals(11, progress.size());
+        Assertions.assertEquals(100, progress.get(progress.size() - 1));
+        Assertions.assertEquals(crc.getValue(), $.json.toJson($.http.get(baseUrl + "/upload/u1")).get("crc").asLong());
+        Assertions.assertFalse(Files.exists(stateFile));
+        // resume : only the failed part is uploaded again
+        LocalHttpServer.failUpload("u2", 500000, 1);
+        Assertions.assertThrows(RTIOException.class, () -> new ChunkedUploader($.http).connections(3).chunkSize(100000).retries(0, 10)
+                .upload(baseUrl + "/upload/u2", null, file));
+        Assertions.assertTrue(Files.exists(stateFile));
+        int requests = LocalHttpServer.requestCount("/upload/u2");
+        HttpHelper.ResponseWrap responseWrap = new ChunkedUploader($.http).connections(3).chunkSize(100000)
+                .upload(baseUrl + "/upload/u2", null, file);
+        Assertions.assertEquals(1, LocalHttpServer.requestCount("/upload/u2") - requests);
+        Assertions.assertEquals(crc.getValue(), $.json.toJson(responseWrap.result).get("crc").asLong());
+        Assertions.assertFalse(Files.exists(stateFile));
+        // part number protocol with complete request
+        responseWrap = new ChunkedUploader($.http).protocol(ChunkedUploader.Protocol.PART_NUMBER).chunkSize(300000)
+                .upload(baseUrl + "/upload/u3", null, file);
+        Assertions.assertEquals(content.length, $.json.toJson(responseWrap.result).get("length").asInt());
+        Assertions.assertEquals(crc.getValue(), $.json.toJson(responseWrap.result).get("crc").asLong());
+        Assertions.assertEquals(crc.getValue(), $.json.toJson($.http.uploadChunked(baseUrl + "/upload/u4", file, 2).result).get("crc").asLong());
+        Files.delete(file);
+    }
+
+    /**
+     * Test request all.
+     */
+    @Test
+    public void testRequestAll() {
+        String baseUrl = LocalHttpServer.start();
+        List<RequestSpec> specs = IntStream.range(0, 40)
+                .mapToObj(i -> RequestSpec.get(baseUrl + "/delay/" + (i % 4 * 20) + "?i=" + i).header("Customer-A", "AAA"))
+                .collect(Collectors.toList());
+        LocalHttpServer.resetMaxInFlight();
+        RequestBatch batch = $.http.requestAll(specs, 5);
+        List<Integer> completionOrder = new ArrayList<>();
+        batch.completionOrder().forEach(completionOrder::add);
+        int maxInFlight = LocalHttpServer.resetMaxInFlight();
+        Assertions.assertTrue(maxInFlight <= 5, "max in flight " + maxInFlight);
+        Assertions.assertEquals(40, completionOrder.size());
+        Assertions.assertEquals(40, completionOrder.stream().distinct().count());
+        List<HttpHelper.ResponseWrap> responses = batch.join();
+        for (int i = 0; i < responses.size(); i++) {
+            Assertions.assertEquals("i=" + i, $.json.toJson(responses.get(i).result).get("query").asText());
+            Assertions.assertEquals("AAA", $.json.toJson(responses.get(i).result).get("headers").get("Customer-a").asText());
+        }
+        // per-call timeout and overall deadline
+        specs = new ArrayList<>();
+        specs.add(RequestSpec.get(baseUrl + "/get"));
+        specs.add(RequestSpec.get(baseUrl + "/delay/1000").timeoutMS(100));
+        specs.add(RequestSpec.get(baseUrl + "/delay/2000"));
+        specs.add(RequestSpec.post(baseUrl + "/post", "some data"));
+        long start = System.currentTimeMillis();
+        batch = $.http.requestAll(specs, 2, 500);
+        responses = batch.join();
+        Assertions.assertTrue(System.currentTimeMillis() - start < 1500);
+        Assertions.assertEquals(200, responses.get(0).statusCode);
+        Assertions.assertNull(responses.get(1));
+        Assertions.assertNull(responses.get(2));
+        Assertions.assertEquals("some data", $.json.toJson(responses.get(3).result).get("data").asText());
+        try {
+            batch.futures().get(2).join();
+            Assertions.fail();
+        } catch (CompletionException e) {
+            Assertions.assertTrue(e.getCause() instanceof RTIOException);
+        }
+        // cancelling a result cancels its call and frees the concurrency slot
+        specs = List.of(RequestSpec.get(baseUrl + "/delay/3000?cancel=1"), RequestSpec.get(baseUrl + "/get?cancel=1"));
+        start = System.currentTimeMillis();
+        batch = $.http.requestAll(specs, 1);
+        Assertions.assertTrue(batch.futures().get(0).cancel(true));
+        Assertions.assertEquals(200, batch.futures().get(1).join().statusCode);
+        Assertions.assertTrue(System.currentTimeMillis() - start < 2000);
+        Assertions.assertTrue(batch.futures().get(0).isCancelled());
+        // calls that complete synchronously are scheduled without recursion
+        specs = IntStream.range(0, 100000).mapToObj(i -> RequestSpec.get("http://invalid host/" + i)).collect(Collectors.toList());
+        responses = $.http.requestAll(specs, 1).join();
+        Assertions.assertEquals(100000, responses.size());
+        Assertions.assertTrue(responses.stream().allMatch(Objects::isNull));
+    }
 
-        result = $.http.post("https://httpbin.org/post", new File(currentPath + "/conf1.json"));
-        Assertions.assertEquals("1", $.json.toJson(result).get("json").get("a").asText());
+    /**
+     * Test response cache.
+     *
+     * @throws IOException the io exception
+     */
+    @Test
+    public void testResponseCache() throws IOException {
+        String baseUrl = LocalHttpServer.start();
+        Path diskDir = Files.createTempDirectory("dew-http-cache");
+        HttpHelper httpHelper = $.http(-1, true);
+        ResponseCache cache = new ResponseCache(1, diskDir);
+        httpHelper.setResponseCache(cache);
+        // fresh
+        HttpHelper.ResponseWrap first = httpHelper.getWrap(baseUrl + "/cache/60");
+        HttpHelper.ResponseWrap second = httpHelper.getWrap(baseUrl + "/cache/60");
+        Assertions.assertEquals(first.result, second.result);
+        Assertions.assertEquals(1, LocalHttpServer.requestCount("/cache/60"));
+        Assertions.assertEquals(1, cache.getHitCount());
+        // stale, revalidate with If-None-Match
+        first = httpHelper.getWrap(baseUrl + "/cache/0");
+        second = httpHelper.getWrap(baseUrl + "/cache/0");
+        Assertions.assertEquals(200, second.statusCode);
+        Assertions.assertEquals(first.result, second.result);
+        Assertions.assertEquals(2, LocalHttpServer.requestCount("/cache/0"));
+        Assertions.assertEquals(1, cache.getRevalidatedCount());
+        // evicted entry is loaded from disk
+        Assertions.assertEquals(1, cache.size());
+        httpHelper.get(baseUrl + "/cache/60");
+        Assertions.assertEquals(1, LocalHttpServer.requestCount("/cache/60"));
+        Assertions.assertEquals(2, cache.getHitCount());
+        // different authorization
+        httpHelper.get(baseUrl + "/cache/60", new HashMap<>() {
+            {
+                put("Authorization", "Bearer xx");
+            }
+        });
+        Assertions.assertEquals(2, LocalHttpServer.requestCount("/cache/60"));
+        // non GET requests are not cached
+        httpHelper.post(baseUrl + "/cache/60", "");
+        Assertions.assertEquals(3, LocalHttpServer.requestCount("/cache/60"));
+        Assertions.assertEquals(3, cache.getMissCount());
+        cache.clear();
+        Assertions.assertEquals(0, cache.size());
+        try (Stream<Path> files = Files.list(diskDir)) {
+            Assertions.assertEquals(0, files.count());
+        }
+        // a 304 updates the cached freshness
+        ResponseCache memoryCache = new ResponseCache(10);
+        httpHelper.setResponseCache(memoryCache);
+        String url = baseUrl + "/cache/0/merge?notModified=" + URLEncoder.encode("max-age=60", StandardCharsets.UTF_8);
+        httpHelper.get(url);
+        Assertions.assertEquals(200, httpHelper.getWrap(url).statusCode);
+        Assertions.assertEquals("max-age=60", httpHelper.getWrap(url).head.get("Cache-Control").get(0));
+        Assertions.assertEquals(2, LocalHttpServer.requestCount("/cache/0/merge"));
+        Assertions.assertEquals(1, memoryCache.getRevalidatedCount());
+        Assertions.assertEquals(1, memoryCache.getHitCount());
+        // a 304 with no-store drops the entry
+        url = baseUrl + "/cache/0/drop?notModified=no-store";
+        httpHelper.get(url);
+        Assertions.assertEquals(2, memoryCache.size());
+        Assertions.assertEquals(200, httpHelper.getWrap(url).statusCode);
+        Assertions.assertEquals(1, memoryCache.size());
+        Assertions.assertEquals(2, memoryCache.getRevalidatedCount());
+        // request no-cache and max-age=0 force revalidation of a fresh entry
+        httpHelper.get(baseUrl + "/cache/60/force");
+        httpHelper.get(baseUrl + "/cache/60/force", new HashMap<>(Map.of("Cache-Control", "no-cache")));
+        httpHelper.get(baseUrl + "/cache/60/force", new HashMap<>(Map.of("Cache-Control", "max-age=0")));
+        Assertions.assertEquals(3, LocalHttpServer.requestCount("/cache/60/force"));
+        Assertions.assertEquals(4, memoryCache.getRevalidatedCount());
+        httpHelper.get(baseUrl + "/cache/60/force");
+        Assertions.assertEquals(3, LocalHttpServer.requestCount("/cache/60/force"));
+        // memory and disk byte budgets
+        ResponseCache boundedCache = new ResponseCache(100, diskDir);
+        httpHelper.setResponseCache(boundedCache);
+        httpHelper.get(baseUrl + "/cache/60?i=0", new HashMap<>(Map.of("Authorization", "Bearer xx")));
+        long entryBytes = boundedCache.getMemoryBytes();
+        boundedCache.maxMemoryBytes(entryBytes * 3 + entryBytes / 2).maxDiskBytes(entryBytes);
+        for (int i = 1; i < 10; i++) {
+            httpHelper.get(baseUrl + "/cache/60?i=" + i, new HashMap<>(Map.of("Authorization", "Bearer xx")));
+        }
+        Assertions.assertEquals(3, boundedCache.size());
+        Assertions.assertTrue(boundedCache.getMemoryBytes() <= entryBytes * 3 + entryBytes / 2);
+        Assertions.assertTrue(boundedCache.getDiskBytes() <= entryBytes);
+        List<Path> diskFiles;
+        try (Stream<Path> files = Files.list(diskDir)) {
+            diskFiles = files.collect(Collectors.toList());
+        }
+        Assertions.assertTrue(diskFiles.size() > 0 && diskFiles.size() < 7, "disk files " + diskFiles.size());
+        Assertions.assertEquals(boundedCache.getDiskBytes(), diskFiles.stream().mapToLong(file -> file.toFile().length()).sum());
+        // credentials are stored as digests only
+        for (Path file : diskFiles) {
+            Assertions.assertEquals($.security.digest.digest("Bearer xx", "SHA-256"),
+                    $.json.toJson(Files.readString(file)).get("vary").get("Authorization").asText());
+        }
+        boundedCache.clear();
+    }
 
+    /**
+     * Test request coalescing.
+     */
+    @Test
+    public void testRequestCoalescing() {
+        String baseUrl = LocalHttpServer.start();
+        HttpHelper httpHelper = $.http(-1, true);
+        RequestCoalescer coalescer = new RequestCoalescer().ignoreHeaders("X-Request-Id");
+        httpHelper.setRequestCoalescer(coalescer);
+        List<CompletableFuture<HttpHelper.ResponseWrap>> futures = IntStream.range(0, 20)
+                .mapToObj(i -> httpHelper.getAsync(baseUrl + "/delay/300", new HashMap<>() {
+                    {
+                        put("X-Request-Id", String.valueOf(i));
+                    }
+                }))
+                .collect(Collectors.toList());
+        List<HttpHelper.ResponseWrap> responses = futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+        Assertions.assertEquals(1, LocalHttpServer.requestCount("/delay/300"));
+        Assertions.assertEquals(19, coalescer.getDedupCount());
+        Assertions.assertTrue(responses.stream().allMatch(response -> response == responses.get(0)));
+        Assertions.assertEquals(0, coalescer.inFlightSize());
+        // significant headers differ
+        CompletableFuture<HttpHelper.ResponseWrap> first = httpHelper.getAsync(baseUrl + "/delay/301", new HashMap<>() {
+            {
+                put("Customer-A", "1");
+            }
+        });
+        CompletableFuture<HttpHelper.ResponseWrap> second = httpHelper.getAsync(baseUrl + "/delay/301", new HashMap<>() {
+            {
+                put("Customer-A", "2");
+            }
+        });
+        CompletableFuture.allOf(first, second).join();
+        Assertions.assertEquals(2, LocalHttpServer.requestCount("/delay/301"));
+        // non idempotent requests are never coalesced
+        CompletableFuture.allOf(httpHelper.postAsync(baseUrl + "/delay/302", "a"), httpHelper.postAsync(baseUrl + "/delay/302", "a")).join();
+        Assertions.assertEquals(2, LocalHttpServer.requestCount("/delay/302"));
+        Assertions.assertEquals(19, coalescer.getDedupCount());
+    }
+
+    /**
+     * Test retry.
+     */
+    @Test
+    public void testRetry() {
+        String baseUrl = LocalHttpServer.start();
+        RetryPolicy retryPolicy = new RetryPolicy().maxAttempts(3).backoff(10, 50);
+        HttpHelper httpHelper = $.http(-1, true, retryPolicy);
+        // recovered after retries
+        Assertions.assertEquals(200, httpHelper.getWrap(baseUrl + "/flaky/2/a").statusCode);
+        Assertions.assertEquals(3, LocalHttpServer.requestCount("/flaky/2/a"));
+        Assertions.assertEquals(2, retryPolicy.getRetryCount());
+        // max attempts exceeded, the last response is returned
+        Assertions.assertEquals(503, httpHelper.getWrap(baseUrl + "/flaky/5/b").statusCode);
+        Assertions.assertEquals(3, LocalHttpServer.requestCount("/flaky/5/b"));
+        // non idempotent requests are not retried
+        Assertions.assertEquals(503, httpHelper.postWrap(baseUrl + "/flaky/1/c", "").statusCode);
+        Assertions.assertEquals(1, LocalHttpServer.requestCount("/flaky/1/c"));
+        // connection errors are retried
+        try {
+            httpHelper.get("http://127.0.0.1:1/get");
+            Assertions.fail();
+        } catch (RTIOException e) {
+            Assertions.assertEquals(6, retryPolicy.getRetryCount());
+        }
+        // non replayable bodies are not retried
+        Assertions.assertEquals(503, httpHelper.putWrap(baseUrl + "/flaky/1/e", new ByteArrayInputStream("stream".getBytes())).statusCode);
+        Assertions.assertEquals(1, LocalHttpServer.requestCount("/flaky/1/e"));
+        Assertions.assertEquals(503, httpHelper.putWrap(baseUrl + "/flaky/1/f",
+                RetryPolicy.nonReplayable(HttpRequest.BodyPublishers.ofString("publisher"))).statusCode);
+        Assertions.assertEquals(1, LocalHttpServer.requestCount("/flaky/1/f"));
+        Assertions.assertEquals(6, retryPolicy.getRetryCount());
+        // replayable bodies are retried
+        Assertions.assertTrue(httpHelper.put(baseUrl + "/flaky/1/g", "replayable").contains("replayable"));
+        Assertions.assertEquals(2, LocalHttpServer.requestCount("/flaky/1/g"));
+        // retry budget
+        retryPolicy.budget(1, 0.001);
+        Assertions.assertEquals(503, httpHelper.getWrap(baseUrl + "/flaky/5/d").statusCode);
+        Assertions.assertEquals(2, LocalHttpServer.requestCount("/flaky/5/d"));
+        Assertions.assertEquals(1, retryPolicy.getBudgetExhaustedCount());
+        // a budget without refill is a fixed pool of retries
+        RetryPolicy fixedPolicy = new RetryPolicy().maxAttempts(10).backoff(1, 1).budget(5, 0);
+        httpHelper.setRetryPolicy(fixedPolicy);
+        Assertions.assertEquals(503, httpHelper.getWrap(baseUrl + "/flaky/100/h").statusCode);
+        Assertions.assertEquals(6, LocalHttpServer.requestCount("/flaky/100/h"));
+        Assertions.assertEquals(503, httpHelper.getWrap(baseUrl + "/flaky/100/h").statusCode);
+        Assertions.assertEquals(7, LocalHttpServer.requestCount("/flaky/100/h"));
+        Assertions.assertEquals(5, fixedPolicy.getRetryCount());
+    }
+
+    /**
+     * Test hedged requests.
+     */
+    @Test
+    public void testHedge() {
+        String baseUrl = LocalHttpServer.start();
+        HttpHelper httpHelper = $.http(-1, true);
+        // warm up the connection so that the primary request reaches the server first
+        httpHelper.get(baseUrl + "/get");
+        HedgePolicy hedgePolicy = new HedgePolicy().delayMS(100).maxExtraLoadPercent(50);
+        httpHelper.setHedgePolicy(hedgePolicy);
+        // the load tokens start empty, each request earns half a hedge
+        httpHelper.get(baseUrl + "/slow/300/e");
+        Assertions.assertEquals(1, LocalHttpServer.requestCount("/slow/300/e"));
+        Assertions.assertEquals(0, hedgePolicy.getHedgeCount());
+        httpHelper.get(baseUrl + "/get");
+        long start = System.currentTimeMillis();
+        Assertions.assertEquals(200, httpHelper.getWrap(baseUrl + "/slow/3000/a").statusCode);
+        Assertions.assertTrue(System.currentTimeMillis() - start < 2000);
+        Assertions.assertEquals(2, LocalHttpServer.requestCount("/slow/3000/a"));
+        Assertions.assertEquals(1, hedgePolicy.getHedgeCount());
+        Assertions.assertEquals(1, hedgePolicy.getHedgeWinCount());
+        // a 5xx response loses while the hedged request is still pending
+        Assertions.assertEquals(200, httpHelper.getWrap(baseUrl + "/flaky/1/h?delay=300").statusCode);
+        Assertions.assertEquals(2, LocalHttpServer.requestCount("/flaky/1/h"));
+        Assertions.assertEquals(2, hedgePolicy.getHedgeWinCount());
+        // a 5xx response is returned when the hedged request is not sent
+        Assertions.assertEquals(503, httpHelper.getWrap(baseUrl + "/flaky/1/i").statusCode);
+        Assertions.assertEquals(2, hedgePolicy.getHedgeCount());
+        // non idempotent requests are not hedged
+        httpHelper.post(baseUrl + "/slow/300/b", "");
+        Assertions.assertEquals(1, LocalHttpServer.requestCount("/slow/300/b"));
+        // extra load cap
+        hedgePolicy.maxExtraLoadPercent(0);
+        httpHelper.get(baseUrl + "/slow/300/c");
+        Assertions.assertEquals(1, LocalHttpServer.requestCount("/slow/300/c"));
+        Assertions.assertEquals(2, hedgePolicy.getHedgeCount());
+        // learned delay
+        hedgePolicy = new HedgePolicy().learnedDelay(0.95, 50, 10);
+        httpHelper.setHedgePolicy(hedgePolicy);
+        for (int i = 0; i < 10; i++) {
+            httpHelper.get(baseUrl + "/get");
+        }
+        start = System.currentTimeMillis();
+        httpHelper.get(baseUrl + "/slow/3000/d");
+        Assertions.assertTrue(System.currentTimeMillis() - start < 2000);
+        Assertions.assertEquals(1, hedgePolicy.getHedgeWinCount());
+    }
+
+    /**
+     * Test rate limiter.
+     */
+    @Test
+    public void testRateLimiter() {
+        String baseUrl = LocalHttpServer.start();
+        HttpHelper httpHelper = $.http(-1, true);
+        RateLimiter rateLimiter = new RateLimiter()
+                .limit("127.0.0.1", 20, 1, 0, -1)
+                .limit(baseUrl + "/delay/", 0, 0, 2, -1);
+        httpHelper.setRateLimiter(rateLimiter);
+        // rate limit by host, queued
+        long start = System.currentTimeMillis();
+        IntStream.range(0, 11).mapToObj(i -> httpHelper.getAsync(baseUrl + "/get?i=" + i)).collect(Collectors.toList())
+                .forEach(CompletableFuture::join);
+        Assertions.assertTrue(System.currentTimeMillis() - start >= 400);
+        RateLimiter.Limit hostLimit = rateLimiter.getLimit("127.0.0.1");
+        Assertions.assertEquals(11, hostLimit.getAcquiredCount());
+        Assertions.assertTrue(hostLimit.getWaitedCount() >= 9);
+        Assertions.assertTrue(hostLimit.getMaxWaitMS() >= 400);
+        // concurrency limit by url prefix, the longest prefix wins
+        LocalHttpServer.resetMaxInFlight();
+        IntStream.range(0, 6).mapToObj(i -> httpHelper.getAsync(baseUrl + "/delay/100")).collect(Collectors.toList())
+                .forEach(CompletableFuture::join);
+        Assertions.assertTrue(LocalHttpServer.resetMaxInFlight() <= 2);
+        Assertions.assertEquals(6, rateLimiter.getLimit(baseUrl + "/delay/").getAcquiredCount());
+        Assertions.assertEquals(0, rateLimiter.getLimit(baseUrl + "/delay/").getInFlight());
+        Assertions.assertEquals(11, hostLimit.getAcquiredCount());
+        // no queueing
+        httpHelper.setRateLimiter(new RateLimiter().limit(baseUrl + "/delay/", 0, 0, 1));
+        CompletableFuture<HttpHelper.ResponseWrap> first = httpHelper.getAsync(baseUrl + "/delay/300");
+        try {
+            httpHelper.get(baseUrl + "/delay/300");
+            Assertions.fail();
+        } catch (RTIOException e) {
+            Assertions.assertTrue(e.getMessage().contains("Concurrency limit"));
+        }
+        Assertions.assertEquals(200, first.join().statusCode);
+        Assertions.assertEquals(1, httpHelper.getRateLimiter().getLimit(baseUrl + "/delay/").getRejectedCount());
+    }
+
+    /**
+     * Test metrics.
+     *
+     * @throws IOException the io exception
+     */
+    @Test
+    public void testMetrics() throws IOException {
+        String baseUrl = LocalHttpServer.start();
+        String host = baseUrl.substring("http://".length());
+        HttpHelper httpHelper = $.http(-1, true);
+        HttpMetrics metrics = new HttpMetrics();
+        httpHelper.addMetricsListener(metrics);
+        List<Integer> statusCodes = new ArrayList<>();
+        httpHelper.addMetricsListener((request, statusCode, latencyNanos, bytesSent, bytesReceived, error) -> statusCodes.add(statusCode));
+        for (int i = 0; i < 10; i++) {
+            httpHelper.get(baseUrl + "/get");
+        }
+        httpHelper.getWrap(baseUrl + "/status/404");
+        httpHelper.getWrap(baseUrl + "/status/503");
+        try {
+            httpHelper.get(baseUrl + "/delay/500", null, null, null, 100);
+            Assertions.fail();
+        } catch (RTIOException ignore) {
+        }
+        httpHelper.post(baseUrl + "/post", "0123456789");
+        Path file = Files.createTempFile("dew-metrics", ".bin");
+        HttpHelper.StreamResponseWrap<Path> download = httpHelper.download(baseUrl + "/bytes/1024", null, file, -1);
+        Assertions.assertEquals(200, download.statusCode);
+        Files.delete(file);
+        HttpMetrics.Snapshot get = metrics.snapshot("GET", host);
+        Assertions.assertEquals(14, get.getCount());
+        Assertions.assertEquals(11, get.getStatusClasses().get("2xx"));
+        Assertions.assertEquals(1, get.getStatusClasses().get("4xx"));
+        Assertions.assertEquals(1, get.getStatusClasses().get("5xx"));
+        Assertions.assertEquals(1, get.getTimeouts());
+        Assertions.assertEquals(0, get.getExceptions());
+        Assertions.assertTrue(get.getBytesReceived() > 1024);
+        Assertions.assertTrue(get.getLatencyP50MS() > 0);
+        Assertions.assertTrue(get.getLatencyP99MS() >= get.getLatencyP50MS());
+        Assertions.assertTrue(get.getLatencyMaxMS() >= 100);
+        HttpMetrics.Snapshot post = metrics.snapshot("POST", host);
+        Assertions.assertEquals(1, post.getCount());
+        Assertions.assertEquals(10, post.getBytesSent());
+        Assertions.assertEquals(2, metrics.snapshot().size());
+        Assertions.assertNotNull($.json.toJsonString(metrics.snapshot()));
+        Assertions.assertEquals(15, statusCodes.size());
+        Assertions.assertTrue(statusCodes.contains(-1));
+    }
+
+    /**
+     * Test compression.
+     *
+     * @throws IOException the io exception
+     */
+    @Test
+    public void testCompression() throws IOException {
+        String baseUrl = LocalHttpServer.start();
+        HttpHelper httpHelper = $.http(-1, true);
+        httpHelper.setCompression(new Compression().requestThreshold(1024));
+        String expected = IntStream.range(0, 100000).mapToObj(i -> "line-" + i + "\n").collect(Collectors.joining());
+        for (String encoding : new String[]{"gzip", "deflate", "raw-deflate"}) {
+            HttpHelper.ResponseWrap responseWrap = httpHelper.getWrap(baseUrl + "/compressed/" + encoding + "/100000");
+            Assertions.assertEquals(expected, responseWrap.result);
+            Assertions.assertFalse(responseWrap.head.containsKey("Content-Encoding"));
+        }
+        // streaming
+        try (Stream<String> lines = httpHelper.getLines(baseUrl + "/compressed/gzip/100000").body) {
+            Assertions.assertEquals(100000, lines.count());
+        }
+        try (InputStream is = httpHelper.getStream(baseUrl + "/compressed/gzip/100000").body) {
+            Assertions.assertEquals(expected, new String(is.readAllBytes()));
+        }
+        Path file = Files.createTempFile("dew-compressed", ".txt");
+        httpHelper.download(baseUrl + "/compressed/deflate/100000", file);
+        Assertions.assertEquals(expected, Files.readString(file));
+        Files.delete(file);
+        // Accept-Encoding, brotli is not on the test classpath
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new Compression().brotliMaxBytes(0));
+        Assertions.assertEquals("gzip, deflate", $.json.toJson(httpHelper.get(baseUrl + "/get")).get("headers").get("Accept-encoding").asText());
+        // request compression
+        JsonNode result = $.json.toJson(httpHelper.post(baseUrl + "/post", expected, "text/plain"));
+        Assertions.assertEquals(expected, result.get("data").asText());
+        Assertions.assertEquals("gzip", result.get("headers").get("Content-encoding").asText());
+        result = $.json.toJson(httpHelper.post(baseUrl + "/post", "small", "text/plain"));
+        Assertions.assertEquals("small", result.get("data").asText());
+        Assertions.assertFalse(result.get("headers").has("Content-encoding"));
+        // HEAD requests don't negotiate compression, so ranged downloads still see the real length
+        int size = 20 * 1024 * 1024 + 7;
+        Assertions.assertEquals(String.valueOf(size), httpHelper.head(baseUrl + "/bytes/" + size + "?gzip=1").get("Content-Length").get(0));
+        Assertions.assertEquals(size, httpHelper.getStream(baseUrl + "/bytes/" + size + "?gzip=1").body.readAllBytes().length);
+        int requests = LocalHttpServer.requestCount("/bytes/" + size);
+        file = Files.createTempFile("dew-compressed-ranged", ".bin");
+        httpHelper.downloadRanged(baseUrl + "/bytes/" + size + "?gzip=1", file, 4);
+        Assertions.assertEquals(size, Files.size(file));
+        // one HEAD request and three 8MB ranges
+        Assertions.assertEquals(requests + 4, LocalHttpServer.requestCount("/bytes/" + size));
+        Files.delete(file);
+    }
+
+    /**
+     * Test typed json.
+     */
+    @Test
+    public void testTypedJson() {
+        String baseUrl = LocalHttpServer.start();
+        HttpHelper httpHelper = $.http(-1, true);
+        // typed get
+        Map<String, Object> echo = httpHelper.get(baseUrl + "/get?a=1", new TypeReference<Map<String, Object>>() {
+        });
+        Assertions.assertEquals("GET", echo.get("method"));
+        Assertions.assertEquals("a=1", echo.get("query"));
+        JsonNode json = httpHelper.get(baseUrl + "/get", JsonNode.class);
+        Assertions.assertEquals("/get", json.get("path").asText());
+        // multi-chunk body with non-ascii characters spanning chunks
+        Page<Map<String, Object>> page = httpHelper.get(baseUrl + "/resp/200/100000", new TypeReference<Resp<Page<Map<String, Object>>>>() {
+        }).getBody();
+        Assertions.assertEquals(100000, page.getRecordTotal());
+        Assertions.assertEquals(100000, page.getObjects().size());
+        Assertions.assertEquals("名称-99999", page.getObjects().get(99999).get("name"));
+        Assertions.assertEquals(99999.5, page.getObjects().get(99999).get("score"));
+        // empty body
+        Assertions.assertNull(httpHelper.get(baseUrl + "/status/204", JsonNode.class));
+        // invalid json
+        Assertions.assertThrows(RTIOException.class, () -> httpHelper.get(baseUrl + "/lines/10", JsonNode.class));
+        // Resp-aware single pass binding
+        Resp<Page> resp = httpHelper.getResp(baseUrl + "/resp/200/100", Page.class);
+        Assertions.assertTrue(resp.ok());
+        Assertions.assertEquals(100, resp.getBody().getObjects().size());
+        Resp<Page> failedResp = httpHelper.getResp(baseUrl + "/resp/500/0", Page.class);
+        Assertions.assertEquals("500", failedResp.getCode());
+        Assertions.assertEquals("failed", failedResp.getMessage());
+        Assertions.assertNull(failedResp.getBody());
+        // works with response decompression
+        httpHelper.setCompression(new Compression());
+        Assertions.assertEquals("GET", httpHelper.get(baseUrl + "/get", JsonNode.class).get("method").asText());
+        // async
+        CompletableFuture<JsonNode> future = httpHelper.getAsync(baseUrl + "/delay/10", null, $.json.getMapper().constructType(JsonNode.class), -1);
+        Assertions.assertEquals("/delay/10", future.join().get("path").asText());
+    }
+
+    /**
+     * Test multipart.
+     *
+     * @throws IOException the io exception
+     */
+    @Test
+    public void testMultipart() throws IOException {
+        String baseUrl = LocalHttpServer.start();
+        HttpHelper httpHelper = $.http(-1, true);
+        Path bigFile = Files.createTempFile("multipart-big", ".bin");
+        CRC32 bigCrc = new CRC32();
+        try (OutputStream os = Files.newOutputStream(bigFile)) {
+            byte[] block = new byte[1024 * 1024];
+            new Random(1).nextBytes(block);
+            for (int i = 0; i < 64; i++) {
+                os.write(block);
+                bigCrc.update(block);
+            }
+        }
+        Path smallFile = Files.createTempFile("multipart-small", ".txt");
+        Files.writeString(smallFile, "hello multipart");
+        byte[] streamBytes = "--stream--\r\n".repeat(1000).getBytes();
+        MultiPartBodyPublisher parts = new MultiPartBodyPublisher()
+                .addPart("field", "value-中文")
+                .addPart("big", bigFile)
+                .addPart("small", smallFile)
+                .addPart("stream", () -> new ByteArrayInputStream(streamBytes), "stream.bin", "application/octet-stream", streamBytes.length);
+        JsonNode result = $.json.toJson(httpHelper.postMultipart(baseUrl + "/multipart", parts).result);
+        Assertions.assertEquals(parts.getContentLength(), result.get("contentLength").asLong());
+        Assertions.assertTrue(result.get("transferEncoding").isNull());
+        JsonNode partsResult = result.get("parts");
+        Assertions.assertEquals(4, partsResult.size());
+        Assertions.assertEquals("field", partsResult.get(0).get("name").asText());
+        Assertions.assertEquals("value-中文", partsResult.get(0).get("value").asText());
+        Assertions.assertEquals(bigFile.getFileName().toString(), partsResult.get(1).get("filename").asText());
+        Assertions.assertEquals(64 * 1024 * 1024, partsResult.get(1).get("size").asLong());
+        Assertions.assertEquals(bigCrc.getValue(), partsResult.get(1).get("crc").asLong());
+        Assertions.assertEquals(Files.size(smallFile), partsResult.get(2).get("size").asLong());
+        Assertions.assertEquals(streamBytes.length, partsResult.get(3).get("size").asLong());
+        Assertions.assertEquals("application/octet-stream", partsResult.get(3).get("contentType").asText());
+        // the publisher can be sent again
+        result = $.json.toJson(httpHelper.postMultipart(baseUrl + "/multipart", parts).result);
+        Assertions.assertEquals(bigCrc.getValue(), result.get("parts").get(1).get("crc").asLong());
+        // unknown length falls back to chunked transfer
+        MultiPartBodyPublisher chunkedParts = new MultiPartBodyPublisher()
+                .addPart("field", "value")
+                .addPart("stream", () -> new ByteArrayInputStream(streamBytes), "stream.bin", null);
+        Assertions.assertEquals(-1, chunkedParts.getContentLength());
+        result = $.json.toJson(httpHelper.postMultipart(baseUrl + "/multipart", chunkedParts).result);
+        Assertions.assertEquals("chunked", result.get("transferEncoding").asText());
+        Assertions.assertEquals(streamBytes.length, result.get("parts").get(1).get("size").asLong());
+        // single file body
+        result = $.json.toJson(httpHelper.post(baseUrl + "/multipart", smallFile.toFile(), "multipart/form-data"));
+        Assertions.assertFalse(result.get("contentLength").isNull());
+        Assertions.assertEquals(smallFile.getFileName().toString(), result.get("parts").get(0).get("filename").asText());
+        // a file truncated while sending fails the body instead of sending stale data
+        HttpRequest.BodyPublisher filePublisher = new MultiPartBodyPublisher().addPart("small", smallFile).build();
+        Assertions.assertEquals(filePublisher.contentLength(), MultiPartPerfTest.drain(filePublisher));
+        CompletableFuture<Void> truncated = new CompletableFuture<>();
+        filePublisher.subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                try {
+                    Files.write(smallFile, new byte[1]);
+                } catch (IOException e) {
+                    truncated.completeExceptionally(e);
+                }
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                truncated.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                truncated.complete(null);
+            }
+        });
+        CompletionException truncatedError = Assertions.assertThrows(CompletionException.class, truncated::join);
+        Assertions.assertTrue(truncatedError.getCause().getMessage().contains("truncated"));
+        Files.delete(bigFile);
+        Files.delete(smallFile);
+    }
+
+    /**
+     * Test event stream.
+     */
+    @Test
+    public void testEventStream() {
+        String baseUrl = LocalHttpServer.start();
+        HttpHelper httpHelper = $.http(-1, true);
+        // sse, the first connection ends halfway and the stream resumes with Last-Event-ID
+        List<EventStream.Event<JsonNode>> events = new CopyOnWriteArrayList<>();
+        httpHelper.eventStream(baseUrl + "/sse/10/1", null, EventStream.Format.SSE, JsonNode.class)
+                .reconnect(3, 5000)
+                .subscribe(events::add).join();
+        Assertions.assertEquals(10, events.size());
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertEquals(String.valueOf(i), events.get(i).getId());
+            Assertions.assertEquals("change", events.get(i).getType());
+            Assertions.assertEquals(i, events.get(i).getData().get("seq").asInt());
+            Assertions.assertEquals("多行", events.get(i).getData().get("text").asText());
+        }
+        // first half, the rest, then 204 stops reconnecting
+        Assertions.assertEquals(3, LocalHttpServer.requestCount("/sse/10/1"));
+        // without reconnection
+        List<EventStream.Event<String>> rawEvents = new CopyOnWriteArrayList<>();
+        httpHelper.eventStream(baseUrl + "/sse/10/2", null, EventStream.Format.SSE, String.class)
+                .subscribe(rawEvents::add).join();
+        Assertions.assertEquals(5, rawEvents.size());
+        Assertions.assertEquals("{\"seq\":0,\n\"text\":\"多行\"}", rawEvents.get(0).getData());
+        // ndjson with a subscriber requesting one event at a time
+        List<Map> items = new ArrayList<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        httpHelper.eventStream(baseUrl + "/ndjson/1000", null, EventStream.Format.NDJSON, Map.class).subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(EventStream.Event<Map> item) {
+                items.add(item.getData());
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                done.complete(null);
+            }
+        });
+        done.join();
+        Assertions.assertEquals(1000, items.size());
+        Assertions.assertEquals(999, items.get(999).get("seq"));
+        Assertions.assertEquals("名称-999", items.get(999).get("name"));
+        AtomicLong count = new AtomicLong();
+        httpHelper.eventStream(baseUrl + "/ndjson/100000", null, EventStream.Format.NDJSON, JsonNode.class)
+                .subscribe(event -> count.incrementAndGet()).join();
+        Assertions.assertEquals(100000, count.get());
+        // bounded memory
+        CompletionException e = Assertions.assertThrows(CompletionException.class,
+                () -> httpHelper.eventStream(baseUrl + "/ndjson/10", null, EventStream.Format.NDJSON, JsonNode.class)
+                        .maxEventBytes(10)
+                        .subscribe(event -> {
+                        }).join());
+        Assertions.assertTrue(e.getCause() instanceof RTIOException);
+        // the event size counts encoded bytes, each event is 26 bytes but only 23 chars
+        rawEvents.clear();
+        httpHelper.eventStream(baseUrl + "/sse/10/3", null, EventStream.Format.SSE, String.class)
+                .maxEventBytes(27)
+                .subscribe(rawEvents::add).join();
+        Assertions.assertEquals(5, rawEvents.size());
+        e = Assertions.assertThrows(CompletionException.class,
+                () -> httpHelper.eventStream(baseUrl + "/sse/10/4", null, EventStream.Format.SSE, String.class)
+                        .maxEventBytes(25)
+                        .subscribe(event -> {
+                        }).join());
+        Assertions.assertTrue(e.getCause().getMessage().contains("max event bytes"));
+        // error status
+        Assertions.assertThrows(CompletionException.class,
+                () -> httpHelper.eventStream(baseUrl + "/status/500", null, EventStream.Format.SSE, String.class)
+                        .subscribe(event -> {
+                        }).join());
+        // 4xx never reconnects, even without a reconnect limit
+        int requests = LocalHttpServer.requestCount("/status/404");
+        Assertions.assertThrows(CompletionException.class,
+                () -> httpHelper.eventStream(baseUrl + "/status/404", null, EventStream.Format.SSE, String.class)
+                        .reconnect(-1, 10)
+                        .subscribe(event -> {
+                        }).join());
+        Assertions.assertEquals(requests + 1, LocalHttpServer.requestCount("/status/404"));
+        // 5xx reconnects with backoff: 20ms, 40ms, 80ms
+        requests = LocalHttpServer.requestCount("/status/503");
+        long start = System.currentTimeMillis();
+        Assertions.assertThrows(CompletionException.class,
+                () -> httpHelper.eventStream(baseUrl + "/status/503", null, EventStream.Format.SSE, String.class)
+                        .reconnect(3, 20)
+                        .subscribe(event -> {
+                        }).join());
+        Assertions.assertTrue(System.currentTimeMillis() - start >= 140);
+        Assertions.assertEquals(requests + 4, LocalHttpServer.requestCount("/status/503"));
+    }
+
+    /**
+     * Test client profile.
+     */
+    @Test
+    public void testClientProfile() {
+        String baseUrl = LocalHttpServer.start();
+        HttpHelper http1 = $.http(new HttpClientProfile("test-http1")
+                .version(HttpClient.Version.HTTP_1_1)
+                .virtualThreads()
+                .requestTimeoutMS(500));
+        // cached by name
+        Assertions.assertSame(http1, $.http("test-http1"));
+        Assertions.assertSame(http1, $.http(new HttpClientProfile("test-http1")));
+        JsonNode result = $.json.toJson(http1.get(baseUrl + "/get"));
+        Assertions.assertFalse(result.get("headers").has("Upgrade"));
+        // async tasks run on the configured executor
+        AtomicLong executed = new AtomicLong();
+        ExecutorService virtualThreads = Executors.newVirtualThreadPerTaskExecutor();
+        HttpHelper counted = $.http(new HttpClientProfile("test-executor").executor(command -> {
+            executed.incrementAndGet();
+            virtualThreads.execute(command);
+        }));
+        Assertions.assertEquals(200, counted.getAsync(baseUrl + "/delay/100").join().statusCode);
+        Assertions.assertTrue(executed.get() > 0);
+        // default request timeout
+        RTIOException e = Assertions.assertThrows(RTIOException.class, () -> http1.get(baseUrl + "/delay/2000"));
+        Assertions.assertTrue(e.getCause() instanceof HttpTimeoutException);
+        Assertions.assertEquals("/delay/100", $.json.toJson(http1.get(baseUrl + "/delay/100")).get("path").asText());
+        // explicit timeout wins
+        Assertions.assertEquals("/delay/1000",
+                $.json.toJson(http1.get(baseUrl + "/delay/1000", null, null, null, 3000)).get("path").asText());
+        // connection pool settings are JVM wide and no longer apply once a client was created
+        String keepAlive = System.getProperty("jdk.httpclient.keepalive.timeout");
+        Assertions.assertFalse(HttpClientProfile.setKeepAliveSeconds(30));
+        Assertions.assertEquals(keepAlive, System.getProperty("jdk.httpclient.keepalive.timeout"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> HttpClientProfile.setConnectionPoolSize(-1));
+        // http/2 is negotiated through an h2c upgrade on plain http
+        HttpHelper http2 = $.http(new HttpClientProfile("test-http2").version(HttpClient.Version.HTTP_2).priority(32));
+        result = $.json.toJson(http2.get(baseUrl + "/get"));
+        Assertions.assertEquals("h2c", result.get("headers").get("Upgrade").asText());
+    }
+
+    /**
+     * Test circuit breaker.
+     */
+    @Test
+    public void testCircuitBreaker() {
+        String baseUrl = LocalHttpServer.start();
+        HttpHelper httpHelper = $.http(-1, true);
+        CircuitBreaker circuitBreaker = new CircuitBreaker()
+                .groupPrefix("test-breaker:")
+                .fallbackStrategy(info -> info.getErrorTimes() < 3);
+        httpHelper.setCircuitBreaker(circuitBreaker);
+        URI uri = URI.create(baseUrl + "/status/502");
+        int requests = LocalHttpServer.requestCount("/status/502");
+        // 5xx and timeouts are failures
+        Assertions.assertEquals(502, httpHelper.getWrap(baseUrl + "/status/502").statusCode);
+        Assertions.assertEquals(502, httpHelper.getWrap(baseUrl + "/status/502").statusCode);
+        Assertions.assertEquals(200, httpHelper.getWrap(baseUrl + "/status/200").statusCode);
+        Assertions.assertThrows(RTIOException.class, () -> httpHelper.get(baseUrl + "/delay/1000", null, null, null, 100));
+        Assertions.assertEquals(3, circuitBreaker.getFallbackInfo(uri).getErrorTimes());
+        Assertions.assertEquals(1, circuitBreaker.getFallbackInfo(uri).getSuccessTimes());
+        // red: fail fast without sending the request
+        Assertions.assertThrows(FallbackHelper.FallbackException.class, () -> httpHelper.getWrap(baseUrl + "/status/502"));
+        CompletionException e = Assertions.assertThrows(CompletionException.class, () -> httpHelper.getAsync(baseUrl + "/status/502").join());
+        Assertions.assertTrue(e.getCause() instanceof FallbackHelper.FallbackException);
+        Assertions.assertEquals(requests + 2, LocalHttpServer.requestCount("/status/502"));
+        // connection errors are counted per host
+        URI unreachable = URI.create("http://127.0.0.1:1/get");
+        Assertions.assertThrows(RTIOException.class, () -> httpHelper.get(unreachable.toString()));
+        Assertions.assertEquals(1, circuitBreaker.getFallbackInfo(unreachable).getErrorTimes());
+        Assertions.assertEquals("test-breaker:127.0.0.1:1", circuitBreaker.getGroupName(unreachable));
+        // a send that fails before the request is issued records nothing
+        URI notSent = URI.create("http://127.0.0.1:2/get");
+        Assertions.assertThrows(IllegalStateException.class, () -> circuitBreaker.execute(HttpRequest.newBuilder(notSent).build(),
+                HttpResponse.BodyHandlers.discarding(), (request, bodyHandler) -> {
+                    throw new IllegalStateException("not sent");
+                }));
+        Assertions.assertEquals(0, circuitBreaker.getFallbackInfo(notSent).getRequestTimes());
+        Assertions.assertEquals(0, circuitBreaker.getFallbackInfo(notSent).getSuccessTimes());
+        Assertions.assertEquals(0, circuitBreaker.getFallbackInfo(notSent).getErrorTimes());
+        // fallback to the last good response or the default response
+        HttpHelper fallbackHelper = $.http(-1, true);
+        fallbackHelper.setCircuitBreaker(new CircuitBreaker()
+                .groupPrefix("test-breaker-fallback:")
+                .fallbackStrategy(info -> info.getErrorTimes() < 1)
+                .cacheLastResponse(10)
+                .fallback(request -> {
+                    HttpHelper.ResponseWrap responseWrap = new HttpHelper.ResponseWrap();
+                    responseWrap.statusCode = 200;
+                    responseWrap.result = "default";
+                    return responseWrap;
+                }));
+        Assertions.assertEquals("/get", $.json.toJson(fallbackHelper.get(baseUrl + "/get")).get("path").asText());
+        Assertions.assertEquals("default", fallbackHelper.get(baseUrl + "/status/500"));
+        requests = LocalHttpServer.requestCount("/get");
+        Assertions.assertEquals("/get", $.json.toJson(fallbackHelper.get(baseUrl + "/get")).get("path").asText());
+        Assertions.assertEquals(requests, LocalHttpServer.requestCount("/get"));
+        Assertions.assertEquals("default", fallbackHelper.get(baseUrl + "/post"));
     }
 
 }
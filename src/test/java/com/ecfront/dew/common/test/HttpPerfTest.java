@@ -0,0 +1,171 @@
+package com.ecfront.dew.common.test;
+
+import com.ecfront.dew.common.$;
+import com.ecfront.dew.common.HttpHelper;
+import com.ecfront.dew.common.http.Compression;
+import com.ecfront.dew.common.http.MultiPartBodyPublisher;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * HttpHelper的吞吐及延迟测试.
+ * <p>
+ * 基于 {@link LocalHttpServer} 离线运行，每个场景分别以同步（固定线程数，每个线程依次请求）及
+ * 异步（固定的并发窗口）方式持续发送请求，输出吞吐量及延迟分位数，场景包括：小响应、分块gzip压缩的大响应、multipart上传。
+ * <p>
+ * 参数：[并发数，默认16] [每个场景的持续秒数，默认10]
+ *
+ * @author gudaoxuri
+ */
+public final class HttpPerfTest {
+
+    private static final int WARMUP_SECONDS = 3;
+    private static final int FILE_KB = 256;
+
+    private HttpPerfTest() {
+    }
+
+    /**
+     * The entry point of application.
+     *
+     * @param args the input arguments
+     * @throws IOException          the io exception
+     * @throws InterruptedException the interrupted exception
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int concurrency = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        String baseUrl = LocalHttpServer.start();
+        HttpHelper httpHelper = $.http(-1, true);
+        httpHelper.setCompression(new Compression());
+        Path file = Files.createTempFile("http-perf", ".bin");
+        byte[] content = new byte[FILE_KB * 1024];
+        new Random(1).nextBytes(content);
+        Files.write(file, content);
+        try {
+            String smallUrl = baseUrl + "/script?size=256";
+            run("small", concurrency, seconds,
+                    () -> httpHelper.getWrap(smallUrl),
+                    () -> httpHelper.getAsync(smallUrl));
+            String largeUrl = baseUrl + "/script?size=1048576&chunked=1&encoding=gzip";
+            run("large chunked gzip", concurrency, seconds,
+                    () -> httpHelper.getWrap(largeUrl),
+                    () -> httpHelper.getAsync(largeUrl));
+            String uploadUrl = baseUrl + "/script?size=64";
+            Supplier<MultiPartBodyPublisher> parts = () -> new MultiPartBodyPublisher()
+                    .addPart("name", "perf")
+                    .addPart("file", file);
+            run("multipart " + FILE_KB + "KB", concurrency, seconds,
+                    () -> httpHelper.postMultipart(uploadUrl, parts.get()),
+                    () -> httpHelper.postAsync(uploadUrl, parts.get()));
+        } finally {
+            Files.delete(file);
+        }
+        // 本地服务的线程不会自动结束
+        System.exit(0);
+    }
+
+    private static void run(String name, int concurrency, int seconds,
+                            Supplier<HttpHelper.ResponseWrap> sync,
+                            Supplier<CompletableFuture<HttpHelper.ResponseWrap>> async) throws InterruptedException {
+        runSync(concurrency, WARMUP_SECONDS, sync);
+        print(name, "sync", seconds, runSync(concurrency, seconds, sync));
+        runAsync(concurrency, WARMUP_SECONDS, async);
+        print(name, "async", seconds, runAsync(concurrency, seconds, async));
+    }
+
+    private static Recorder runSync(int concurrency, int seconds, Supplier<HttpHelper.ResponseWrap> sync) throws InterruptedException {
+        Recorder recorder = new Recorder();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    try {
+                        recorder.record(start, sync.get().statusCode);
+                    } catch (RuntimeException e) {
+                        recorder.record(start, -1);
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return recorder;
+    }
+
+    private static Recorder runAsync(int concurrency, int seconds, Supplier<CompletableFuture<HttpHelper.ResponseWrap>> async)
+            throws InterruptedException {
+        Recorder recorder = new Recorder();
+        Semaphore window = new Semaphore(concurrency);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        while (System.nanoTime() < deadline) {
+            window.acquire();
+            long start = System.nanoTime();
+            async.get().whenComplete((response, e) -> {
+                recorder.record(start, e == null ? response.statusCode : -1);
+                window.release();
+            });
+        }
+        window.acquire(concurrency);
+        return recorder;
+    }
+
+    private static void print(String name, String mode, int seconds, Recorder recorder) {
+        long[] latencies = recorder.sorted();
+        System.out.println(String.format("%-20s %-5s -> %9.1f req/s | p50 %8.2f ms | p99 %8.2f ms | max %8.2f ms | errors %d",
+                name, mode, (double) latencies.length / seconds,
+                percentile(latencies, 0.5), percentile(latencies, 0.99), percentile(latencies, 1), recorder.errors.get()));
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int idx = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(idx, 0)] / 1_000_000D;
+    }
+
+    /**
+     * 记录请求的延迟及失败数.
+     */
+    private static final class Recorder {
+
+        private final AtomicLong errors = new AtomicLong();
+        private long[] latencies = new long[1 << 16];
+        private int size;
+
+        private void record(long startNanos, int statusCode) {
+            long latency = System.nanoTime() - startNanos;
+            if (statusCode != 200) {
+                errors.incrementAndGet();
+            }
+            synchronized (this) {
+                if (size == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, size * 2);
+                }
+                latencies[size++] = latency;
+            }
+        }
+
+        private synchronized long[] sorted() {
+            long[] result = Arrays.copyOf(latencies, size);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+
+}
@@ -1,18 +1,45 @@
 package com.ecfront.dew.common.test;
 
 import com.ecfront.dew.common.$;
+import com.ecfront.dew.common.JsonHelper;
+import com.ecfront.dew.common.exception.RTIOException;
+import com.ecfront.dew.common.json.JsonArrayReader;
+import com.ecfront.dew.common.json.JsonCodec;
+import com.ecfront.dew.common.json.JsonLinesReader;
+import com.ecfront.dew.common.json.JsonLinesWriter;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * The type Json helper test.
@@ -121,6 +148,65 @@ public class JsonHelperTest {
         Assertions.assertEquals("123456789", model.getExtMap().get("a").getCreateTime());
     }
 
+    /**
+     * Test convert.
+     */
+    @Test
+    public void testConvert() {
+        JsonNode node = $.json.toJson("{'strs':['sunisle'],'exts':[{'createTime':'123456789','cid':'1'}],'extMap':{'a':{'cid':'2'}}}");
+        GenericModel model = $.json.toObject(node, GenericModel.class);
+        Assertions.assertEquals("sunisle", model.getStrs().get(0));
+        Assertions.assertEquals("123456789", model.getExts().get(0).getCreateTime());
+        Assertions.assertEquals("2", model.getExtMap().get("a").getCid());
+        Map<String, Object> map = $.json.toMap(model, String.class, Object.class);
+        List<?> exts = (List<?>) map.get("exts");
+        Assertions.assertEquals("1", $.json.toMap(exts.get(0), String.class, Object.class).get("cid"));
+        GenericModel model2 = $.json.toObject(map, GenericModel.class);
+        Assertions.assertEquals("2", model2.getExtMap().get("a").getCid());
+        Assertions.assertEquals("1", $.json.toList(node.get("exts"), Ext.class).get(0).getCid());
+        Assertions.assertEquals("sunisle", $.json.toSet(node.get("strs"), String.class).iterator().next());
+        Assertions.assertEquals(new BigDecimal("0.10000000000000000001"),
+                $.json.toObject(Map.of("v", new BigDecimal("0.10000000000000000001")), DecimalModel.class).getV());
+        TestIdModel model3 = new TestIdModel();
+        model3.setLocalDateTime(LocalDateTime.now());
+        Assertions.assertEquals(model3.getLocalDateTime(), $.json.toObject(model3, TestIdModel.class).getLocalDateTime());
+        Assertions.assertNull($.json.toObject(null, TestIdModel.class));
+        Assertions.assertThrows(RTIOException.class, () -> $.json.toObject(List.of(1), TestIdModel.class));
+    }
+
+    /**
+     * Test codec.
+     */
+    @Test
+    public void testCodec() {
+        JsonCodec<GenericModel> codec = $.json.codec(GenericModel.class);
+        Assertions.assertSame(codec, $.json.codec(GenericModel.class));
+        GenericModel model = codec.read("{'strs':['sunisle'],'extMap':{'a':{'cid':'2'}}}");
+        Assertions.assertEquals("2", model.getExtMap().get("a").getCid());
+        Assertions.assertEquals("2", codec.read(codec.writeBytes(model)).getExtMap().get("a").getCid());
+        Assertions.assertEquals("sunisle", codec.convert($.json.toJson(codec.write(model))).getStrs().get(0));
+        JsonCodec<List<Ext>> listCodec = $.json.codec(new TypeReference<List<Ext>>() {
+        });
+        Assertions.assertSame(listCodec, $.json.codec(new TypeReference<List<Ext>>() {
+        }));
+        Assertions.assertEquals("1", listCodec.convert(List.of(Map.of("cid", "1"))).get(0).getCid());
+        Assertions.assertSame($.json.codec(Map.class, String.class, Ext.class), $.json.codec(Map.class, String.class, Ext.class));
+        // non-final types are written with their runtime type
+        TestIdModel subModel = new TestIdModel();
+        subModel.setName("sunisle");
+        Assertions.assertTrue($.json.codec(Ext.class).write(subModel).contains("sunisle"));
+        // cached codecs survive getMapper() and are rebuilt after configure()
+        JsonHelper codecInst = $.json("codecInst");
+        JsonCodec<TestIdModel> cachedCodec = codecInst.codec(TestIdModel.class);
+        codecInst.getMapper();
+        codecInst.getMapper();
+        Assertions.assertSame(cachedCodec, codecInst.codec(TestIdModel.class));
+        codecInst.configure(mapper -> mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, true));
+        Assertions.assertNotSame(cachedCodec, codecInst.codec(TestIdModel.class));
+        Assertions.assertSame(codecInst.codec(TestIdModel.class), codecInst.codec(TestIdModel.class));
+        Assertions.assertThrows(RTIOException.class, () -> codecInst.toObject("{'unknown':1}", TestIdModel.class));
+    }
+
     /**
      * Test local date time.
      */
@@ -177,4 +263,262 @@ public class JsonHelperTest {
         }
     }
 
+    /**
+     * Test instance lifecycle.
+     */
+    @Test
+    public void testInstanceLifecycle() {
+        JsonHelper instance = $.json("lifecycleInst");
+        Assertions.assertSame(instance, $.json("lifecycleInst"));
+        Assertions.assertEquals(JsonHelper.State.ACTIVE, instance.getState());
+        JsonCodec<TestIdModel> codec = instance.codec(TestIdModel.class);
+        instance.configure(mapper -> mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, true));
+        Assertions.assertNotSame(codec, instance.codec(TestIdModel.class));
+        Assertions.assertThrows(RTIOException.class, () -> instance.toObject("{'unknown':1}", TestIdModel.class));
+        // frozen : configuration is rejected and codecs survive getMapper()
+        instance.freeze();
+        Assertions.assertThrows(IllegalStateException.class, () -> instance.setTimeZone(TimeZone.getTimeZone("UTC")));
+        codec = instance.codec(TestIdModel.class);
+        instance.getMapper();
+        Assertions.assertSame(codec, instance.codec(TestIdModel.class));
+        Assertions.assertEquals("sunisle", instance.toObject("{'name':'sunisle'}", TestIdModel.class).getName());
+        // closed : the instance is unusable and the id maps to a fresh instance
+        instance.close();
+        Assertions.assertEquals(JsonHelper.State.CLOSED, instance.getState());
+        Assertions.assertThrows(IllegalStateException.class, () -> instance.toJson("{}"));
+        Assertions.assertThrows(IllegalStateException.class, instance::freeze);
+        JsonHelper newInstance = $.json("lifecycleInst");
+        Assertions.assertNotSame(instance, newInstance);
+        Assertions.assertEquals(JsonHelper.State.ACTIVE, newInstance.getState());
+        Assertions.assertEquals("a", newInstance.toObject("{'unknown':1,'name':'a'}", TestIdModel.class).getName());
+        Assertions.assertThrows(IllegalStateException.class, () -> $.json.close());
+    }
+
+    /**
+     * Test concurrent instances.
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    @Test
+    public void testConcurrentInstances() throws InterruptedException {
+        int threads = 32;
+        int ids = 8;
+        int iterations = 500;
+        Map<String, Set<JsonHelper>> instances = new ConcurrentHashMap<>();
+        Map<String, Set<ObjectMapper>> mappers = new ConcurrentHashMap<>();
+        AtomicInteger errors = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            workers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < iterations; i++) {
+                        String id = "stressInst" + (seed + i) % ids;
+                        JsonHelper instance = $.json(id);
+                        instances.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(instance);
+                        if (i % 50 == seed % 50) {
+                            instance.setTimeZone(TimeZone.getTimeZone("GMT+" + seed % 12));
+                        }
+                        TestIdModel model = instance.toObject("{'name':'n" + i + "','cid':'" + seed + "'}", TestIdModel.class);
+                        if (!model.getName().equals("n" + i) || !instance.toJson(model).get("cid").asText().equals(String.valueOf(seed))) {
+                            errors.incrementAndGet();
+                        }
+                        mappers.computeIfAbsent(id, k -> ConcurrentHashMap.newKeySet()).add(instance.getMapper());
+                    }
+                } catch (Exception e) {
+                    errors.incrementAndGet();
+                }
+            }));
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        Assertions.assertEquals(0, errors.get());
+        Assertions.assertEquals(ids, instances.size());
+        instances.values().forEach(set -> Assertions.assertEquals(1, set.size()));
+        mappers.values().forEach(set -> Assertions.assertEquals(1, set.size()));
+        // concurrent pick and close : every id ends up with exactly one registered, usable instance
+        CountDownLatch closeStart = new CountDownLatch(1);
+        workers.clear();
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            workers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    closeStart.await();
+                    for (int i = 0; i < iterations; i++) {
+                        JsonHelper instance = $.json("stressInst" + (seed + i) % ids);
+                        if (i % 10 == 0) {
+                            instance.close();
+                        }
+                    }
+                } catch (Exception e) {
+                    errors.incrementAndGet();
+                }
+            }));
+        }
+        closeStart.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        Assertions.assertEquals(0, errors.get());
+        for (int i = 0; i < ids; i++) {
+            JsonHelper instance = $.json("stressInst" + i);
+            Assertions.assertSame(instance, $.json("stressInst" + i));
+            Assertions.assertEquals(JsonHelper.State.ACTIVE, instance.getState());
+            Assertions.assertEquals("a", instance.toObject("{'name':'a'}", TestIdModel.class).getName());
+        }
+    }
+
+    /**
+     * Test read array.
+     *
+     * @throws IOException the io exception
+     */
+    @Test
+    public void testReadArray() throws IOException {
+        JsonArrayReader<Ext> reader = $.json.readArray(new StringReader("[{'cid':'1'},{'cid':'2'},null]"), null, Ext.class);
+        Assertions.assertEquals("1", reader.next().getCid());
+        Assertions.assertTrue(reader.hasNext());
+        Assertions.assertTrue(reader.hasNext());
+        Assertions.assertEquals("2", reader.next().getCid());
+        Assertions.assertNull(reader.next());
+        Assertions.assertFalse(reader.hasNext());
+        // nested path, skipping siblings before the array, elements parsed on demand
+        int items = 300000;
+        GeneratedInputStream is = new GeneratedInputStream(items);
+        try (JsonArrayReader<Ext> itemReader = $.json.readArray(is, "data.items", Ext.class)) {
+            Assertions.assertEquals("0", itemReader.next().getCid());
+            Assertions.assertEquals("1", itemReader.next().getCid());
+            Assertions.assertTrue(is.generated < 64 * 1024, "generated " + is.generated);
+            Assertions.assertEquals(items - 2, itemReader.stream().count());
+        }
+        Assertions.assertTrue(is.closed);
+        // index in path, missing path and non-array value
+        Assertions.assertEquals(List.of(2, 3),
+                $.json.readArray(new StringReader("{'data':[{'items':[1]},{'items':[2,3]}]}"), "data.1.items", Integer.class)
+                        .stream().collect(Collectors.toList()));
+        Assertions.assertFalse($.json.readArray(new StringReader("{'data':{}}"), "data.items", Ext.class).hasNext());
+        Assertions.assertFalse($.json.readArray(new StringReader("{'data':null}"), "data", Ext.class).hasNext());
+        Assertions.assertThrows(RTIOException.class, () -> $.json.readArray(new StringReader("{'data':{}}"), "data", Ext.class));
+        // file, closing the stream early releases the file
+        Path file = Files.createTempFile("dew-array", ".json");
+        Files.writeString(file, "{\"items\":[{\"cid\":\"a\"},{\"cid\":\"b\"},{\"cid\":\"c\"}]}");
+        try (Stream<Ext> stream = $.json.readArray(file, "items", Ext.class).stream()) {
+            Assertions.assertEquals(List.of("a", "b"), stream.limit(2).map(Ext::getCid).collect(Collectors.toList()));
+        }
+        Files.delete(file);
+    }
+
+    /**
+     * Test json lines.
+     *
+     * @throws IOException the io exception
+     */
+    @Test
+    public void testJsonLines() throws IOException {
+        int lines = 20000;
+        Path file = Files.createTempFile("dew-lines", ".ndjson");
+        try (JsonLinesWriter<Ext> writer = $.json.writeJsonLines(Files.newOutputStream(file), Ext.class)) {
+            writer.writeAll(IntStream.range(0, lines).mapToObj(i -> {
+                Ext ext = new Ext();
+                ext.setCid(String.valueOf(i));
+                ext.setCreateTime("t\n" + i);
+                return ext;
+            }));
+        }
+        List<String> written = Files.readAllLines(file);
+        Assertions.assertEquals(lines, written.size());
+        Assertions.assertEquals("{\"cid\":\"0\",\"createTime\":\"t\\n0\"}", written.get(0));
+        Assertions.assertTrue(Files.readString(file).endsWith("}\n"));
+        // parallel, ordered
+        Stream<Ext> stream = new JsonLinesReader<Ext>($.json.codec(Ext.class).getReader()).chunkSize(1024).read(file, true);
+        Assertions.assertTrue(stream.isParallel());
+        List<Ext> exts = stream.collect(Collectors.toList());
+        Assertions.assertEquals(lines, exts.size());
+        for (int i = 0; i < lines; i++) {
+            Assertions.assertEquals(String.valueOf(i), exts.get(i).getCid());
+        }
+        // parallel, unordered
+        Assertions.assertEquals(lines, $.json.readJsonLines(file, Ext.class, false).map(Ext::getCid).distinct().count());
+        // blank lines, CRLF and a missing trailing newline
+        Files.writeString(file, "{'cid':'1'}\r\n\n  \n{'cid':'2'}");
+        Assertions.assertEquals(List.of("1", "2"),
+                $.json.readJsonLines(file, Ext.class, true).map(Ext::getCid).collect(Collectors.toList()));
+        Files.writeString(file, "{'cid':'1'}\n{'cid':\n");
+        RTIOException e = Assertions.assertThrows(RTIOException.class, () -> $.json.readJsonLines(file, Ext.class, true).count());
+        Assertions.assertTrue(e.getMessage().contains("offset 12"), e.getMessage());
+        Files.delete(file);
+        // input stream
+        try (Stream<Ext> lineStream = $.json.readJsonLines(
+                new ByteArrayInputStream("{'cid':'1'}\n{'cid':'2'}\n".getBytes(StandardCharsets.UTF_8)), Ext.class)) {
+            Assertions.assertEquals(List.of("1", "2"), lineStream.map(Ext::getCid).collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * 按需生成 {"data":{"meta":{...},"items":[{"cid":"0"},...]}} 的输入流.
+     */
+    private static final class GeneratedInputStream extends InputStream {
+
+        private final int items;
+        private int next;
+        private byte[] buffer = "{\"data\":{\"meta\":{\"tags\":[1,{\"a\":[2]}],\"items\":3},\"items\":[".getBytes(StandardCharsets.UTF_8);
+        private int position;
+        private long generated = buffer.length;
+        private boolean closed;
+
+        private GeneratedInputStream(int items) {
+            this.items = items;
+        }
+
+        @Override
+        public int read() {
+            if (position == buffer.length) {
+                if (next > items) {
+                    return -1;
+                }
+                String chunk = next == items ? "]}}" : (next == 0 ? "" : ",") + "{\"cid\":\"" + next + "\",\"createTime\":\"" + next + "\"}";
+                next++;
+                buffer = chunk.getBytes(StandardCharsets.UTF_8);
+                position = 0;
+                generated += buffer.length;
+            }
+            return buffer[position++];
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    /**
+     * The type Decimal model.
+     */
+    public static class DecimalModel {
+
+        private BigDecimal v;
+
+        /**
+         * Gets v.
+         *
+         * @return the v
+         */
+        public BigDecimal getV() {
+            return v;
+        }
+
+        /**
+         * Sets v.
+         *
+         * @param v the v
+         */
+        public void setV(BigDecimal v) {
+            this.v = v;
+        }
+    }
+
 }
@@ -0,0 +1,199 @@
+package com.ecfront.dew.common.test;
+
+import com.ecfront.dew.common.$;
+import com.ecfront.dew.common.json.JsonCodec;
+import com.ecfront.dew.common.json.JsonLinesReader;
+import com.ecfront.dew.common.json.JsonLinesWriter;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * JsonHelper对象转换的吞吐测试.
+ * <p>
+ * 对比经Json字符串中转（序列化为字符串后再解析）与 {@link com.ecfront.dew.common.JsonHelper} 直接转换的吞吐量，
+ * 场景包括：JsonNode转嵌套对象、Map转嵌套对象、嵌套对象转Map、JsonNode数组转List；
+ * 及每次按类型调用ObjectMapper与复用 {@link JsonCodec} 的吞吐量，场景包括：解析Json字符串、解析为List、序列化；
+ * 及NDJSON文件逐行调用 {@code toJsonString} / {@code toObject} 与 {@link JsonLinesWriter} / 并行的 {@link JsonLinesReader} 的吞吐量。
+ * <p>
+ * 参数：[每个场景的持续秒数，默认5] [嵌套集合的元素数，默认20] [NDJSON的行数，默认1000000]
+ *
+ * @author gudaoxuri
+ */
+public final class JsonPerfTest {
+
+    private static final int WARMUP_SECONDS = 2;
+
+    private static volatile Object sink;
+
+    private JsonPerfTest() {
+    }
+
+    /**
+     * The entry point of application.
+     *
+     * @param args the input arguments
+     * @throws IOException the io exception
+     */
+    public static void main(String[] args) throws IOException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int elements = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        ObjectMapper mapper = $.json.getMapper();
+        GenericModel model = createModel(elements);
+        JsonNode node = $.json.toJson(model);
+        Map<String, Object> map = $.json.toMap(model, String.class, Object.class);
+        JavaType mapType = mapper.getTypeFactory().constructMapType(Map.class, String.class, Object.class);
+        JavaType listType = mapper.getTypeFactory().constructCollectionType(List.class, Ext.class);
+        run("JsonNode -> object", "string round-trip", "direct", seconds,
+                () -> roundTrip(mapper, node, mapper.constructType(GenericModel.class)),
+                () -> $.json.toObject(node, GenericModel.class));
+        run("Map -> object", "string round-trip", "direct", seconds,
+                () -> roundTrip(mapper, map, mapper.constructType(GenericModel.class)),
+                () -> $.json.toObject(map, GenericModel.class));
+        run("object -> Map", "string round-trip", "direct", seconds,
+                () -> roundTrip(mapper, model, mapType),
+                () -> $.json.toMap(model, String.class, Object.class));
+        run("JsonNode -> List", "string round-trip", "direct", seconds,
+                () -> roundTrip(mapper, node.get("exts"), listType),
+                () -> $.json.toList(node.get("exts"), Ext.class));
+        String json = $.json.toJsonString(model);
+        String listJson = node.get("exts").toString();
+        JsonCodec<GenericModel> codec = $.json.codec(GenericModel.class);
+        JsonCodec<List<Ext>> listCodec = $.json.codec(new TypeReference<List<Ext>>() {
+        });
+        run("String -> object", "mapper", "codec", seconds,
+                () -> read(mapper, json, mapper.constructType(GenericModel.class)),
+                () -> codec.read(json));
+        run("String -> List", "mapper", "codec", seconds,
+                () -> read(mapper, listJson, mapper.getTypeFactory().constructCollectionType(List.class, Ext.class)),
+                () -> listCodec.read(listJson));
+        run("object -> String", "mapper", "codec", seconds,
+                () -> $.json.toJsonString(model),
+                () -> codec.write(model));
+        jsonLines(args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000);
+    }
+
+    private static void jsonLines(int lines) throws IOException {
+        Path file = Files.createTempFile("json-perf", ".ndjson");
+        try {
+            for (int round = 0; round < 3; round++) {
+                long start = System.nanoTime();
+                try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+                    for (int i = 0; i < lines; i++) {
+                        writer.write($.json.toJsonString(createExt(i)));
+                        writer.write('\n');
+                    }
+                }
+                long lineLoopWrite = System.nanoTime() - start;
+                start = System.nanoTime();
+                try (JsonLinesWriter<Ext> writer = $.json.writeJsonLines(new BufferedOutputStream(Files.newOutputStream(file)), Ext.class)) {
+                    for (int i = 0; i < lines; i++) {
+                        writer.write(createExt(i));
+                    }
+                }
+                long linesWrite = System.nanoTime() - start;
+                start = System.nanoTime();
+                long count;
+                try (Stream<String> fileLines = Files.lines(file)) {
+                    count = fileLines.map(line -> $.json.toObject(line, Ext.class)).filter(Objects::nonNull).count();
+                }
+                long lineLoopRead = System.nanoTime() - start;
+                start = System.nanoTime();
+                count += $.json.readJsonLines(file, Ext.class, true).mapToLong(ext -> 1).sum();
+                long orderedRead = System.nanoTime() - start;
+                start = System.nanoTime();
+                count += $.json.readJsonLines(file, Ext.class, false).mapToLong(ext -> 1).sum();
+                long unorderedRead = System.nanoTime() - start;
+                sink = count;
+                System.out.println(String.format("NDJSON %d lines (%d MB) -> write: per line %6.0f ms | writer %6.0f ms"
+                                + " || read: per line %6.0f ms | parallel ordered %6.0f ms | parallel unordered %6.0f ms",
+                        lines, Files.size(file) / 1024 / 1024, lineLoopWrite / 1_000_000D, linesWrite / 1_000_000D,
+                        lineLoopRead / 1_000_000D, orderedRead / 1_000_000D, unorderedRead / 1_000_000D));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static Ext createExt(int i) {
+        Ext ext = new Ext();
+        ext.setCid("c" + i);
+        ext.setCreateTime(String.valueOf(1_600_000_000_000L + i));
+        return ext;
+    }
+
+    private static GenericModel createModel(int elements) {
+        GenericModel model = new GenericModel();
+        List<String> strs = new ArrayList<>();
+        List<Ext> exts = new ArrayList<>();
+        Map<String, Ext> extMap = new HashMap<>();
+        for (int i = 0; i < elements; i++) {
+            Ext ext = createExt(i);
+            strs.add("str-" + i);
+            exts.add(ext);
+            extMap.put("k" + i, ext);
+        }
+        model.setStrs(strs);
+        model.setExts(exts);
+        model.setExtMap(extMap);
+        return model;
+    }
+
+    // 原实现：序列化为Json字符串后再解析
+    private static Object roundTrip(ObjectMapper mapper, Object obj, JavaType type) {
+        try {
+            String json = obj instanceof JsonNode ? obj.toString() : mapper.writeValueAsString(obj);
+            return mapper.readValue(json, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Object read(ObjectMapper mapper, String json, JavaType type) {
+        try {
+            return mapper.readValue(json, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void run(String name, String baselineName, String candidateName, int seconds,
+                            Supplier<Object> baseline, Supplier<Object> candidate) {
+        measure(WARMUP_SECONDS, baseline);
+        measure(WARMUP_SECONDS, candidate);
+        double baselineOps = measure(seconds, baseline);
+        double candidateOps = measure(seconds, candidate);
+        System.out.println(String.format("%-20s -> %s %10.0f ops/s | %s %10.0f ops/s | %5.2fx",
+                name, baselineName, baselineOps, candidateName, candidateOps, candidateOps / baselineOps));
+    }
+
+    private static double measure(int seconds, Supplier<Object> operation) {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+        long ops = 0;
+        while (System.nanoTime() < deadline) {
+            for (int i = 0; i < 100; i++) {
+                sink = operation.get();
+            }
+            ops += 100;
+        }
+        return ops * 1_000_000_000D / (System.nanoTime() - start);
+    }
+
+}
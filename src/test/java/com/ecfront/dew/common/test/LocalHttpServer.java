@@ -0,0 +1,646 @@
+package com.ecfront.dew.common.test;
+
+import com.ecfront.dew.common.$;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 本地HTTP测试服务，用于替代httpbin.org进行离线测试.
+ * <p>
+ * 支持的路径：
+ * <ul>
+ * <li>/status/{code} 返回指定状态码</li>
+ * <li>/delay/{ms} 延迟指定毫秒后返回</li>
+ * <li>/bytes/{n} 返回n个字节，第i个字节为 i % 256，支持Range请求，参数flaky=1时每个Range首次请求返回500，
+ * 参数etag为strong或weak时返回对应的强/弱 {@code ETag} 及 {@code Last-Modified} ，{@code If-Range} 不匹配（弱ETag总是不匹配）时忽略Range返回200，
+ * 参数changed=1时资源在首次HEAD请求之后发生变化（ETag改变），
+ * 参数gzip=1时对不带Range且 {@code Accept-Encoding} 包含gzip的请求返回gzip压缩的响应（HEAD请求不返回 {@code Content-Length} ），
+ * 参数badrange为overrun时206响应的 {@code Content-Range} 正确但响应体一直返回到文件末尾，为ignored时206响应返回整个文件</li>
+ * <li>/lines/{n} 返回n行文本，第i行为 line-i</li>
+ * <li>/flaky/{n}/{id} 前n次请求返回503，之后同其它路径，参数delay为响应前的延迟毫秒数</li>
+ * <li>/slow/{ms}/{id} 首次请求延迟指定毫秒后返回，之后的请求立即返回</li>
+ * <li>/compressed/{encoding}/{n} 返回压缩后的n行文本，encoding为gzip、deflate（zlib格式）或raw-deflate（原始deflate格式）</li>
+ * <li>/resp/{code}/{n} 分块返回Resp格式的Json，code为200时body为包含n条记录的分页对象，否则body为错误详情字符串</li>
+ * <li>/multipart 流式解析multipart/form-data请求，返回请求的Content-Length、Transfer-Encoding及各部分的名称、文件名、类型、大小、CRC32，
+ * 非文件部分同时返回其内容</li>
+ * <li>/sse/{n}/{id} 返回n个SSE事件（id为序号），从请求的 {@code Last-Event-ID} 之后开始，已全部返回时响应204，
+ * 首次请求只返回一半的事件后断开</li>
+ * <li>/ndjson/{n} 返回n行Json，最后一行没有换行符</li>
+ * <li>/script 按查询参数编排响应：status 状态码（默认200），delay 延迟毫秒数，jitter 额外的随机延迟上限（毫秒），
+ * size 响应体字节数（文本），chunked=1 时分块传输，encoding 为gzip或deflate时压缩响应体，请求体会被读取并丢弃，
+ * 如 /script?status=503&amp;delay=20&amp;size=1048576&amp;chunked=1&amp;encoding=gzip</li>
+ * <li>/upload/{id} 分段上传：PUT请求携带 {@code Content-Range: bytes start-end/total} 时写入对应区域，
+ * PUT请求携带参数partNumber时暂存该分段，POST请求携带参数complete时按序号合并暂存的分段，GET请求返回已上传内容的长度及CRC32，
+ * 可通过 {@link #failUpload(String, long, int)} 使指定分段失败</li>
+ * <li>/cache/{maxAge}/{id} 返回带 {@code Cache-Control: max-age} 及 {@code ETag} 的响应，id可省略，请求携带匹配的 {@code If-None-Match} 时返回304，
+ * 参数notModified为304响应的 {@code Cache-Control} （需URL编码）</li>
+ * <li>其它路径 返回请求的方法、参数、请求头及请求体，请求体为gzip压缩时返回解压后的内容，OPTIONS请求返回 {@code Allow} 头</li>
+ * </ul>
+ *
+ * @author gudaoxuri
+ */
+public final class LocalHttpServer {
+
+    private static final Set<String> FLAKY_RANGES = ConcurrentHashMap.newKeySet();
+    private static final Set<String> CHANGED_RESOURCES = ConcurrentHashMap.newKeySet();
+    private static final String LAST_MODIFIED = "Thu, 01 Jan 2026 00:00:00 GMT";
+
+    private static final AtomicInteger IN_FLIGHT = new AtomicInteger();
+    private static final AtomicInteger MAX_IN_FLIGHT = new AtomicInteger();
+    private static final ThreadLocal<Boolean> LEFT = ThreadLocal.withInitial(() -> false);
+    private static final Map<String, AtomicInteger> REQUEST_COUNTS = new ConcurrentHashMap<>();
+    private static final Map<String, byte[]> UPLOADS = new ConcurrentHashMap<>();
+    private static final Map<String, Map<Integer, byte[]>> UPLOAD_PARTS = new ConcurrentHashMap<>();
+    private static final Map<String, AtomicInteger> UPLOAD_FAILURES = new ConcurrentHashMap<>();
+
+    private static int inFlightBaseline;
+    private static HttpServer server;
+
+    private LocalHttpServer() {
+    }
+
+    /**
+     * 启动服务（仅启动一次）.
+     *
+     * @return 服务地址，如 http://127.0.0.1:12345
+     */
+    public static synchronized String start() {
+        if (server == null) {
+            // 响应头及响应体分开写入，未关闭Nagle算法时与客户端的延迟确认叠加会使每个请求增加约40ms
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+            try {
+                server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            server.setExecutor(Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "local-http-server");
+                thread.setDaemon(true);
+                return thread;
+            }));
+            server.createContext("/", exchange -> {
+                LEFT.set(false);
+                MAX_IN_FLIGHT.accumulateAndGet(IN_FLIGHT.incrementAndGet(), Math::max);
+                REQUEST_COUNTS.computeIfAbsent(exchange.getRequestURI().getPath(), key -> new AtomicInteger()).incrementAndGet();
+                try {
+                    handle(exchange);
+                } finally {
+                    leave();
+                }
+            });
+            server.start();
+        }
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * 获取并重置自上次调用以来新增的同时处理的最大请求数.
+     * <p>
+     * 之前未完成的请求（如客户端已超时但服务端仍在处理）不计入
+     *
+     * @return 同时处理的最大请求数
+     */
+    public static synchronized int resetMaxInFlight() {
+        int current = IN_FLIGHT.get();
+        int max = MAX_IN_FLIGHT.getAndSet(current) - inFlightBaseline;
+        inFlightBaseline = current;
+        return max;
+    }
+
+    /**
+     * 获取指定路径收到的请求数.
+     *
+     * @param path 请求路径
+     * @return 请求数
+     */
+    public static int requestCount(String path) {
+        AtomicInteger count = REQUEST_COUNTS.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * 使 /upload/{id} 中从指定位置开始的分段的后续times次请求返回500.
+     *
+     * @param id    上传标识
+     * @param start 分段的起始位置
+     * @param times 失败次数，为0时取消
+     */
+    public static void failUpload(String id, long start, int times) {
+        UPLOAD_FAILURES.put(id + ":" + start, new AtomicInteger(times));
+    }
+
+    // 在发送响应前即视为请求处理完成，避免客户端收到响应后发起的新请求被重复计数
+    private static void sendResponseHeaders(HttpExchange exchange, int statusCode, long length) throws IOException {
+        leave();
+        exchange.sendResponseHeaders(statusCode, length);
+    }
+
+    private static void leave() {
+        if (!LEFT.get()) {
+            LEFT.set(true);
+            IN_FLIGHT.decrementAndGet();
+        }
+    }
+
+    private static void handleEvents(HttpExchange exchange, String path) throws IOException {
+        if (path.startsWith("/ndjson/")) {
+            int lines = Integer.parseInt(path.substring("/ndjson/".length()));
+            exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+            sendResponseHeaders(exchange, 200, 0);
+            try (OutputStream os = exchange.getResponseBody()) {
+                for (int i = 0; i < lines; i++) {
+                    String line = "{\"seq\":" + i + ",\"name\":\"名称-" + i + "\"}" + (i == lines - 1 ? "" : i % 100 == 0 ? "\r\n\n" : "\n");
+                    os.write(line.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            exchange.close();
+            return;
+        }
+        int events = Integer.parseInt(path.substring("/sse/".length()).split("/")[0]);
+        String lastEventId = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+        int start = lastEventId == null ? 0 : Integer.parseInt(lastEventId) + 1;
+        if (start >= events) {
+            sendResponseHeaders(exchange, 204, -1);
+            exchange.close();
+            return;
+        }
+        int end = requestCount(path) == 1 ? events / 2 : events;
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        sendResponseHeaders(exchange, 200, 0);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write("retry: 20\n: keep-alive\n\n".getBytes(StandardCharsets.UTF_8));
+            for (int i = start; i < end; i++) {
+                String event = "id: " + i + "\r\nevent: change\r\ndata: {\"seq\":" + i + ",\r\ndata:\"text\":\"多行\"}\r\n\r\n";
+                os.write(event.getBytes(StandardCharsets.UTF_8));
+                os.flush();
+            }
+        }
+        exchange.close();
+    }
+
+    private static void handleMultipart(HttpExchange exchange) throws IOException {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        String boundary = contentType.substring(contentType.indexOf("boundary=") + "boundary=".length());
+        byte[] delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.UTF_8);
+        List<Map<String, Object>> parts = new ArrayList<>();
+        InputStream is = new BufferedInputStream(exchange.getRequestBody(), 65536);
+        if (!readLine(is).equals("--" + boundary)) {
+            throw new IOException("Missing first boundary");
+        }
+        String next = "\r\n";
+        while (next.equals("\r\n")) {
+            Map<String, Object> part = new LinkedHashMap<>();
+            for (String line = readLine(is); !line.isEmpty(); line = readLine(is)) {
+                if (line.toLowerCase().startsWith("content-disposition:")) {
+                    part.put("name", matchParam(line, "name"));
+                    part.put("filename", matchParam(line, "filename"));
+                } else if (line.toLowerCase().startsWith("content-type:")) {
+                    part.put("contentType", line.substring("content-type:".length()).trim());
+                }
+            }
+            // 滑动窗口匹配分隔符，窗口移出的字节即为内容
+            byte[] window = new byte[delimiter.length];
+            int filled = 0;
+            int pos = 0;
+            long size = 0;
+            CRC32 crc = new CRC32();
+            ByteArrayOutputStream value = new ByteArrayOutputStream();
+            while (true) {
+                int b = is.read();
+                if (b < 0) {
+                    throw new IOException("Unexpected end of multipart body");
+                }
+                if (filled == window.length) {
+                    crc.update(window[pos]);
+                    size++;
+                    if (part.get("filename") == null) {
+                        value.write(window[pos]);
+                    }
+                } else {
+                    filled++;
+                }
+                window[pos] = (byte) b;
+                pos = (pos + 1) % window.length;
+                if (filled == window.length && (byte) b == delimiter[delimiter.length - 1] && matches(window, pos, delimiter)) {
+                    break;
+                }
+            }
+            part.put("size", size);
+            part.put("crc", crc.getValue());
+            if (part.get("filename") == null) {
+                part.put("value", value.toString(StandardCharsets.UTF_8));
+            }
+            parts.add(part);
+            next = new String(is.readNBytes(2), StandardCharsets.UTF_8);
+        }
+        is.readAllBytes();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("contentLength", exchange.getRequestHeaders().getFirst("Content-Length"));
+        result.put("transferEncoding", exchange.getRequestHeaders().getFirst("Transfer-Encoding"));
+        result.put("parts", parts);
+        byte[] body = $.json.toJsonString(result).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        sendResponseHeaders(exchange, 200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+        exchange.close();
+    }
+
+    private static String readLine(InputStream is) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = is.read()) != '\n') {
+            if (b < 0) {
+                throw new IOException("Unexpected end of multipart body");
+            }
+            line.write(b);
+        }
+        String str = line.toString(StandardCharsets.UTF_8);
+        return str.endsWith("\r") ? str.substring(0, str.length() - 1) : str;
+    }
+
+    private static String matchParam(String header, String param) {
+        Matcher matcher = Pattern.compile("(?:^|;)\\s*" + param + "=\"([^\"]*)\"").matcher(header);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private static boolean matches(byte[] window, int start, byte[] delimiter) {
+        for (int i = 0; i < delimiter.length; i++) {
+            if (window[(start + i) % window.length] != delimiter[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Map<String, String> queryParams(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                int idx = param.indexOf('=');
+                params.put(idx == -1 ? param : param.substring(0, idx), idx == -1 ? "" : param.substring(idx + 1));
+            }
+        }
+        return params;
+    }
+
+    private static void handleUpload(HttpExchange exchange, String id) throws IOException {
+        Map<String, String> params = queryParams(exchange);
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        String range = exchange.getRequestHeaders().getFirst("Content-Range");
+        int statusCode = 200;
+        if ("PUT".equals(exchange.getRequestMethod()) && range != null) {
+            Matcher matcher = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)").matcher(range);
+            if (!matcher.matches() || Long.parseLong(matcher.group(2)) - Long.parseLong(matcher.group(1)) + 1 != body.length) {
+                statusCode = 400;
+            } else {
+                AtomicInteger failures = UPLOAD_FAILURES.get(id + ":" + matcher.group(1));
+                if (failures != null && failures.getAndDecrement() > 0) {
+                    statusCode = 500;
+                } else {
+                    byte[] content = UPLOADS.computeIfAbsent(id, key -> new byte[Integer.parseInt(matcher.group(3))]);
+                    System.arraycopy(body, 0, content, Integer.parseInt(matcher.group(1)), body.length);
+                }
+            }
+        } else if ("PUT".equals(exchange.getRequestMethod()) && params.containsKey("partNumber")) {
+            UPLOAD_PARTS.computeIfAbsent(id, key -> new ConcurrentHashMap<>()).put(Integer.parseInt(params.get("partNumber")), body);
+        } else if ("POST".equals(exchange.getRequestMethod()) && params.containsKey("complete")) {
+            Map<Integer, byte[]> parts = UPLOAD_PARTS.remove(id);
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            for (int i = 1; i <= parts.size(); i++) {
+                content.write(parts.get(i));
+            }
+            UPLOADS.put(id, content.toByteArray());
+        }
+        byte[] content = UPLOADS.getOrDefault(id, new byte[0]);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("length", content.length);
+        result.put("crc", crc.getValue());
+        byte[] resp = $.json.toJsonString(result).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        sendResponseHeaders(exchange, statusCode, resp.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(resp);
+        }
+        exchange.close();
+    }
+
+    private static void handleBytes(HttpExchange exchange, long size) throws IOException {
+        Map<String, String> params = queryParams(exchange);
+        String etag = null;
+        if (params.containsKey("etag")) {
+            String uri = exchange.getRequestURI().toString();
+            boolean firstHead = "HEAD".equals(exchange.getRequestMethod()) && CHANGED_RESOURCES.add(uri);
+            boolean changed = "1".equals(params.get("changed")) && !firstHead && CHANGED_RESOURCES.contains(uri);
+            etag = ("weak".equals(params.get("etag")) ? "W/" : "") + (changed ? "\"v2\"" : "\"v1\"");
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+        }
+        long start = 0;
+        long end = size - 1;
+        int statusCode = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+        boolean rangeApplies = ifRange == null || !ifRange.startsWith("W/") && (ifRange.equals(etag) || ifRange.equals(LAST_MODIFIED));
+        if (range != null && range.startsWith("bytes=") && rangeApplies) {
+            if ("1".equals(params.get("flaky")) && FLAKY_RANGES.add(range)) {
+                sendResponseHeaders(exchange, 500, -1);
+                exchange.close();
+                return;
+            }
+            String[] positions = range.substring("bytes=".length()).split("-");
+            start = Long.parseLong(positions[0]);
+            end = Math.min(end, Long.parseLong(positions[1]));
+            statusCode = 206;
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + size);
+            if ("overrun".equals(params.get("badrange"))) {
+                end = size - 1;
+            } else if ("ignored".equals(params.get("badrange"))) {
+                start = 0;
+                end = size - 1;
+                exchange.getResponseHeaders().set("Content-Range", "bytes 0-" + end + "/" + size);
+            }
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+        boolean gzip = "1".equals(params.get("gzip")) && statusCode == 200
+                && exchange.getRequestHeaders().getOrDefault("Accept-Encoding", List.of()).stream().anyMatch(value -> value.contains("gzip"));
+        if (gzip) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            if (!gzip) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(size));
+            }
+            sendResponseHeaders(exchange, statusCode, -1);
+            exchange.close();
+            return;
+        }
+        sendResponseHeaders(exchange, statusCode, gzip ? 0 : end - start + 1);
+        try (OutputStream os = gzip ? new GZIPOutputStream(exchange.getResponseBody()) : exchange.getResponseBody()) {
+            byte[] buf = new byte[8192];
+            for (long i = start; i <= end; i += buf.length) {
+                int len = (int) Math.min(buf.length, end - i + 1);
+                for (int j = 0; j < len; j++) {
+                    buf[j] = (byte) ((i + j) % 256);
+                }
+                os.write(buf, 0, len);
+            }
+        }
+        exchange.close();
+    }
+
+    private static void handleScript(HttpExchange exchange) throws IOException {
+        Map<String, String> params = queryParams(exchange);
+        int statusCode = Integer.parseInt(params.getOrDefault("status", "200"));
+        long delay = Long.parseLong(params.getOrDefault("delay", "0"));
+        long jitter = Long.parseLong(params.getOrDefault("jitter", "0"));
+        long size = Long.parseLong(params.getOrDefault("size", "0"));
+        boolean chunked = "1".equals(params.get("chunked"));
+        String encoding = params.get("encoding");
+        exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+        if (delay + jitter > 0) {
+            try {
+                Thread.sleep(delay + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/plain");
+        if (size == 0 || "HEAD".equals(exchange.getRequestMethod())) {
+            sendResponseHeaders(exchange, statusCode, -1);
+        } else if (encoding == null) {
+            sendResponseHeaders(exchange, statusCode, chunked ? 0 : size);
+            try (OutputStream os = exchange.getResponseBody()) {
+                writeText(os, size);
+            }
+        } else {
+            exchange.getResponseHeaders().set("Content-Encoding", encoding);
+            if (chunked) {
+                sendResponseHeaders(exchange, statusCode, 0);
+                try (OutputStream os = compress(exchange.getResponseBody(), encoding)) {
+                    writeText(os, size);
+                }
+            } else {
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                try (OutputStream os = compress(body, encoding)) {
+                    writeText(os, size);
+                }
+                sendResponseHeaders(exchange, statusCode, body.size());
+                try (OutputStream os = exchange.getResponseBody()) {
+                    body.writeTo(os);
+                }
+            }
+        }
+        exchange.close();
+    }
+
+    // 写入size个字节的文本，第i个字节为 'a' + i % 26
+    private static void writeText(OutputStream os, long size) throws IOException {
+        byte[] buf = new byte[26 * 315];
+        for (int i = 0; i < buf.length; i++) {
+            buf[i] = (byte) ('a' + i % 26);
+        }
+        for (long i = 0; i < size; i += buf.length) {
+            os.write(buf, 0, (int) Math.min(buf.length, size - i));
+        }
+    }
+
+    private static OutputStream compress(OutputStream os, String encoding) throws IOException {
+        if (encoding.equals("gzip")) {
+            return new GZIPOutputStream(os);
+        }
+        return new DeflaterOutputStream(os, new Deflater(Deflater.DEFAULT_COMPRESSION, encoding.equals("raw-deflate")));
+    }
+
+    // 按到达时的请求数决定是否失败，参数delay时先延迟再响应，返回是否已响应503
+    private static boolean handleFlaky(HttpExchange exchange, String path) throws IOException {
+        boolean failed = requestCount(path) <= Integer.parseInt(path.substring("/flaky/".length()).split("/")[0]);
+        String delay = queryParams(exchange).get("delay");
+        if (delay != null) {
+            try {
+                Thread.sleep(Long.parseLong(delay));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failed) {
+            sendResponseHeaders(exchange, 503, -1);
+            exchange.close();
+        }
+        return failed;
+    }
+
+    private static void handleCompressed(HttpExchange exchange, String[] params) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (OutputStream os = compress(body, params[0])) {
+            for (int i = 0; i < Integer.parseInt(params[1]); i++) {
+                os.write(("line-" + i + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/plain");
+        exchange.getResponseHeaders().set("Content-Encoding", params[0].equals("gzip") ? "gzip" : "deflate");
+        sendResponseHeaders(exchange, 200, body.size());
+        try (OutputStream os = exchange.getResponseBody()) {
+            body.writeTo(os);
+        }
+        exchange.close();
+    }
+
+    private static void handleResp(HttpExchange exchange, String[] params) throws IOException {
+        int records = Integer.parseInt(params[1]);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        sendResponseHeaders(exchange, 200, 0);
+        try (OutputStream os = exchange.getResponseBody()) {
+            if (!params[0].equals("200")) {
+                os.write(("{'code':'" + params[0] + "','message':'failed','body':'error-detail'}").getBytes(StandardCharsets.UTF_8));
+            } else {
+                os.write(("{\"code\":\"200\",\"message\":\"\",\"body\":{\"pageNumber\":1,\"pageSize\":" + records
+                        + ",\"recordTotal\":" + records + ",\"objects\":[").getBytes(StandardCharsets.UTF_8));
+                for (int i = 0; i < records; i++) {
+                    os.write(((i == 0 ? "" : ",") + "{\"id\":" + i + ",\"name\":\"名称-" + i + "\",\"score\":" + i + ".5}")
+                            .getBytes(StandardCharsets.UTF_8));
+                }
+                os.write("]}}".getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        exchange.close();
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (path.startsWith("/bytes/")) {
+            handleBytes(exchange, Long.parseLong(path.substring("/bytes/".length())));
+            return;
+        }
+        if (path.startsWith("/lines/")) {
+            int lines = Integer.parseInt(path.substring("/lines/".length()));
+            exchange.getResponseHeaders().set("Content-Type", "text/plain");
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                sendResponseHeaders(exchange, 200, -1);
+                exchange.close();
+                return;
+            }
+            sendResponseHeaders(exchange, 200, 0);
+            try (OutputStream os = exchange.getResponseBody()) {
+                for (int i = 0; i < lines; i++) {
+                    os.write(("line-" + i + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            exchange.close();
+            return;
+        }
+        if (path.startsWith("/compressed/")) {
+            handleCompressed(exchange, path.substring("/compressed/".length()).split("/"));
+            return;
+        }
+        if (path.equals("/script")) {
+            handleScript(exchange);
+            return;
+        }
+        if (path.startsWith("/upload/")) {
+            handleUpload(exchange, path.substring("/upload/".length()));
+            return;
+        }
+        if (path.equals("/multipart")) {
+            handleMultipart(exchange);
+            return;
+        }
+        if (path.startsWith("/sse/") || path.startsWith("/ndjson/")) {
+            handleEvents(exchange, path);
+            return;
+        }
+        if (path.startsWith("/resp/")) {
+            handleResp(exchange, path.substring("/resp/".length()).split("/"));
+            return;
+        }
+        if (path.startsWith("/flaky/") && handleFlaky(exchange, path)) {
+            return;
+        }
+        if (path.startsWith("/cache/")) {
+            String etag = "\"" + path.substring("/cache/".length()) + "\"";
+            exchange.getResponseHeaders().set("Cache-Control", "max-age=" + path.substring("/cache/".length()).split("/")[0]);
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                String notModified = queryParams(exchange).get("notModified");
+                if (notModified != null) {
+                    exchange.getResponseHeaders().set("Cache-Control", URLDecoder.decode(notModified, StandardCharsets.UTF_8));
+                }
+                sendResponseHeaders(exchange, 304, -1);
+                exchange.close();
+                return;
+            }
+        }
+        int statusCode = 200;
+        if (path.startsWith("/status/")) {
+            statusCode = Integer.parseInt(path.substring("/status/".length()));
+        } else if (path.startsWith("/slow/") && requestCount(path) == 1) {
+            try {
+                Thread.sleep(Long.parseLong(path.substring("/slow/".length()).split("/")[0]));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else if (path.startsWith("/delay/")) {
+            try {
+                Thread.sleep(Long.parseLong(path.substring("/delay/".length())));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Map<String, Object> echo = new LinkedHashMap<>();
+        echo.put("method", exchange.getRequestMethod());
+        echo.put("path", path);
+        echo.put("query", exchange.getRequestURI().getRawQuery());
+        Map<String, String> headers = new LinkedHashMap<>();
+        exchange.getRequestHeaders().forEach((key, value) -> headers.put(key, String.join(",", value)));
+        echo.put("headers", headers);
+        InputStream requestBody = "gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))
+                ? new GZIPInputStream(exchange.getRequestBody()) : exchange.getRequestBody();
+        echo.put("data", new String(requestBody.readAllBytes(), StandardCharsets.UTF_8));
+        byte[] body = $.json.toJsonString(echo).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        if ("OPTIONS".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Allow", "GET, HEAD, POST, PUT, PATCH, DELETE, OPTIONS");
+        }
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            sendResponseHeaders(exchange, statusCode, -1);
+        } else {
+            sendResponseHeaders(exchange, statusCode, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+        exchange.close();
+    }
+
+}
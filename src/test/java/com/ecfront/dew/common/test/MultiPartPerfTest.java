@@ -0,0 +1,184 @@
+package com.ecfront.dew.common.test;
+
+import com.ecfront.dew.common.http.MultiPartBodyPublisher;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
+
+/**
+ * Multipart请求体的分配及吞吐测试.
+ * <p>
+ * 在当前线程中读取完整的请求体（不发送），统计每MB分配的字节数及吞吐量，对比：
+ * 文件部分（按位置读入数据块）、输入流部分、JDK的 {@code BodyPublishers.ofFile} 及原实现（每次读取分配并复制数组）
+ *
+ * @author gudaoxuri
+ */
+public final class MultiPartPerfTest {
+
+    private static final int FILE_MB = 256;
+    private static final int ROUNDS = 10;
+
+    private MultiPartPerfTest() {
+    }
+
+    /**
+     * 读取完整的请求体.
+     * <p>
+     * 同步请求全部数据，对于在请求线程中推送数据的发布者，读取在当前线程中完成
+     *
+     * @param publisher 请求体
+     * @return 读取的字节数
+     */
+    public static long drain(HttpRequest.BodyPublisher publisher) {
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<>() {
+            private long size;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                size += item.remaining();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                result.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                result.complete(size);
+            }
+        });
+        return result.join();
+    }
+
+    /**
+     * 获取当前线程已分配的字节数.
+     *
+     * @return 已分配的字节数
+     */
+    public static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * The entry point of application.
+     *
+     * @param args the input arguments
+     * @throws IOException the io exception
+     */
+    public static void main(String[] args) throws IOException {
+        Path file = Files.createTempFile("multipart-perf", ".bin");
+        try (OutputStream os = Files.newOutputStream(file)) {
+            byte[] block = new byte[1024 * 1024];
+            new Random(1).nextBytes(block);
+            for (int i = 0; i < FILE_MB; i++) {
+                os.write(block);
+            }
+        }
+        try {
+            run("file part", () -> new MultiPartBodyPublisher().addPart("file", file).build());
+            run("stream part", () -> new MultiPartBodyPublisher()
+                    .addPart("file", () -> open(file), "file.bin", null, FILE_MB * 1024L * 1024).build());
+            run("jdk ofFile", () -> {
+                try {
+                    return HttpRequest.BodyPublishers.ofFile(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            run("copying iterator", () -> HttpRequest.BodyPublishers.ofByteArrays(() -> new CopyingIterator(open(file))));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void run(String name, Supplier<HttpRequest.BodyPublisher> publisherSupplier) {
+        // 预热
+        drain(publisherSupplier.get());
+        long allocated = 0;
+        long elapsedNanos = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            HttpRequest.BodyPublisher publisher = publisherSupplier.get();
+            long startAllocated = allocatedBytes();
+            long start = System.nanoTime();
+            drain(publisher);
+            elapsedNanos += System.nanoTime() - start;
+            allocated += allocatedBytes() - startAllocated;
+        }
+        long totalMB = (long) FILE_MB * ROUNDS;
+        System.out.println(String.format("%-18s -> %10.1f bytes allocated per MB | %8.1f MB/s",
+                name, (double) allocated / totalMB, totalMB / (elapsedNanos / 1_000_000_000D)));
+    }
+
+    private static InputStream open(Path file) {
+        try {
+            return Files.newInputStream(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 原实现的读取方式：每次读取分配缓冲区，再复制到实际长度的数组.
+     */
+    private static final class CopyingIterator implements Iterator<byte[]> {
+
+        private final InputStream input;
+        private byte[] next;
+        private boolean done;
+
+        private CopyingIterator(InputStream input) {
+            this.input = input;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !done) {
+                try {
+                    byte[] buf = new byte[8192];
+                    int r = input.read(buf);
+                    if (r > 0) {
+                        next = new byte[r];
+                        System.arraycopy(buf, 0, next, 0, r);
+                    } else {
+                        done = true;
+                        input.close();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public byte[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            byte[] res = next;
+            next = null;
+            return res;
+        }
+    }
+
+}
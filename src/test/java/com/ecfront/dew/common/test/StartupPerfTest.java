@@ -0,0 +1,72 @@
+package com.ecfront.dew.common.test;
+
+import com.ecfront.dew.common.$;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link $} 的启动耗时测试.
+ * <p>
+ * 每轮启动新的JVM，测量：首次访问 {@link $} （初始化全部工具类）的耗时、之后发送首个HTTP请求的耗时及整个进程的耗时，
+ * 用于对比工具类延迟初始化的效果。
+ * <p>
+ * 参数：[轮数，默认10]
+ *
+ * @author gudaoxuri
+ */
+public final class StartupPerfTest {
+
+    private StartupPerfTest() {
+    }
+
+    /**
+     * The entry point of application.
+     *
+     * @param args the input arguments
+     * @throws IOException          the io exception
+     * @throws InterruptedException the interrupted exception
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("probe")) {
+            probe();
+            return;
+        }
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        String java = ProcessHandle.current().info().command().orElse("java");
+        long[] totals = new long[3];
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), StartupPerfTest.class.getName(), "probe")
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            String result;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                result = reader.readLine();
+            }
+            process.waitFor();
+            String[] nanos = result.split(" ");
+            totals[0] += Long.parseLong(nanos[0]);
+            totals[1] += Long.parseLong(nanos[1]);
+            totals[2] += System.nanoTime() - start;
+        }
+        System.out.println(String.format("first access of $ -> %8.2f ms | first http request -> %8.2f ms | process -> %8.2f ms",
+                totals[0] / 1_000_000D / rounds, totals[1] / 1_000_000D / rounds, totals[2] / 1_000_000D / rounds));
+    }
+
+    private static void probe() {
+        long start = System.nanoTime();
+        $.field.validateEmail("test@example.com");
+        long init = System.nanoTime() - start;
+        String baseUrl = LocalHttpServer.start();
+        start = System.nanoTime();
+        $.http.get(baseUrl + "/script?size=16");
+        long request = System.nanoTime() - start;
+        System.out.println(init + " " + request);
+        // 本地服务的线程不会自动结束
+        System.exit(0);
+    }
+
+}